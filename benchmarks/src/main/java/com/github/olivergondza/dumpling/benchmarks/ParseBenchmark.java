@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.query.BlockingTree;
+
+/**
+ * Parse threaddumps using {@link ThreadDumpFactory#fromStream(InputStream)} and {@link ThreadDumpFactory#fromFile(File)}.
+ *
+ * @author ogondza
+ */
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Benchmark
+    public ThreadDumpRuntime synthetic(SyntheticRuntime state) throws IOException {
+        return new ThreadDumpFactory().fromStream(new ByteArrayInputStream(state.dump));
+    }
+
+    @Benchmark
+    public ThreadDumpRuntime file(SyntheticFile state) throws IOException {
+        return new ThreadDumpFactory().fromFile(state.file);
+    }
+
+    @Benchmark
+    public ThreadDumpRuntime fileLazy(SyntheticFile state) throws IOException {
+        return new ThreadDumpFactory().lazyStackTraces(true).fromFile(state.file);
+    }
+
+    /**
+     * Time to the first lock analysis result.
+     */
+    @Benchmark
+    public BlockingTree.Result fileLazyBlockingTree(SyntheticFile state) throws IOException {
+        return new BlockingTree().query(new ThreadDumpFactory().lazyStackTraces(true).fromFile(state.file).getThreads());
+    }
+
+    @Benchmark
+    public ThreadDumpRuntime fixture(Fixture state) throws IOException {
+        return new ThreadDumpFactory().fromStream(new ByteArrayInputStream(state.dump));
+    }
+
+    /**
+     * Synthetic threaddump written to a file.
+     */
+    @State(Scope.Benchmark)
+    public static class SyntheticFile {
+
+        /*package*/ File file;
+
+        @Setup
+        public void setup(SyntheticRuntime runtime) throws IOException {
+            file = File.createTempFile("dumpling-benchmark", ".log");
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(runtime.dump);
+            } finally {
+                out.close();
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    /**
+     * Threaddumps captured from real JVMs.
+     */
+    @State(Scope.Benchmark)
+    public static class Fixture {
+
+        @Param({
+                "blocking-tree.log", "contention.log", "deadlock-and-friends.log", "producer-consumer.log",
+                "ReentrantReadWriteLock-parking-blockage-write.log"
+        })
+        public String name;
+
+        /*package*/ byte[] dump;
+
+        @Setup
+        public void setup() throws IOException {
+            InputStream in = Util.resource("jstack/" + name);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                dump = out.toByteArray();
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
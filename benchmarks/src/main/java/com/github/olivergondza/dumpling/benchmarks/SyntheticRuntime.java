@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.olivergondza.dumpling.ThreadDumpGenerator;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.Distribution;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.GeneratedLock;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.GeneratedThread;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.Topology;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+
+/**
+ * Synthetic runtime of configurable size shared by benchmarks.
+ *
+ * Half of the threads form lock groups of all topologies, third of the groups using synchronizers. Generated
+ * deterministically so the results are comparable between runs.
+ *
+ * @author ogondza
+ * @see ThreadDumpGenerator
+ */
+@State(Scope.Benchmark)
+public class SyntheticRuntime {
+
+    @Param({"100", "1000", "10000"})
+    public int threads;
+
+    @Param({"10", "50"})
+    public int depth;
+
+    /*package*/ Set<ThreadDumpThread.Builder> builders;
+    /*package*/ ThreadDumpRuntime runtime;
+    /*package*/ byte[] dump;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ThreadDumpGenerator generator = new ThreadDumpGenerator()
+                .threads(threads)
+                .depth(Distribution.fixed(depth))
+                .topology(Topology.STAR, 5)
+                .topology(Topology.CHAIN, 4)
+                .topology(Topology.TREE, 7)
+                .topology(Topology.CYCLE, 2)
+                .contended(0.5)
+                .synchronizers(0.3)
+        ;
+
+        builders = builders(generator.generate());
+        runtime = new ThreadDumpRuntime(builders, Collections.singletonList(ThreadDumpGenerator.HEADER));
+        dump = generator.toString().getBytes();
+    }
+
+    private static @Nonnull Set<ThreadDumpThread.Builder> builders(@Nonnull List<GeneratedThread> threads) {
+        Set<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>(threads.size());
+        for (GeneratedThread thread: threads) {
+            List<ThreadLock.Monitor> monitors = new ArrayList<ThreadLock.Monitor>();
+            for (Map.Entry<GeneratedLock, Integer> monitor: thread.getMonitors().entrySet()) {
+                monitors.add(new ThreadLock.Monitor(lock(monitor.getKey()), monitor.getValue()));
+            }
+            List<ThreadLock> synchronizers = new ArrayList<ThreadLock>();
+            for (GeneratedLock synchronizer: thread.getSynchronizers()) {
+                synchronizers.add(lock(synchronizer));
+            }
+
+            builders.add(new ThreadDumpThread.Builder()
+                    .setName(thread.getName())
+                    .setId(thread.getId())
+                    .setTid(thread.getTid())
+                    .setNid(thread.getNid())
+                    .setDaemon(thread.isDaemon())
+                    .setPriority(thread.getPriority())
+                    .setThreadStatus(ThreadStatus.fromString(thread.getStatus()))
+                    .setStacktrace(thread.getStackTrace())
+                    .setWaitingToLock(lock(thread.getWaitingToLock()))
+                    .setWaitingOnLock(lock(thread.getWaitingOnLock()))
+                    .setAcquiredMonitors(monitors)
+                    .setAcquiredSynchronizers(synchronizers)
+            );
+        }
+        return builders;
+    }
+
+    private static ThreadLock lock(@CheckForNull GeneratedLock lock) {
+        return lock == null ? null : new ThreadLock(lock.getClassName(), lock.getId());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.olivergondza.dumpling.model.ProcessThread;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
+
+/**
+ * Filter threads using {@link com.github.olivergondza.dumpling.model.ThreadSet#where(ProcessThread.Predicate)} with
+ * built-in predicates.
+ *
+ * @author ogondza
+ */
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadSetBenchmark {
+
+    @Benchmark
+    public ThreadDumpThreadSet nameIs(SyntheticRuntime state) {
+        return state.runtime.getThreads().where(ProcessThread.nameIs("pool-1-thread-1"));
+    }
+
+    @Benchmark
+    public ThreadDumpThreadSet nameContains(SyntheticRuntime state) {
+        return state.runtime.getThreads().where(ProcessThread.nameContains("thread-4"));
+    }
+
+    @Benchmark
+    public ThreadDumpThreadSet waitingToLock(SyntheticRuntime state) {
+        return state.runtime.getThreads().where(ProcessThread.waitingToLock("com.example.app.Resource3"));
+    }
+
+    @Benchmark
+    public ThreadDumpThreadSet waitingOnLock(SyntheticRuntime state) {
+        return state.runtime.getThreads().where(
+                ProcessThread.waitingOnLock("java.util.concurrent.locks.ReentrantLock$NonfairSync")
+        );
+    }
+
+    @Benchmark
+    public ThreadDumpThreadSet acquiredLock(SyntheticRuntime state) {
+        return state.runtime.getThreads().where(ProcessThread.acquiredLock("com.example.app.Resource3"));
+    }
+
+    @Benchmark
+    public ThreadDumpThreadSet evaluating(SyntheticRuntime state) {
+        return state.runtime.getThreads().where(ProcessThread.evaluating("java.util.concurrent.ThreadPoolExecutor.getTask"));
+    }
+
+    @Benchmark
+    public ThreadDumpThreadSet inMethod(SyntheticRuntime state) {
+        return state.runtime.getThreads().inMethod("java.util.concurrent.ThreadPoolExecutor.getTask");
+    }
+}
@@ -25,6 +25,9 @@ package com.github.olivergondza.dumpling.cli;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
 
@@ -32,7 +35,9 @@ import com.github.olivergondza.dumpling.factory.IllegalRuntimeStateException;
 import com.github.olivergondza.dumpling.factory.JmxRuntimeFactory;
 import com.github.olivergondza.dumpling.factory.JmxRuntimeFactory.FailedToInitializeJmxConnection;
 import com.github.olivergondza.dumpling.factory.PidRuntimeFactory;
+import com.github.olivergondza.dumpling.factory.SnapshotFactory;
 import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
 import com.github.olivergondza.dumpling.model.jmx.JmxRuntime;
 import com.google.auto.service.AutoService;
@@ -42,6 +47,8 @@ public final class Factories {
     @AutoService(CliRuntimeFactory.class)
     public static final class ThreadDump implements CliRuntimeFactory<ThreadDumpRuntime> {
 
+        private static final Pattern PARALLELISM = Pattern.compile("(.*)\\?parallelism=(\\d+)");
+
         public ThreadDump() {
         }
 
@@ -53,21 +60,94 @@ public final class Factories {
         @Nonnull
         @Override
         public String getDescription() {
-            return "Parse threaddrump from file, or standard input when '-' provided as a locator.";
+            return "Parse threaddrump from file, or standard input when '-' provided as a locator. " +
+                    "Gzip compressed files as well as zip and tar archives are supported, use '<archive>!<entry>' " +
+                    "to choose threaddump from archive with several. Append '?parallelism=<N>' to parse using N threads."
+            ;
         }
 
         @Override
         public @Nonnull ThreadDumpRuntime createRuntime(
                 @Nonnull String locator, @Nonnull ProcessStream process
         ) throws CommandFailedException {
-            ThreadDumpFactory factory = new ThreadDumpFactory();
+            int parallelism = 1;
+            Matcher matcher = PARALLELISM.matcher(locator);
+            if (!new File(locator).exists() && matcher.matches()) {
+                locator = matcher.group(1);
+                try {
+                    parallelism = Integer.parseInt(matcher.group(2));
+                } catch (NumberFormatException ex) {
+                    parallelism = 0; // Overflow
+                }
+                if (parallelism < 1) throw new CommandFailedException(
+                        "Parallelism must be a positive number: " + matcher.group(2)
+                );
+            }
+            ThreadDumpFactory factory = new ThreadDumpFactory().parallelism(parallelism);
 
-            if ("-".equals(locator)) {
-                // Read stdin
-                return factory.fromStream(process.in());
+            try {
+                if ("-".equals(locator)) {
+                    // Read stdin
+                    return factory.fromStream(process.in());
+                }
+
+                File file = new File(locator);
+                String entry = null;
+                int separator = locator.lastIndexOf('!');
+                if (!file.exists() && separator != -1) {
+                    file = new File(locator.substring(0, separator));
+                    entry = locator.substring(separator + 1);
+                }
+
+                if (entry == null) {
+                    List<String> entries = factory.archiveEntries(file);
+                    if (entries.size() != 1) throw new CommandFailedException(
+                            "Archive " + file + " contains " + entries.size() + " threaddumps, choose one using '" +
+                            locator + "!<entry>': " + entries
+                    );
+                    entry = entries.get(0);
+                }
+
+                ThreadDumpRuntime runtime = factory.fromArchive(file, entry);
+                if (runtime == null) throw new CommandFailedException(
+                        "No threaddump '" + entry + "' in " + file + ", available: " + factory.archiveEntries(file)
+                );
+                return runtime;
+            } catch (IOException | IllegalRuntimeStateException ex) {
+                throw new CommandFailedException(ex);
             }
+        }
+    }
+
+    @AutoService(CliRuntimeFactory.class)
+    public static final class Snapshot implements CliRuntimeFactory<ProcessRuntime<?, ?, ?>> {
+
+        public Snapshot() {
+        }
+
+        @Override
+        public @Nonnull String getKind() {
+            return "snapshot";
+        }
+
+        @Nonnull
+        @Override
+        public String getDescription() {
+            return "Load runtime from binary snapshot file, or standard input when '-' provided as a locator.";
+        }
+
+        @Override
+        public @Nonnull ProcessRuntime<?, ?, ?> createRuntime(
+                @Nonnull String locator, @Nonnull ProcessStream process
+        ) throws CommandFailedException {
+            SnapshotFactory factory = new SnapshotFactory();
 
             try {
+                if ("-".equals(locator)) {
+                    // Read stdin
+                    return factory.fromStream(process.in());
+                }
+
                 return factory.fromFile(new File(locator));
             } catch (IOException | IllegalRuntimeStateException ex) {
                 throw new CommandFailedException(ex);
@@ -46,6 +46,8 @@ public class GrepCommand implements CliCommand {
 
     private static final InterpretterConfig CONFIG = new InterpretterConfig();
     private static final String SCRIPT_STUB = "D.runtime.threads.grep { thread -> %s }";
+    // Groovy truth applied explicitly as the predicate returns boolean
+    private static final String PARALLEL_SCRIPT_STUB = "D.runtime.threads.where({ thread -> (%s) as boolean } as com.github.olivergondza.dumpling.model.ProcessThread.Predicate, %d)";
 
     @Option(name = "-i", aliases = {"--in"}, usage = "Input for process runtime")
     private ProcessRuntime<?, ?, ?> runtime;
@@ -53,6 +55,9 @@ public class GrepCommand implements CliCommand {
     @Option(name = "-p", aliases = {"--porcelain"}, usage = "Show in a format designed for machine consumption")
     private boolean porcelain = false;
 
+    @Option(name = "-P", aliases = {"--parallelism"}, usage = "Number of threads evaluating the predicate concurrently")
+    private int parallelism = 1;
+
     @Argument(metaVar = "PREDICATE", usage = "Groovy expression used as a filtering criteria", required = true)
     private String predicate;
 
@@ -75,7 +80,11 @@ public class GrepCommand implements CliCommand {
         GroovyShell shell = new GroovyShell(binding, CONFIG.getCompilerConfiguration());
 
         CONFIG.setupDecorateMethods();
-        String script = String.format(SCRIPT_STUB, predicate);
+        if (parallelism < 1) throw new CommandFailedException("Parallelism must be positive, was " + parallelism);
+        String script = parallelism == 1
+                ? String.format(SCRIPT_STUB, predicate)
+                : String.format(PARALLEL_SCRIPT_STUB, predicate, parallelism)
+        ;
         ThreadSet<?, ?, ?> set = (ThreadSet<?, ?, ?>) shell.run(
                 script, "dumpling-script", Collections.<String>emptyList()
         );
@@ -23,10 +23,14 @@
  */
 package com.github.olivergondza.dumpling.cli;
 
+import java.io.File;
+import java.io.IOException;
+
 import com.google.auto.service.AutoService;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.Option;
 
+import com.github.olivergondza.dumpling.factory.SnapshotFactory;
 import com.github.olivergondza.dumpling.model.ModelObject.Mode;
 import com.github.olivergondza.dumpling.model.ProcessRuntime;
 
@@ -46,6 +50,9 @@ public class ThreaddumpCommand implements CliCommand {
     @Option(name = "-p", aliases = {"--porcelain"}, usage = "Show in a format designed for machine consumption")
     private boolean porcelain = false;
 
+    @Option(name = "-s", aliases = {"--snapshot"}, usage = "Write binary snapshot to file instead of printing, load it using 'snapshot:' source")
+    private File snapshot;
+
     @Nonnull
     @Override
     public String getName() {
@@ -60,6 +67,15 @@ public class ThreaddumpCommand implements CliCommand {
 
     @Override
     public int run(@Nonnull ProcessStream process) throws CmdLineException {
+        if (snapshot != null) {
+            try {
+                new SnapshotFactory().toFile(runtime, snapshot);
+            } catch (IOException ex) {
+                throw new CommandFailedException(ex);
+            }
+            return 0;
+        }
+
         runtime.toString(process.out(), porcelain ? Mode.MACHINE : Mode.HUMAN);
         return 0;
     }
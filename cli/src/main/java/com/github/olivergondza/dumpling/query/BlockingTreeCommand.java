@@ -43,6 +43,12 @@ public final class BlockingTreeCommand implements CliCommand {
     @Option(name = "--show-stack-traces", usage = "List stack traces of all threads involved")
     private boolean showStackTraces = false;
 
+    @Option(name = "--max-depth", usage = "Do not list threads blocked deeper than given number of levels")
+    private int maxDepth = Integer.MAX_VALUE;
+
+    @Option(name = "--max-width", usage = "Do not list more than given number of threads blocked by a single thread")
+    private int maxWidth = Integer.MAX_VALUE;
+
     @Nonnull
     @Override
     public String getName() {
@@ -57,8 +63,11 @@ public final class BlockingTreeCommand implements CliCommand {
 
     @Override
     public int run(@Nonnull ProcessStream process) throws CmdLineException {
+        if (maxDepth < 0) throw new CmdLineException("Depth must not be negative. " + maxDepth + " given.");
+        if (maxWidth < 0) throw new CmdLineException("Width must not be negative. " + maxWidth + " given.");
+
         @SuppressWarnings({"unchecked", "rawtypes"})
-        Result<?, ?, ?> result = new Result(runtime.getThreads(), showStackTraces);
+        Result<?, ?, ?> result = new Result(runtime.getThreads(), showStackTraces, maxDepth, maxWidth);
         result.printInto(process.out());
         return result.exitCode();
     }
@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import com.google.auto.service.AutoService;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.Option;
+
+import com.github.olivergondza.dumpling.cli.CliCommand;
+import com.github.olivergondza.dumpling.cli.ProcessStream;
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.query.HotSpots.Result;
+
+@AutoService(CliCommand.class)
+public final class HotSpotsCommand implements CliCommand {
+
+    @Option(name = "-i", aliases = {"--in"}, required = true, usage = "Input for process runtime")
+    private ProcessRuntime<?, ?, ?> runtime;
+
+    @Option(name = "--show-stack-traces", usage = "List stack traces of all threads sampled")
+    private boolean showStackTraces = false;
+
+    @Option(name = "--top", usage = "Report given number of top entries only")
+    private int top = 10;
+
+    @Option(name = "--status", usage = "Sample threads in given status only, can be repeated")
+    private List<ThreadStatus> statuses = new ArrayList<ThreadStatus>();
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "hot-spots";
+    }
+
+    @Nonnull
+    @Override
+    public String getDescription() {
+        return "Histogram of methods, classes and packages on thread stacks";
+    }
+
+    @Override
+    public int run(@Nonnull ProcessStream process) throws CmdLineException {
+        if (top < 0) throw new CmdLineException("Number of entries must not be negative. " + top + " given.");
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Result<?, ?, ?> result = new Result(runtime.getThreads(), showStackTraces, top, statuses());
+        result.printInto(process.out());
+        return result.exitCode();
+    }
+
+    private @Nonnull Set<ThreadStatus> statuses() {
+        return statuses.isEmpty()
+                ? EnumSet.allOf(ThreadStatus.class)
+                : EnumSet.copyOf(statuses)
+        ;
+    }
+}
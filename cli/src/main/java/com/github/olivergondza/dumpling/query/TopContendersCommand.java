@@ -43,6 +43,9 @@ public final class TopContendersCommand implements CliCommand {
     @Option(name = "--show-stack-traces", usage = "List stack traces of all threads involved")
     private boolean showStackTraces = false;
 
+    @Option(name = "--top", usage = "Report given number of top contenders only")
+    private int top = Integer.MAX_VALUE;
+
     @Nonnull
     @Override
     public String getName() {
@@ -57,8 +60,10 @@ public final class TopContendersCommand implements CliCommand {
 
     @Override
     public int run(@Nonnull ProcessStream process) throws CmdLineException {
+        if (top < 0) throw new CmdLineException("Number of contenders must not be negative. " + top + " given.");
+
         @SuppressWarnings({"unchecked", "rawtypes"})
-        Result<?, ?, ?> result = new Result(runtime.getThreads(), showStackTraces);
+        Result<?, ?, ?> result = new Result(runtime.getThreads(), showStackTraces, top);
         result.printInto(process.out());
         return result.exitCode();
     }
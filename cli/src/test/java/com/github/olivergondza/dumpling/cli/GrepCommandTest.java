@@ -68,6 +68,22 @@ public class GrepCommandTest extends AbstractCliTest {
         assertThat(out.toString(), containsString("- waiting to lock <0x00000004063a9378> (a hudson.model.Queue)"));
     }
 
+    @Test
+    public void parallel() throws Exception {
+        final String log = Util.asFile(Util.resource("jstack/producer-consumer.log")).getAbsolutePath();
+
+        run("grep", "thread.status.waiting || thread.name.contains('thread')", "--in", "threaddump:" + log, "--porcelain");
+        String expected = out.toString();
+        assertThat(this, succeeded());
+
+        run("grep", "thread.status.waiting || thread.name.contains('thread')", "--in", "threaddump:" + log, "--porcelain", "-P", "4");
+        assertThat(this, succeeded());
+        assertThat(out.toString(), equalTo(expected));
+
+        run("grep", "thread.name", "--in", "threaddump:" + log, "--parallelism", "0");
+        assertThat(exitValue, not(equalTo(0)));
+    }
+
     @Test
     public void  hasHelp() {
         run("help", "grep");
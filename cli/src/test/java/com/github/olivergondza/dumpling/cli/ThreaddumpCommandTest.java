@@ -26,6 +26,12 @@ package com.github.olivergondza.dumpling.cli;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
 import org.junit.Test;
 
 import com.github.olivergondza.dumpling.Util;
@@ -63,6 +69,56 @@ public class ThreaddumpCommandTest extends AbstractCliTest {
         assertThat(out.toString(), containsString("- waiting to lock <0x00000004063a9378> (a hudson.model.Queue)"));
     }
 
+    @Test
+    public void archive() throws Exception {
+        File archive = File.createTempFile("dumpling", ".zip");
+        archive.deleteOnExit();
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        for (String name: Arrays.asList("deadlock.log", "producer-consumer.log")) {
+            zip.putNextEntry(new ZipEntry(name));
+            zip.write(Util.asString(Util.resource("jstack/" + name)).getBytes());
+        }
+        zip.close();
+
+        run("threaddump", "--in", "threaddump:" + archive.getAbsolutePath() + "!producer-consumer.log");
+        assertThat(this, succeeded());
+        assertThat(out.toString(), containsString("\"blocked_thread\" prio=10 tid=0x2ad39c16b800 nid=32297"));
+
+        run("threaddump", "--in", "threaddump:" + archive.getAbsolutePath());
+        assertThat(exitValue, equalTo(-1));
+        assertThat(err.toString(), containsString("contains 2 threaddumps"));
+
+        run("threaddump", "--in", "threaddump:" + archive.getAbsolutePath() + "!no-such.log");
+        assertThat(exitValue, equalTo(-1));
+        assertThat(err.toString(), containsString("No threaddump 'no-such.log'"));
+
+        run("threaddump", "--in", "threaddump:" + archive.getAbsolutePath() + "!producer-consumer.log?parallelism=2");
+        assertThat(this, succeeded());
+        assertThat(out.toString(), containsString("\"blocked_thread\" prio=10 tid=0x2ad39c16b800 nid=32297"));
+
+        run("threaddump", "--in", "threaddump:" + archive.getAbsolutePath() + "!producer-consumer.log?parallelism=0");
+        assertThat(exitValue, equalTo(-1));
+        assertThat(err.toString(), containsString("Parallelism must be a positive number: 0"));
+    }
+
+    @Test
+    public void snapshot() throws Exception {
+        String log = Util.asFile(Util.resource("jstack/producer-consumer.log")).getAbsolutePath();
+        File snapshot = File.createTempFile("dumpling", ".snapshot");
+        snapshot.deleteOnExit();
+
+        run("threaddump", "--in", "threaddump:" + log);
+        String expected = out.toString();
+
+        run("threaddump", "--in", "threaddump:" + log, "--snapshot", snapshot.getAbsolutePath());
+        assertThat(this, succeeded());
+        assertThat(out.toString(), equalTo(""));
+
+        run("threaddump", "--in", "snapshot:" + snapshot.getAbsolutePath());
+        assertThat(this, succeeded());
+        assertThat(out.toString(), equalTo(expected));
+    }
+
     @Test
     public void  hasHelp() {
         run("help", "threaddump");
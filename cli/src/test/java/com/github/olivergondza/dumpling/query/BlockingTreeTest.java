@@ -56,6 +56,18 @@ public class BlockingTreeTest extends AbstractCliTest {
         assertQueryListing(out.toString());
     }
 
+    @Test
+    public void cliQueryLimits() {
+        run("blocking-tree", "--max-depth", "1", "--max-width", "1", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), equalTo(""));
+
+        String out = this.out.toString();
+        assertThat(out, containsString("%n\t\"aa\""));
+        assertThat(out, containsString("%n\t... 1 more%n"));
+        assertThat(out, not(containsString("\"ab\"")));
+        assertThat(out, not(containsString("\"aaa\"")));
+    }
+
     @Test
     public void toStringNoTraces() {
         assertQueryListing(new BlockingTree().query(runtime.getThreads()).toString());
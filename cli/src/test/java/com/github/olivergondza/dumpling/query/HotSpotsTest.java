@@ -0,0 +1,54 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.cli.AbstractCliTest;
+
+public class HotSpotsTest extends AbstractCliTest {
+
+    private final String logPath = Util.asFile(Util.resource("jstack/contention.log")).getAbsolutePath();
+
+    @Test
+    public void cliQuery() throws Exception {
+        run("hot-spots", "--status", "BLOCKED", "--status", "SLEEPING", "--top", "1", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), equalTo(""));
+
+        assertThat(out.toString(), containsString("%n       3  60.0%%        3  60.0%%  com.github.olivergondza.dumpling.query.TopContendersTest$1Consumer.run%n"));
+        assertThat(out.toString(), containsString("%n       3  60.0%%        5 100.0%%  com.github.olivergondza.dumpling.query%n"));
+        assertThat(out.toString(), containsString("%nThreads: 5; "));
+        assertThat(exitValue, equalTo(5));
+    }
+
+    @Test
+    public void cliQueryNegativeTop() throws Exception {
+        run("hot-spots", "--top", "-1", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), containsString("Number of entries must not be negative. -1 given."));
+    }
+}
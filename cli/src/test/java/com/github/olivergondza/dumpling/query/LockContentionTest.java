@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.cli.AbstractCliTest;
+
+public class LockContentionTest extends AbstractCliTest {
+
+    private final String logPath = Util.asFile(Util.resource("jstack/contention.log")).getAbsolutePath();
+
+    @Test
+    public void cliQuery() throws Exception {
+        run("lock-contention", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), equalTo(""));
+
+        assertThat(out.toString(), containsString(
+                "<0x7d74de4c0> (a java.lang.Object): 3 waiters%n"
+                + "  Owner: \"producer\" prio=10 tid=0x7ff5a02e2000 nid=4567 at com.github.olivergondza.dumpling.query.TopContendersTest$1.run(TopContendersTest.java:68)%n"
+                + "  Waiting 3 at com.github.olivergondza.dumpling.query.TopContendersTest$1Consumer.run(TopContendersTest.java:84)%n"
+        ));
+        assertThat(out.toString(), containsString("%njava.lang.Object: 1 locks; Owners: 1; Waiters: 3%n"));
+        assertThat(exitValue, equalTo(1));
+    }
+
+    @Test
+    public void cliQueryTraces() throws Exception {
+        run("lock-contention", "--show-stack-traces", "--top", "1", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), equalTo(""));
+
+        assertThat(out.toString(), containsString("%n\"consumerA\" prio=10 tid=0x7ff5a02e2800 nid=4568%n"));
+        assertThat(out.toString(), containsString("%n\"producer\" prio=10 tid=0x7ff5a02e2000 nid=4567%n"));
+        assertThat(exitValue, equalTo(1));
+    }
+
+    @Test
+    public void ignoreIdleExecutors() throws Exception {
+        String idlePath = Util.asFile(Util.resource("jstack/idle-executors.log")).getAbsolutePath();
+        run("lock-contention", "--in", "threaddump:" + idlePath);
+        assertThat(err.toString(), equalTo(""));
+
+        assertThat(out.toString(), not(containsString("ConditionObject")));
+        assertThat(out.toString(), containsString(
+                "(a java.util.concurrent.Semaphore$NonfairSync): 1 waiters%n"
+                + "  Waiting 1 at java.util.concurrent.Semaphore.acquire(Semaphore.java:317)%n"
+        ));
+        assertThat(out.toString(), containsString("%nContended locks: 1; Lock classes: 1; Waiters: 1%n"));
+        assertThat(exitValue, equalTo(1));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.cli.AbstractCliTest;
+
+public class StackClustersTest extends AbstractCliTest {
+
+    private final String logPath = Util.asFile(Util.resource("jstack/contention.log")).getAbsolutePath();
+
+    @Test
+    public void cliQuery() throws Exception {
+        run("stack-clusters", "--top-frames", "3", "--ignore-line-numbers", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), equalTo(""));
+
+        // Consumers blocked on the same monitor
+        assertThat(out.toString(), containsString("%nCluster #2: 3 threads%n\"consumerC\" prio=10 tid=0x7ff5a02ef000 nid=4570%n"));
+        assertThat(out.toString(), containsString("%n\tat com.github.olivergondza.dumpling.query.TopContendersTest$1Consumer.run(TopContendersTest.java)%n"));
+        assertThat(out.toString(), not(containsString("java.lang.Thread.State:")));
+        assertThat(out.toString(), containsString("%nThreads: 18; Clusters: 6%n"));
+        assertThat(exitValue, equalTo(clusters(out.toString())));
+    }
+
+    @Test
+    public void cliQueryTraces() throws Exception {
+        run("stack-clusters", "--show-stack-traces", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), equalTo(""));
+
+        // Representatives are listed with their stack traces
+        assertThat(out.toString(), containsString("(TopContendersTest.java:84)"));
+        assertThat(out.toString(), containsString("java.lang.Thread.State: BLOCKED (on object monitor)"));
+        assertThat(exitValue, equalTo(clusters(out.toString())));
+    }
+
+    private int clusters(String out) {
+        return out.split("\nCluster #").length - 1;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.PrintStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.olivergondza.dumpling.ThreadDumpGenerator;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.Topology;
+import com.github.olivergondza.dumpling.cli.AbstractCliTest;
+
+public class ThreadPoolsTest extends AbstractCliTest {
+
+    public @Rule TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void cliQuery() throws Exception {
+        File dump = tmp.newFile("pools.log");
+        PrintStream stream = new PrintStream(dump);
+        new ThreadDumpGenerator().threads(20).pools(2, "pool-%d-thread-%d").topology(Topology.STAR, 10).contended(0.5).write(stream);
+        stream.close();
+
+        run("thread-pools", "--in", "threaddump:" + dump.getAbsolutePath());
+        assertThat(err.toString(), equalTo(""));
+        assertThat(out.toString(), containsString("* pool-1-thread-*: 10 threads; Idle: 0; Busy: 1; Blocked: 9; Saturation: 100%%%n"));
+        assertThat(out.toString(), containsString("%nPools: 2; Exhausted: 1%n"));
+        assertThat(exitValue, equalTo(1)); // Number of exhausted pools
+    }
+}
@@ -46,6 +46,17 @@ public class TopContendersTest extends AbstractCliTest {
         assertThat(exitValue, equalTo(1)); // Number of blocking threads
     }
 
+    @Test
+    public void cliQueryTop() throws Exception {
+        run("top-contenders", "--top", "0", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), equalTo(""));
+        assertThat(out.toString(), containsString("%nBlocking threads: 0; Blocked threads: 0%n"));
+        assertThat(exitValue, equalTo(0));
+
+        run("top-contenders", "--top", "-1", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), containsString("Number of contenders must not be negative. -1 given."));
+    }
+
     @Test
     public void toStringNoTraces() throws Exception {
         ThreadDumpRuntime runtime = new ThreadDumpFactory().fromStream(Util.resource("jstack/contention.log"));
@@ -0,0 +1,382 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Read threaddumps from possibly compressed archive.
+ *
+ * Gzip compression as well as zip and tar archives are recognized by their magic bytes and decompressed while read.
+ * Input that is neither is presented as an archive with a single entry.
+ *
+ * @author ogondza
+ */
+/*package*/ abstract class ArchiveReader implements Closeable {
+
+    // Enough to recognize tar by the magic at offset 257
+    /*package*/ static final int MAGIC_LENGTH = 512;
+
+    private static final int TAR_BLOCK = 512;
+
+    /**
+     * Open archive reader for the stream, taking over its ownership.
+     */
+    /*package*/ static @Nonnull ArchiveReader open(@Nonnull InputStream in) throws IOException {
+        BufferedInputStream stream = decompress(in);
+        byte[] magic = peek(stream);
+        if (isZip(magic)) return new Zip(stream);
+        if (isTar(magic)) return new Tar(stream);
+        return new Single(stream);
+    }
+
+    /**
+     * Decompress the stream in case it is gzip compressed.
+     */
+    /*package*/ static @Nonnull BufferedInputStream decompress(@Nonnull InputStream in) throws IOException {
+        BufferedInputStream stream = new BufferedInputStream(in, 65536);
+        if (!isGzip(peek(stream))) return stream;
+
+        return new BufferedInputStream(new GZIPInputStream(stream, 65536), 65536);
+    }
+
+    /**
+     * Determine if the content starting with given bytes can be read as it is.
+     */
+    /*package*/ static boolean isPlain(@Nonnull byte[] magic) {
+        return !isGzip(magic) && !isZip(magic) && !isTar(magic);
+    }
+
+    private static byte[] peek(BufferedInputStream stream) throws IOException {
+        stream.mark(MAGIC_LENGTH);
+        byte[] magic = new byte[MAGIC_LENGTH];
+        int read = 0;
+        int count;
+        while (read < magic.length && (count = stream.read(magic, read, magic.length - read)) != -1) {
+            read += count;
+        }
+        stream.reset();
+        return read == magic.length ? magic : Arrays.copyOf(magic, read);
+    }
+
+    private static boolean isGzip(byte[] magic) {
+        return magic.length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b;
+    }
+
+    private static boolean isZip(byte[] magic) {
+        return magic.length >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4;
+    }
+
+    private static boolean isTar(byte[] magic) {
+        return magic.length >= 262 && "ustar".equals(new String(magic, 257, 5, StandardCharsets.US_ASCII));
+    }
+
+    protected final @Nonnull InputStream stream;
+
+    protected ArchiveReader(@Nonnull InputStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * Move to the next entry.
+     *
+     * @return Entry name or null if there are no more entries.
+     */
+    /*package*/ abstract @CheckForNull String nextEntry() throws IOException;
+
+    /**
+     * Whether the input is an archive, possibly with any number of entries.
+     */
+    /*package*/ abstract boolean isArchive();
+
+    /**
+     * Content of the current entry. Closing the stream does not close the archive.
+     */
+    /*package*/ abstract @Nonnull InputStream entry();
+
+    /*package*/ @Nonnull byte[] readEntry() throws IOException {
+        InputStream entry = entry();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[65536];
+        int read;
+        while ((read = entry.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    /**
+     * Stream that does not close the archive when closed.
+     */
+    private static class EntryStream extends FilterInputStream {
+        private EntryStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // Noop
+        }
+    }
+
+    private static final class Single extends ArchiveReader {
+        private boolean read = false;
+
+        private Single(@Nonnull InputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        /*package*/ String nextEntry() {
+            if (read) return null;
+            read = true;
+            return "";
+        }
+
+        @Override
+        /*package*/ boolean isArchive() {
+            return false;
+        }
+
+        @Override
+        /*package*/ @Nonnull InputStream entry() {
+            return new EntryStream(stream);
+        }
+    }
+
+    private static final class Zip extends ArchiveReader {
+        private final @Nonnull ZipInputStream zip;
+
+        private Zip(@Nonnull InputStream stream) {
+            this(new ZipInputStream(stream));
+        }
+
+        private Zip(@Nonnull ZipInputStream zip) {
+            super(zip);
+            this.zip = zip;
+        }
+
+        @Override
+        /*package*/ String nextEntry() throws IOException {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory()) return entry.getName();
+            }
+            return null;
+        }
+
+        @Override
+        /*package*/ boolean isArchive() {
+            return true;
+        }
+
+        @Override
+        /*package*/ @Nonnull InputStream entry() {
+            return new EntryStream(zip);
+        }
+    }
+
+    /**
+     * Tar reader supporting ustar format including GNU long names and PAX paths.
+     */
+    private static final class Tar extends ArchiveReader {
+        private final @Nonnull byte[] header = new byte[TAR_BLOCK];
+        // Unread bytes of the current entry and padding after them
+        private long remaining = 0;
+        private long padding = 0;
+
+        private Tar(@Nonnull InputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        /*package*/ String nextEntry() throws IOException {
+            String longName = null;
+            while (true) {
+                skipFully(remaining + padding);
+                remaining = padding = 0;
+
+                if (!readHeader()) return null;
+
+                long size = octal(124, 12);
+                remaining = size;
+                padding = (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+
+                char type = (char) header[156];
+                if (type == 'L') { // GNU long name of the next entry
+                    longName = trimNul(new String(readEntry(), StandardCharsets.UTF_8));
+                    continue;
+                }
+                if (type == 'x') { // PAX extended header of the next entry
+                    String path = paxPath(new String(readEntry(), StandardCharsets.UTF_8));
+                    if (path != null) {
+                        longName = path;
+                    }
+                    continue;
+                }
+                if (type != '0' && type != '\0') { // Not a regular file
+                    longName = null;
+                    continue;
+                }
+
+                if (longName != null) return longName;
+
+                String name = string(0, 100);
+                String prefix = string(345, 155);
+                return prefix.isEmpty() ? name : prefix + "/" + name;
+            }
+        }
+
+        @Override
+        /*package*/ boolean isArchive() {
+            return true;
+        }
+
+        @Override
+        /*package*/ @Nonnull InputStream entry() {
+            return new EntryStream(stream) {
+                @Override
+                public int read() throws IOException {
+                    if (remaining <= 0) return -1;
+                    int b = in.read();
+                    if (b == -1) throw new EOFException("Truncated tar entry");
+                    remaining--;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (remaining <= 0) return -1;
+                    int read = in.read(b, off, (int) Math.min(len, remaining));
+                    if (read == -1) throw new EOFException("Truncated tar entry");
+                    remaining -= read;
+                    return read;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long skipped = in.skip(Math.min(n, remaining));
+                    remaining -= skipped;
+                    return skipped;
+                }
+
+                @Override
+                public int available() throws IOException {
+                    return (int) Math.min(in.available(), remaining);
+                }
+            };
+        }
+
+        // Read next header, false at the end of the archive
+        private boolean readHeader() throws IOException {
+            int read = 0;
+            int count;
+            while (read < TAR_BLOCK && (count = stream.read(header, read, TAR_BLOCK - read)) != -1) {
+                read += count;
+            }
+            if (read < TAR_BLOCK) return false;
+
+            for (byte b: header) {
+                if (b != 0) return true;
+            }
+            return false; // Zero block terminates the archive
+        }
+
+        private void skipFully(long count) throws IOException {
+            while (count > 0) {
+                long skipped = stream.skip(count);
+                if (skipped <= 0) {
+                    if (stream.read() == -1) throw new EOFException("Truncated tar archive");
+                    skipped = 1;
+                }
+                count -= skipped;
+            }
+        }
+
+        private long octal(int offset, int length) {
+            if ((header[offset] & 0x80) != 0) { // Base-256 encoding of large sizes
+                long value = header[offset] & 0x7f;
+                for (int i = 1; i < length; i++) {
+                    value = (value << 8) | (header[offset + i] & 0xff);
+                }
+                return value;
+            }
+
+            long value = 0;
+            for (int i = offset; i < offset + length; i++) {
+                byte b = header[i];
+                if (b == 0 || b == ' ') {
+                    if (value != 0) break;
+                    continue;
+                }
+                if (b < '0' || b > '7') throw new IllegalRuntimeStateException("Invalid tar header");
+                value = (value << 3) | (b - '0');
+            }
+            return value;
+        }
+
+        private String string(int offset, int length) {
+            int end = offset;
+            while (end < offset + length && header[end] != 0) {
+                end++;
+            }
+            return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+        }
+
+        private static String trimNul(String value) {
+            int end = value.indexOf('\0');
+            return end == -1 ? value : value.substring(0, end);
+        }
+
+        // Records in a form of '<length> <key>=<value>\n'
+        private static @CheckForNull String paxPath(String records) {
+            for (String record: records.split("\n")) {
+                int space = record.indexOf(' ');
+                if (space != -1 && record.startsWith("path=", space + 1)) {
+                    return record.substring(space + 6);
+                }
+            }
+            return null;
+        }
+    }
+}
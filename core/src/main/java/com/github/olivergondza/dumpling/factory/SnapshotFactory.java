@@ -0,0 +1,474 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+import com.github.olivergondza.dumpling.model.ProcessThread;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+import com.github.olivergondza.dumpling.model.jmx.JmxRuntime;
+import com.github.olivergondza.dumpling.model.jmx.JmxThread;
+import com.github.olivergondza.dumpling.model.jvm.JvmRuntime;
+import com.github.olivergondza.dumpling.model.jvm.JvmThread;
+import com.github.olivergondza.dumpling.model.mxbean.MXBeanRuntime;
+
+/**
+ * Store {@link ProcessRuntime} in compact binary snapshot and restore it.
+ *
+ * Snapshot holds a table of all strings and a table of distinct stack frames that threads refer to by index.
+ * Numbers are varint encoded. {@link ThreadDumpRuntime}, {@link JmxRuntime} and {@link JvmRuntime} are supported,
+ * the latter is restored with threads not referring to live {@link Thread}s.
+ *
+ * @author ogondza
+ */
+public class SnapshotFactory {
+
+    private static final byte[] MAGIC = "DMPS".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    private static final int KIND_THREADDUMP = 0;
+    private static final int KIND_JMX = 1;
+    private static final int KIND_JVM = 2;
+
+    private static final int DAEMON = 1;
+    private static final int PRIORITY = 1 << 1;
+    private static final int ID = 1 << 2;
+    private static final int TID = 1 << 3;
+    private static final int NID = 1 << 4;
+    private static final int WAITING_TO = 1 << 5;
+    private static final int WAITING_ON = 1 << 6;
+    private static final int GROUP = 1 << 7;
+
+    /**
+     * Restore runtime from snapshot file.
+     *
+     * @throws IOException File could not be loaded.
+     */
+    public @Nonnull ProcessRuntime<?, ?, ?> fromFile(@Nonnull File snapshot) throws IOException {
+        FileInputStream fis = new FileInputStream(snapshot);
+        try {
+            return fromStream(fis);
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * Restore runtime from snapshot.
+     */
+    public @Nonnull ProcessRuntime<?, ?, ?> fromStream(@Nonnull InputStream stream) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException ex) {
+            throw new IllegalRuntimeStateException("Failed reading snapshot: %s", ex.getMessage());
+        }
+
+        return new Decoder(out.toByteArray()).runtime();
+    }
+
+    /**
+     * Store runtime in snapshot file.
+     *
+     * @throws IOException File could not be written.
+     */
+    public void toFile(@Nonnull ProcessRuntime<?, ?, ?> runtime, @Nonnull File snapshot) throws IOException {
+        FileOutputStream fos = new FileOutputStream(snapshot);
+        try {
+            toStream(runtime, fos);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Store runtime in snapshot.
+     *
+     * @throws IOException Stream could not be written.
+     */
+    public void toStream(@Nonnull ProcessRuntime<?, ?, ?> runtime, @Nonnull OutputStream stream) throws IOException {
+        new Encoder(runtime).write(stream);
+    }
+
+    /**
+     * Checks whether the content starting with given bytes is a snapshot.
+     */
+    /*package*/ static boolean isSnapshot(@Nonnull byte[] head) {
+        return head.length >= MAGIC.length && Arrays.equals(MAGIC, Arrays.copyOf(head, MAGIC.length));
+    }
+
+    private static final class Encoder {
+        private final @Nonnull ProcessRuntime<?, ?, ?> runtime;
+        private final @Nonnull Map<String, Integer> strings = new HashMap<String, Integer>();
+        private final @Nonnull Map<StackTraceElement, Integer> frames = new HashMap<StackTraceElement, Integer>();
+        private final @Nonnull Buffer tables = new Buffer();
+        private final @Nonnull Buffer body = new Buffer();
+        private final @Nonnull Buffer frameTable = new Buffer();
+
+        private Encoder(@Nonnull ProcessRuntime<?, ?, ?> runtime) {
+            this.runtime = runtime;
+        }
+
+        private void write(@Nonnull OutputStream stream) throws IOException {
+            if (runtime instanceof ThreadDumpRuntime) {
+                body.varint(KIND_THREADDUMP);
+                List<String> header = ((ThreadDumpRuntime) runtime).getHeader();
+                body.varint(header.size());
+                for (String line: header) {
+                    string(line);
+                }
+            } else if (runtime instanceof MXBeanRuntime) {
+                body.varint(runtime instanceof JvmRuntime ? KIND_JVM : KIND_JMX);
+                MXBeanRuntime<?, ?, ?> mxbean = (MXBeanRuntime<?, ?, ?>) runtime;
+                body.varlong(mxbean.getCaptured().getTime());
+                string(mxbean.getJvmId());
+            } else {
+                throw new IllegalArgumentException("Unsupported runtime " + runtime.getClass().getName());
+            }
+
+            body.varint(runtime.getThreads().size());
+            for (ProcessThread<?, ?, ?> thread: runtime.getThreads()) {
+                thread(thread);
+            }
+
+            // String table is complete only after all frames and threads are written
+            tables.varint(strings.size());
+            tables.varint(frames.size());
+            String[] ordered = new String[strings.size()];
+            for (Map.Entry<String, Integer> e: strings.entrySet()) {
+                ordered[e.getValue()] = e.getKey();
+            }
+            for (String string: ordered) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                tables.varint(bytes.length);
+                tables.bytes(bytes, bytes.length);
+            }
+
+            stream.write(MAGIC);
+            Buffer version = new Buffer();
+            version.varint(VERSION);
+            version.writeTo(stream);
+            tables.writeTo(stream);
+            frameTable.writeTo(stream);
+            body.writeTo(stream);
+            stream.flush();
+        }
+
+        private void thread(@Nonnull ProcessThread<?, ?, ?> thread) {
+            String group = thread instanceof JvmThread ? ((JvmThread) thread).getGroupName() : null;
+            int flags = (thread.isDaemon() ? DAEMON : 0)
+                    | (thread.getPriority() != null ? PRIORITY : 0)
+                    | (thread.getId() != null ? ID : 0)
+                    | (thread.getTid() != null ? TID : 0)
+                    | (thread.getNid() != null ? NID : 0)
+                    | (thread.getWaitingToLock() != null ? WAITING_TO : 0)
+                    | (thread.getWaitingOnLock() != null ? WAITING_ON : 0)
+                    | (group != null ? GROUP : 0)
+            ;
+            body.varint(flags);
+            string(thread.getName());
+            string(thread.getStatus().name());
+            if (thread.getPriority() != null) body.varint(zigzag(thread.getPriority()));
+            if (thread.getId() != null) body.varlong(thread.getId());
+            if (thread.getTid() != null) body.varlong(thread.getTid());
+            if (thread.getNid() != null) body.varlong(thread.getNid());
+            if (group != null) string(group);
+
+            List<StackTraceElement> trace = thread.getStackTrace().getElements();
+            body.varint(trace.size());
+            for (StackTraceElement element: trace) {
+                body.varint(frame(element));
+            }
+
+            if (thread.getWaitingToLock() != null) lock(thread.getWaitingToLock());
+            if (thread.getWaitingOnLock() != null) lock(thread.getWaitingOnLock());
+
+            List<ThreadLock.Monitor> monitors = thread.getMonitors();
+            body.varint(monitors.size());
+            for (ThreadLock.Monitor monitor: monitors) {
+                lock(monitor.getLock());
+                body.varint(monitor.getDepth());
+            }
+
+            Set<ThreadLock> synchronizers = thread.getAcquiredSynchronizers();
+            body.varint(synchronizers.size());
+            for (ThreadLock synchronizer: synchronizers) {
+                lock(synchronizer);
+            }
+        }
+
+        private void lock(@Nonnull ThreadLock lock) {
+            string(lock.getClassName());
+            body.varlong(lock.getId());
+        }
+
+        private int frame(@Nonnull StackTraceElement element) {
+            Integer index = frames.get(element);
+            if (index != null) return index;
+
+            frameTable.varint(index(element.getClassName()));
+            frameTable.varint(index(element.getMethodName()));
+            frameTable.varint(element.getFileName() == null ? 0 : index(element.getFileName()) + 1);
+            frameTable.varint(zigzag(element.getLineNumber()));
+
+            index = frames.size();
+            frames.put(element, index);
+            return index;
+        }
+
+        private void string(@Nonnull String string) {
+            body.varint(index(string));
+        }
+
+        private int index(@Nonnull String string) {
+            Integer index = strings.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.put(string, index);
+            }
+            return index;
+        }
+
+        private static int zigzag(int value) {
+            return (value << 1) ^ (value >> 31);
+        }
+    }
+
+    private static final class Decoder {
+        private final @Nonnull byte[] data;
+        private int position;
+        private String[] strings;
+        private StackTraceElement[] frames;
+
+        private Decoder(@Nonnull byte[] data) {
+            this.data = data;
+        }
+
+        private @Nonnull ProcessRuntime<?, ?, ?> runtime() {
+            if (!isSnapshot(data)) throw new IllegalRuntimeStateException("Not a dumpling snapshot");
+            position = MAGIC.length;
+
+            try {
+                int version = varint();
+                if (version != VERSION) throw new IllegalRuntimeStateException("Unsupported snapshot version %d", version);
+
+                strings = new String[varint()];
+                int frameCount = varint();
+                for (int i = 0; i < strings.length; i++) {
+                    int length = varint();
+                    strings[i] = new String(data, position, length, StandardCharsets.UTF_8);
+                    position += length;
+                }
+
+                frames = new StackTraceElement[frameCount];
+                for (int i = 0; i < frameCount; i++) {
+                    String className = string();
+                    String methodName = string();
+                    int file = varint();
+                    frames[i] = StackTrace.element(
+                            className, methodName, file == 0 ? null : strings[file - 1], unzigzag(varint())
+                    );
+                }
+
+                int kind = varint();
+                switch (kind) {
+                    case KIND_THREADDUMP:
+                        List<String> header = new ArrayList<String>();
+                        for (int i = varint(); i > 0; i--) {
+                            header.add(string());
+                        }
+
+                        Set<ThreadDumpThread.Builder> dumpThreads = new LinkedHashSet<ThreadDumpThread.Builder>();
+                        for (int i = varint(); i > 0; i--) {
+                            dumpThreads.add(thread(new ThreadDumpThread.Builder()));
+                        }
+                        return new ThreadDumpRuntime(dumpThreads, header);
+                    case KIND_JMX:
+                    case KIND_JVM:
+                        Date captured = new Date(varlong());
+                        String jvmId = string();
+
+                        if (kind == KIND_JMX) {
+                            Set<JmxThread.Builder> jmxThreads = new LinkedHashSet<JmxThread.Builder>();
+                            for (int i = varint(); i > 0; i--) {
+                                jmxThreads.add(thread(new JmxThread.Builder()));
+                            }
+                            return new JmxRuntime(jmxThreads, captured, jvmId);
+                        }
+
+                        Set<JvmThread.Builder> jvmThreads = new LinkedHashSet<JvmThread.Builder>();
+                        for (int i = varint(); i > 0; i--) {
+                            jvmThreads.add(thread(null));
+                        }
+                        return new JvmRuntime(jvmThreads, captured, jvmId);
+                    default:
+                        throw new IllegalRuntimeStateException("Unknown runtime kind %d", kind);
+                }
+            } catch (ArrayIndexOutOfBoundsException ex) {
+                throw new IllegalRuntimeStateException("Truncated snapshot");
+            } catch (StringIndexOutOfBoundsException ex) {
+                throw new IllegalRuntimeStateException("Truncated snapshot");
+            }
+        }
+
+        /**
+         * @param builder Builder to populate, null for {@link JvmThread.Builder} that needs the group name upfront.
+         */
+        @SuppressWarnings("unchecked")
+        private <B extends ProcessThread.Builder<B>> B thread(@CheckForNull B builder) {
+            int flags = varint();
+            String name = string();
+            ThreadStatus status = ThreadStatus.valueOf(string());
+            Integer priority = (flags & PRIORITY) != 0 ? unzigzag(varint()) : null;
+            Long id = (flags & ID) != 0 ? varlong() : null;
+            Long tid = (flags & TID) != 0 ? varlong() : null;
+            Long nid = (flags & NID) != 0 ? varlong() : null;
+            String group = (flags & GROUP) != 0 ? string() : null;
+
+            if (builder == null) {
+                builder = (B) new JvmThread.Builder(group);
+            }
+            builder.setName(name).setThreadStatus(status).setDaemon((flags & DAEMON) != 0).setPriority(priority);
+            if (id != null) builder.setId(id);
+            if (tid != null) builder.setTid(tid);
+            if (nid != null) builder.setNid(nid);
+
+            StackTraceElement[] trace = new StackTraceElement[varint()];
+            for (int i = 0; i < trace.length; i++) {
+                trace[i] = frames[varint()];
+            }
+            builder.setStacktrace(trace);
+
+            if ((flags & WAITING_TO) != 0) builder.setWaitingToLock(lock());
+            if ((flags & WAITING_ON) != 0) builder.setWaitingOnLock(lock());
+
+            int monitorCount = varint();
+            List<ThreadLock.Monitor> monitors = new ArrayList<ThreadLock.Monitor>(monitorCount);
+            for (int i = 0; i < monitorCount; i++) {
+                monitors.add(new ThreadLock.Monitor(lock(), varint()));
+            }
+            builder.setAcquiredMonitors(monitors);
+
+            int synchronizerCount = varint();
+            List<ThreadLock> synchronizers = new ArrayList<ThreadLock>(synchronizerCount);
+            for (int i = 0; i < synchronizerCount; i++) {
+                synchronizers.add(lock());
+            }
+            builder.setAcquiredSynchronizers(synchronizers);
+
+            return builder;
+        }
+
+        private @Nonnull ThreadLock lock() {
+            String className = string();
+            return new ThreadLock(className, varlong());
+        }
+
+        private @Nonnull String string() {
+            return strings[varint()];
+        }
+
+        private int varint() {
+            return (int) varlong();
+        }
+
+        private long varlong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = data[position++];
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) return value;
+            }
+            throw new IllegalRuntimeStateException("Malformed varint in snapshot");
+        }
+
+        private static int unzigzag(int value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * Growable byte buffer writing varints.
+     */
+    private static final class Buffer {
+        private byte[] data = new byte[4096];
+        private int size;
+
+        private void varint(int value) {
+            varlong(value & 0xffffffffL);
+        }
+
+        private void varlong(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                data[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        private void bytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, data, size, length);
+            size += length;
+        }
+
+        private void ensure(int length) {
+            if (size + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+            }
+        }
+
+        private void writeTo(OutputStream stream) throws IOException {
+            stream.write(data, 0, size);
+        }
+    }
+}
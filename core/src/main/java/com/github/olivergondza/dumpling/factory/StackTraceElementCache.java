@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Bounded, thread-safe cache of stack trace elements parsed from threaddump lines.
+ *
+ * Identical frames share single {@link StackTraceElement} instance across threads and threaddumps parsed through the
+ * cache. Class, method and file names are interned separately so different frames of the same class share the names
+ * too. Least recently used entries are evicted once the size limit is reached.
+ *
+ * @author ogondza
+ * @see ThreadDumpFactory#frameCache(StackTraceElementCache)
+ */
+public final class StackTraceElementCache {
+
+    /**
+     * Default number of cached frames.
+     */
+    public static final int DEFAULT_SIZE = 16384;
+
+    private static final @Nonnull StackTraceElementCache DEFAULT = new StackTraceElementCache(DEFAULT_SIZE);
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final int maxSize;
+    private final @Nonnull Segment<StackTraceElement>[] frames;
+    private final @Nonnull Segment<String>[] names;
+
+    private final @Nonnull LongAdder hits = new LongAdder();
+    private final @Nonnull LongAdder misses = new LongAdder();
+    private final @Nonnull LongAdder evictions = new LongAdder();
+
+    /**
+     * Cache shared by factories not configured otherwise.
+     */
+    public static @Nonnull StackTraceElementCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param maxSize Maximal number of frames to cache. The same number of names is retained.
+     */
+    @SuppressWarnings("unchecked")
+    public StackTraceElementCache(int maxSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("Cache size must be positive, was " + maxSize);
+        this.maxSize = maxSize;
+
+        // Power of two so segment can be selected by mask
+        int segments = 1;
+        while (segments < MAX_SEGMENTS && segments * 2 <= maxSize) {
+            segments *= 2;
+        }
+
+        frames = new Segment[segments];
+        names = new Segment[segments];
+        for (int i = 0; i < segments; i++) {
+            // Distribute the remainder so the segments add up to maxSize
+            int segmentSize = maxSize / segments + (i < maxSize % segments ? 1 : 0);
+            frames[i] = new Segment<StackTraceElement>(segmentSize, evictions);
+            names[i] = new Segment<String>(segmentSize, null);
+        }
+    }
+
+    /**
+     * Get element cached for threaddump line.
+     *
+     * The line can be any {@link CharSequence} that has String compatible hash code and equality.
+     */
+    /*package*/ @CheckForNull StackTraceElement get(@Nonnull CharSequence line) {
+        StackTraceElement element = segment(frames, line).get(line);
+        if (element == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return element;
+    }
+
+    /**
+     * Cache element for threaddump line.
+     *
+     * @return Element to use. The one already cached in case of a concurrent insertion.
+     */
+    /*package*/ @Nonnull StackTraceElement put(@Nonnull String line, @Nonnull StackTraceElement element) {
+        return segment(frames, line).putIfAbsent(line, element);
+    }
+
+    /**
+     * Get canonical instance of a class, method or file name.
+     */
+    /*package*/ @Nonnull String intern(@Nonnull String name) {
+        return segment(names, name).putIfAbsent(name, name);
+    }
+
+    private static <T> Segment<T> segment(Segment<T>[] segments, CharSequence key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    public @Nonnegative int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Number of frames cached.
+     */
+    public @Nonnegative int size() {
+        int size = 0;
+        for (Segment<StackTraceElement> segment: frames) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Number of lookups that found cached frame.
+     */
+    public @Nonnegative long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of lookups that did not find cached frame.
+     */
+    public @Nonnegative long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of frames removed to stay within the size limit.
+     */
+    public @Nonnegative long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Remove all frames and names, statistics are preserved.
+     */
+    public void clear() {
+        for (int i = 0; i < frames.length; i++) {
+            frames[i].clear();
+            names[i].clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "StackTraceElementCache[size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                size(), maxSize, getHitCount(), getMissCount(), getEvictionCount()
+        );
+    }
+
+    /**
+     * LRU map guarded by its own lock.
+     */
+    private static final class Segment<T> {
+        private final @Nonnull Map<Object, T> map;
+
+        private Segment(final int maxSize, final @CheckForNull LongAdder evictions) {
+            map = new LinkedHashMap<Object, T>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, T> eldest) {
+                    if (size() <= maxSize) return false;
+
+                    if (evictions != null) {
+                        evictions.increment();
+                    }
+                    return true;
+                }
+            };
+        }
+
+        private synchronized @CheckForNull T get(@Nonnull CharSequence key) {
+            return map.get(key);
+        }
+
+        private synchronized @Nonnull T putIfAbsent(@Nonnull String key, @Nonnull T value) {
+            T existing = map.get(key);
+            if (existing != null) return existing;
+
+            map.put(key, value);
+            return value;
+        }
+
+        private synchronized int size() {
+            return map.size();
+        }
+
+        private synchronized void clear() {
+            map.clear();
+        }
+    }
+}
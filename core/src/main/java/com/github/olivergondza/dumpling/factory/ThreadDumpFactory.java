@@ -23,19 +23,31 @@
  */
 package com.github.olivergondza.dumpling.factory;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 import com.github.olivergondza.dumpling.model.ProcessRuntime;
@@ -50,6 +62,10 @@ import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread.Builder;
 /**
  * Instantiate {@link ProcessRuntime} from threaddump produced by <tt>jstack</tt> or similar tool.
  *
+ * The input is read line by line and split into chunks, typically one per thread. Lines are recognized by their
+ * prefix so no regular expressions are evaluated while parsing. Files are mapped to memory and lines kept as bytes
+ * so only the values that get to the model are turned into Strings.
+ *
  * @author ogondza
  */
 public class ThreadDumpFactory {
@@ -58,23 +74,27 @@ public class ThreadDumpFactory {
 
     private static final StackTraceElement WAIT_TRACE_ELEMENT = StackTrace.WAIT_TRACE_ELEMENT;
 
-    private static final String NL = "(?:\\r\\n|\\n)";
-    private static final String LOCK_SUBPATTERN = "<(?:0x)?(\\w+)> \\(a ([^\\)]+)\\)";
-
-    private static final Pattern THREAD_DELIMITER = Pattern.compile(NL + "(?:" + NL + "(?!\\s)|(?=\"))");
-    // TODO the regex is ignoring module name and version at the time: java.lang.Thread.sleep(java.base@9-ea/Native Method)
-    private static final Pattern STACK_TRACE_ELEMENT_LINE = Pattern.compile(" *at (\\S+)\\.(\\S+)\\((?:.+/)?([^:]+?)(\\:\\d+)?\\)");
-    private static final Pattern ACQUIRED_LINE = Pattern.compile("- locked " + LOCK_SUBPATTERN);
+    private static final String THREAD_STATE = "java.lang.Thread.State: ";
+    private static final String ACQUIRED = "- locked ";
+    private static final String WAITING_TO_LOCK = "- waiting to lock ";
+    private static final String WAITING_TO_RELOCK = "- waiting to re-lock in wait() ";
+    private static final String WAITING_ON = "- waiting on ";
     // Oracle/OpenJdk puts unnecessary space after 'parking to wait for'
-    private static final Pattern WAITING_ON_LINE = Pattern.compile("- (?:waiting on|parking to wait for ?) " + LOCK_SUBPATTERN);
-    private static final Pattern WAITING_TO_LOCK_LINE = Pattern.compile("- waiting to (?:lock|re-lock in wait\\(\\)) " + LOCK_SUBPATTERN);
-    private static final Pattern OWNABLE_SYNCHRONIZER_LINE = Pattern.compile("- " + LOCK_SUBPATTERN);
-    private static final Pattern THREAD_HEADER = Pattern.compile(
-            "^\"(.*)\" ([^\\n\\r]+)(?:" + NL + "\\s+java.lang.Thread.State: ([^\\n\\r]+)(?:" + NL + "(.+))?)?",
-            Pattern.DOTALL
-    );
+    private static final String PARKING = "- parking to wait for ";
+    private static final String OWNABLE_SYNCHRONIZER = "- ";
+    private static final String OWNABLE_SYNCHRONIZERS = "Locked ownable synchronizers:";
+
+    // Number of chunks parsed by a single fork-join task
+    private static final int CHUNKS_PER_TASK = 16;
+    private static final int FRAME_PARTS = 6;
+
+    // Files can be tokenized as bytes when the platform encoding preserves ASCII
+    private static final boolean MAPPABLE_ENCODING = isAsciiCompatible(Charset.defaultCharset());
 
     private boolean failOnErrors = false;
+    private int parallelism = 1;
+    private @Nonnull StackTraceElementCache frameCache = StackTraceElementCache.getDefault();
+    private boolean lazyStackTraces = false;
 
     /**
      * Historically, dumpling tolerates some of the errors silently.
@@ -86,61 +106,292 @@ public class ThreadDumpFactory {
         return this;
     }
 
+    /**
+     * Parse threads concurrently using given number of workers.
+     *
+     * Threads are independent of each other while parsed so large threaddumps can be processed in a fraction of the
+     * time on multicore machines. Defaults to 1, parsing on the calling thread.
+     */
+    public ThreadDumpFactory parallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive, was " + parallelism);
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Share parsed stack trace elements through given cache.
+     *
+     * Defaults to {@link StackTraceElementCache#getDefault()}.
+     */
+    public ThreadDumpFactory frameCache(@Nonnull StackTraceElementCache frameCache) {
+        this.frameCache = frameCache;
+        return this;
+    }
+
+    /**
+     * Decode stack trace elements only when first accessed.
+     *
+     * Thread states and locks are parsed upfront so lock analysis does not decode any stack frame. Applies to plain
+     * threaddump files read by {@link #fromFile(File)} only, the file remains mapped until all the traces are decoded
+     * or garbage collected. Defaults to false.
+     */
+    public ThreadDumpFactory lazyStackTraces(boolean lazyStackTraces) {
+        this.lazyStackTraces = lazyStackTraces;
+        return this;
+    }
+
     /**
      * Create runtime from thread dump.
      *
+     * Gzip compressed threaddumps, and zip or tar archives with single threaddump are decompressed transparently.
+     *
      * @throws IOException File could not be loaded.
      */
     public @Nonnull ThreadDumpRuntime fromFile(@Nonnull File threadDump) throws IOException {
         FileInputStream fis = new FileInputStream(threadDump);
         try {
-            return fromStream(fis);
+            if (!ArchiveReader.isPlain(head(threadDump))) return fromStream(fis);
+
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (!MAPPABLE_ENCODING || size > Integer.MAX_VALUE) return fromStream(fis);
+
+            // The mapping remains valid after the channel is closed
+            return fromChunks(new MappedChunkReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size)), parallelism);
         } finally {
             fis.close();
         }
     }
 
+    /**
+     * Create runtime from thread dump.
+     *
+     * Gzip compressed threaddumps, and zip or tar archives with single threaddump are decompressed while read.
+     */
     public @Nonnull ThreadDumpRuntime fromStream(@Nonnull InputStream stream) {
-        Set<ThreadDumpThread.Builder> threads = new LinkedHashSet<ThreadDumpThread.Builder>();
-        List<String> header = new ArrayList<String>();
+        Map<String, ThreadDumpRuntime> runtimes = fromArchive(stream);
+        if (runtimes.size() != 1) throw new IllegalRuntimeStateException(
+                "Expected single threaddump, archive contains %d: %s", runtimes.size(), runtimes.keySet()
+        );
+        return runtimes.values().iterator().next();
+    }
+
+    /**
+     * Create runtimes from all threaddumps in the archive.
+     *
+     * Zip and tar archives, possibly gzip compressed, are read as a stream. Entries are parsed concurrently when
+     * {@link #parallelism(int)} is configured. Plain or compressed threaddump is presented as a single entry with
+     * empty name.
+     *
+     * @return Runtimes by entry names in the order of the archive.
+     * @throws IOException File could not be loaded.
+     */
+    public @Nonnull Map<String, ThreadDumpRuntime> fromArchive(@Nonnull File archive) throws IOException {
+        if (ArchiveReader.isPlain(head(archive))) return Collections.singletonMap("", fromFile(archive));
+
+        return fromArchive(new FileInputStream(archive));
+    }
+
+    /**
+     * Create runtimes from all threaddumps in the archive.
+     *
+     * @see #fromArchive(File)
+     */
+    public @Nonnull Map<String, ThreadDumpRuntime> fromArchive(@Nonnull InputStream stream) {
+        return readArchive(stream, null);
+    }
 
-        Scanner scanner = new Scanner(stream);
-        scanner.useDelimiter(THREAD_DELIMITER);
+    /**
+     * Create runtime from single threaddump in the archive.
+     *
+     * Only the requested entry is parsed, the others are skipped.
+     *
+     * @param entry Entry name as reported by {@link #archiveEntries(File)}.
+     * @return null when there is no such entry.
+     * @throws IOException File could not be loaded.
+     */
+    public @CheckForNull ThreadDumpRuntime fromArchive(@Nonnull File archive, @Nonnull String entry) throws IOException {
+        if (ArchiveReader.isPlain(head(archive))) return entry.isEmpty() ? fromFile(archive) : null;
+
+        return fromArchive(new FileInputStream(archive), entry);
+    }
+
+    /**
+     * Create runtime from single threaddump in the archive.
+     *
+     * @see #fromArchive(File, String)
+     */
+    public @CheckForNull ThreadDumpRuntime fromArchive(@Nonnull InputStream stream, @Nonnull String entry) {
+        return readArchive(stream, entry).get(entry);
+    }
+
+    /**
+     * Names of threaddumps in the archive, in the order of the archive.
+     *
+     * Entries are not parsed. Plain or compressed threaddump is presented as a single entry with empty name.
+     *
+     * @throws IOException File could not be loaded.
+     */
+    public @Nonnull List<String> archiveEntries(@Nonnull File archive) throws IOException {
+        if (ArchiveReader.isPlain(head(archive))) return Collections.singletonList("");
+
+        ArchiveReader reader = ArchiveReader.open(new FileInputStream(archive));
         try {
-            while (scanner.hasNext()) {
-                String singleChunk = scanner.next();
-                // Java until 8 vs. Java after 9
-                if (singleChunk.startsWith("JNI global references") || singleChunk.startsWith("JNI global refs")) {
-                    // Nothing interesting is expected after this point. Also, this is a convenient way to eliminate the
-                    // deadlock report that is spread over several chunks
-                    break;
+            List<String> entries = new ArrayList<String>();
+            for (String entry = reader.nextEntry(); entry != null; entry = reader.nextEntry()) {
+                entries.add(entry);
+            }
+            return entries;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param only Name of the only entry to parse, all of them when null.
+     */
+    private @Nonnull Map<String, ThreadDumpRuntime> readArchive(@Nonnull InputStream stream, @CheckForNull String only) {
+        Map<String, ThreadDumpRuntime> runtimes = new LinkedHashMap<String, ThreadDumpRuntime>();
+        ArchiveReader archive = null;
+        try {
+            archive = ArchiveReader.open(stream);
+            if (!archive.isArchive()) {
+                archive.nextEntry();
+                if (only == null || only.isEmpty()) {
+                    runtimes.put("", fromChunks(new StreamChunkReader(new InputStreamReader(archive.entry())), parallelism));
                 }
+                return runtimes;
+            }
 
-                ThreadDumpThread.Builder thread = thread(singleChunk);
-                if (thread != null) {
-                    threads.add(thread);
-                    continue;
+            if (only != null) {
+                // Single entry is parsed in chunks concurrently
+                for (String entry = archive.nextEntry(); entry != null; entry = archive.nextEntry()) {
+                    if (!only.equals(entry)) continue;
+
+                    runtimes.put(entry, fromChunks(new StreamChunkReader(new InputStreamReader(archive.entry())), parallelism));
+                    break;
                 }
+                return runtimes;
+            }
 
-                if (header.isEmpty()) { // Still reading header
-                    header.addAll(Arrays.asList(singleChunk.split(NL)));
-                    continue;
+            if (parallelism == 1) {
+                for (String entry = archive.nextEntry(); entry != null; entry = archive.nextEntry()) {
+                    runtimes.put(entry, fromChunks(new StreamChunkReader(new InputStreamReader(archive.entry())), 1));
                 }
+                return runtimes;
+            }
 
-                // New info in Java 9
-                if (singleChunk.startsWith("Threads class SMR info:")) {
-                    continue;
+            // Decompression is sequential, entries are read in memory and parsed by workers. Only a few entries are
+            // buffered ahead of the workers so the whole archive is not held in memory at once.
+            final Semaphore buffered = new Semaphore(parallelism * 2);
+            Map<String, ForkJoinTask<ThreadDumpRuntime>> tasks = new LinkedHashMap<String, ForkJoinTask<ThreadDumpRuntime>>();
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (String entry = archive.nextEntry(); entry != null; entry = archive.nextEntry()) {
+                    buffered.acquireUninterruptibly();
+                    final byte[] content = archive.readEntry();
+                    tasks.put(entry, pool.submit(new Callable<ThreadDumpRuntime>() {
+                        @Override
+                        public ThreadDumpRuntime call() {
+                            try {
+                                Reader reader = new InputStreamReader(new ByteArrayInputStream(content));
+                                return fromChunks(new StreamChunkReader(reader), 1);
+                            } finally {
+                                buffered.release();
+                            }
+                        }
+                    }));
                 }
 
-                String msg = "Skipping unrecognized chunk: >>>" + singleChunk + "<<<";
-                if (failOnErrors) {
-                    throw new IllegalRuntimeStateException(msg);
+                for (Map.Entry<String, ForkJoinTask<ThreadDumpRuntime>> task: tasks.entrySet()) {
+                    runtimes.put(task.getKey(), task.getValue().join());
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            return runtimes;
+        } catch (IOException ex) {
+            throw new IllegalRuntimeStateException("Failed reading threaddump: %s", ex.getMessage());
+        } finally {
+            try {
+                if (archive != null) {
+                    archive.close();
                 } else {
-                    LOG.warning(msg);
+                    stream.close();
                 }
+            } catch (IOException ex) {} // Ignore
+        }
+    }
+
+    // First bytes of the file to detect its format
+    private static @Nonnull byte[] head(@Nonnull File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            byte[] head = new byte[ArchiveReader.MAGIC_LENGTH];
+            int read = 0;
+            int count;
+            while (read < head.length && (count = fis.read(head, read, head.length - read)) != -1) {
+                read += count;
             }
+            return Arrays.copyOf(head, read);
         } finally {
-            scanner.close();
+            fis.close();
+        }
+    }
+
+    /**
+     * Read threaddumps from a log that can contain several of them mixed with other output.
+     *
+     * Threaddumps are parsed lazily, one at a time, using this factory. Gzip compressed logs are decompressed while
+     * read. The stream is closed once the reader is.
+     */
+    public @Nonnull ThreadDumpLogReader fromLog(@Nonnull InputStream log) {
+        try {
+            return new ThreadDumpLogReader(this, new BufferedReader(new InputStreamReader(ArchiveReader.decompress(log))));
+        } catch (IOException ex) {
+            throw new IllegalRuntimeStateException("Failed reading threaddump log: %s", ex.getMessage());
+        }
+    }
+
+    /*package*/ @Nonnull ThreadDumpRuntime fromReader(@Nonnull Reader reader) {
+        return fromChunks(new StreamChunkReader(reader), parallelism);
+    }
+
+    private @Nonnull ThreadDumpRuntime fromChunks(@Nonnull ChunkReader reader, int parallelism) {
+        Set<ThreadDumpThread.Builder> threads = new LinkedHashSet<ThreadDumpThread.Builder>();
+        List<String> header = new ArrayList<String>();
+
+        try {
+            if (parallelism == 1) {
+                for (Chunk chunk = reader.next(); chunk != null && !isTrailer(chunk); chunk = reader.next()) {
+                    addChunk(chunk, thread(chunk), threads, header);
+                }
+            } else {
+                List<Chunk> chunks = new ArrayList<Chunk>();
+                for (Chunk chunk = reader.next(); chunk != null && !isTrailer(chunk); chunk = reader.next()) {
+                    chunks.add(chunk);
+                }
+
+                ChunkTask task = new ChunkTask(chunks, 0, chunks.size());
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    pool.invoke(task);
+                } finally {
+                    pool.shutdown();
+                }
+
+                // Reassemble in the original order, reporting the first failure as sequential parsing would
+                for (int i = 0; i < chunks.size(); i++) {
+                    if (task.failures[i] != null) throw task.failures[i];
+                    addChunk(chunks.get(i), task.builders[i], threads, header);
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalRuntimeStateException("Failed reading threaddump: %s", ex.getMessage());
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ex) {} // Ignore
         }
 
         if (threads.isEmpty()) throw new IllegalRuntimeStateException(
@@ -150,6 +401,40 @@ public class ThreadDumpFactory {
         return new ThreadDumpRuntime(threads, header);
     }
 
+    // Java until 8 vs. Java after 9
+    private static boolean isTrailer(Chunk chunk) {
+        CharSequence firstLine = chunk.lines.get(0);
+        // Nothing interesting is expected after this point. Also, this is a convenient way to eliminate the
+        // deadlock report that is spread over several chunks
+        return startsWith(firstLine, "JNI global references", 0) || startsWith(firstLine, "JNI global refs", 0);
+    }
+
+    private void addChunk(
+            Chunk chunk, @CheckForNull ThreadDumpThread.Builder thread, Set<ThreadDumpThread.Builder> threads, List<String> header
+    ) {
+        if (thread != null) {
+            threads.add(thread);
+            return;
+        }
+
+        if (header.isEmpty()) { // Still reading header
+            header.addAll(chunk.trimmedLines());
+            return;
+        }
+
+        // New info in Java 9
+        if (startsWith(chunk.lines.get(0), "Threads class SMR info:", 0)) {
+            return;
+        }
+
+        String msg = "Skipping unrecognized chunk: >>>" + chunk + "<<<";
+        if (failOnErrors) {
+            throw new IllegalRuntimeStateException("%s", msg);
+        } else {
+            LOG.warning(msg);
+        }
+    }
+
     public @Nonnull ThreadDumpRuntime fromString(@Nonnull String runtime) {
         try {
             InputStream is = new ByteArrayInputStream(runtime.getBytes("UTF-8"));
@@ -165,101 +450,179 @@ public class ThreadDumpFactory {
         }
     }
 
-    private ThreadDumpThread.Builder thread(String singleThread) {
-
-        Matcher matcher = THREAD_HEADER.matcher(singleThread);
-        if (!matcher.find()) return null;
+    private ThreadDumpThread.Builder thread(Chunk chunk) {
+        List<CharSequence> lines = chunk.lines;
+        if (!startsWith(lines.get(0), "\"", 0)) return null;
+
+        // Thread name can contain both quotes and line breaks so the header ends with the last quote followed by
+        // attributes on the first line that has any
+        int headerLine = -1;
+        int nameEnd = -1;
+        for (int i = 0; i < lines.size(); i++) {
+            nameEnd = nameEnd(lines.get(i), i == 0 ? 1 : 0);
+            if (nameEnd != -1) {
+                headerLine = i;
+                break;
+            }
+        }
+        if (headerLine == -1) return null;
 
         ThreadDumpThread.Builder builder = new ThreadDumpThread.Builder();
-        builder.setName(matcher.group(1));
-        initHeader(builder, matcher.group(2));
+        CharSequence header = lines.get(headerLine);
+        builder.setName(threadName(chunk, headerLine, nameEnd));
+        initHeader(builder, substring(header, nameEnd + 2, header.length()));
 
-        String status = matcher.group(3);
-        if (status != null) {
-            builder.setThreadStatus(ThreadStatus.fromString(status));
+        int stateLine = headerLine + 1;
+        while (stateLine < lines.size() && lines.get(stateLine).length() == 0) {
+            stateLine++;
         }
+        if (stateLine >= lines.size()) return builder;
+
+        String status = threadState(lines.get(stateLine));
+        if (status == null) return builder;
+
+        builder.setThreadStatus(ThreadStatus.fromString(status));
 
-        final String trace = matcher.group(4);
-        if (trace != null) {
-            builder = initStacktrace(builder, trace, singleThread);
+        // Trailing line break is not a stack trace
+        int traceStart = stateLine + 1;
+        int traceLength = lines.size() - traceStart;
+        if (traceLength > 1 || (traceLength == 1 && lines.get(traceStart).length() != 0)) {
+            builder = initStacktrace(builder, chunk, traceStart);
         }
 
         return builder;
     }
 
-    private Builder initStacktrace(Builder builder, String trace, String wholeThread) {
+    // Position of the quote terminating thread name or -1 if not present
+    private static int nameEnd(CharSequence line, int from) {
+        int end = lastIndexOf(line, "\" ", line.length());
+        // At least one character of thread attributes is required
+        while (end >= from && end + 2 >= line.length()) {
+            end = lastIndexOf(line, "\" ", end - 1);
+        }
+        return end >= from ? end : -1;
+    }
+
+    private static String threadName(Chunk chunk, int headerLine, int nameEnd) {
+        List<CharSequence> lines = chunk.lines;
+        if (headerLine == 0) return substring(lines.get(0), 1, nameEnd);
+
+        StringBuilder name = new StringBuilder().append(lines.get(0), 1, lines.get(0).length());
+        for (int i = 1; i < headerLine; i++) {
+            name.append(chunk.lineSeparator()).append(lines.get(i));
+        }
+        name.append(chunk.lineSeparator()).append(lines.get(headerLine), 0, nameEnd);
+        return name.toString();
+    }
+
+    // Get thread state declared on the line, null if there is none
+    private static @CheckForNull String threadState(CharSequence line) {
+        int start = skipWhitespace(line, 0);
+        if (start == 0 || !startsWith(line, THREAD_STATE, start)) return null;
+
+        start += THREAD_STATE.length();
+        return start < line.length() ? substring(line, start, line.length()) : null;
+    }
+
+    private Builder initStacktrace(Builder builder, Chunk chunk, int traceStart) {
         ArrayList<StackTraceElement> traceElements = new ArrayList<StackTraceElement>();
+        // Frames are decoded later when lazy, the first and last frame line delimit them
+        int[] parts = lazyStackTraces ? new int[FRAME_PARTS] : null;
+        CharSequence firstFrame = null;
+        CharSequence lastFrame = null;
+        boolean mapped = true;
 
         List<ThreadLock.Monitor> monitors = new ArrayList<ThreadLock.Monitor>();
         List<ThreadLock> synchronizers = new ArrayList<ThreadLock>();
         ThreadLock waitingToLock = null; // Block waiting on monitor
         ThreadLock waitingOnLock = null; // in Object.wait()
         int depth = -1;
+        boolean inSynchronizers = false;
 
-        StringTokenizer tokenizer = new StringTokenizer(trace, "\n");
-        while (tokenizer.hasMoreTokens()) {
-            String line = tokenizer.nextToken();
+        List<CharSequence> lines = chunk.lines;
+        for (int i = traceStart; i < lines.size(); i++) {
+            CharSequence line = lines.get(i);
+            if (line.length() == 0) continue;
 
-            StackTraceElement elem = traceElement(line);
-            if (elem != null) {
-                traceElements.add(elem);
-                depth++;
-                continue;
-            }
+            if (inSynchronizers) {
+                if (indexOf(line, "- None", 0) != -1) {
+                    inSynchronizers = false;
+                    continue;
+                }
 
-            Matcher acquiredMatcher = ACQUIRED_LINE.matcher(line);
-            if (acquiredMatcher.find()) {
-                monitors.add(new ThreadLock.Monitor(createLock(acquiredMatcher), depth));
+                int start = indexOf(line, OWNABLE_SYNCHRONIZER + "<", 0);
+                ThreadLock lock = start == -1 ? null : createLock(line, start, OWNABLE_SYNCHRONIZER.length());
+                if (lock == null) throw new IllegalRuntimeStateException(
+                        "Unable to parse ownable synchronizer: %s", line
+                );
+                synchronizers.add(lock);
                 continue;
             }
 
-            Matcher waitingToMatcher = WAITING_TO_LOCK_LINE.matcher(line);
-            if (waitingToMatcher.find()) {
-                if (waitingToLock != null) {
-                    // https://bugs.openjdk.org/browse/JDK-8150689
-                    // Not only the BLOCKED threads in Object.wait declare to be (still) waiting on, but the frames
-                    // where they entered the monitor reports they are "waiting to re-lock", possibly repeated.
-                    if (line.contains("- waiting to re-lock in wait() <") && createLock(waitingToMatcher).getId() == waitingToLock.getId()) {
-                        logFixup("FIXUP: Ignoring repeated bogus 'waiting to re-lock in wait' lines", wholeThread);
-                        continue;
+            if (parts != null) {
+                if (isTraceElement(line, parts)) {
+                    if (firstFrame == null) {
+                        firstFrame = line;
                     }
-
-                    throw new IllegalRuntimeStateException(
-                            "Waiting to lock reported several times per single thread:%n%s%n", wholeThread
-                    );
+                    lastFrame = line;
+                    mapped &= line instanceof ByteLine;
+                    depth++;
+                    continue;
+                }
+            } else {
+                StackTraceElement elem = traceElement(line);
+                if (elem != null) {
+                    traceElements.add(elem);
+                    depth++;
+                    continue;
                 }
-                waitingToLock = createLock(waitingToMatcher);
-                continue;
-            }
-
-            Matcher waitingOnMatcher = WAITING_ON_LINE.matcher(line);
-            if (waitingOnMatcher.find()) {
-                if (waitingOnLock != null) throw new IllegalRuntimeStateException(
-                        "Waiting on lock reported several times per single thread:%n%s%n", wholeThread
-                );
-                waitingOnLock = createLock(waitingOnMatcher);
-                continue;
             }
 
-            if (line.contains("Locked ownable synchronizers:")) {
-                while (tokenizer.hasMoreTokens()) {
-                    line = tokenizer.nextToken();
+            int start = skipWhitespace(line, 0);
+            if (startsWith(line, "- ", start)) {
+                ThreadLock lock;
+                if ((lock = createLock(line, start, ACQUIRED)) != null) {
+                    monitors.add(new ThreadLock.Monitor(lock, depth));
+                    continue;
+                }
 
-                    if (line.contains("- None")) break;
-                    Matcher matcher = OWNABLE_SYNCHRONIZER_LINE.matcher(line);
-                    if (matcher.find()) {
-                        synchronizers.add(createLock(matcher));
-                    } else {
-                        throw new IllegalRuntimeStateException("Unable to parse ownable synchronizer: " + line);
+                boolean relock = false;
+                if ((lock = createLock(line, start, WAITING_TO_LOCK)) != null || (relock = (lock = createLock(line, start, WAITING_TO_RELOCK)) != null)) {
+                    if (waitingToLock != null) {
+                        // https://bugs.openjdk.org/browse/JDK-8150689
+                        // Not only the BLOCKED threads in Object.wait declare to be (still) waiting on, but the frames
+                        // where they entered the monitor reports they are "waiting to re-lock", possibly repeated.
+                        if (relock && lock.getId() == waitingToLock.getId()) {
+                            logFixup("FIXUP: Ignoring repeated bogus 'waiting to re-lock in wait' lines", chunk);
+                            continue;
+                        }
+
+                        throw new IllegalRuntimeStateException(
+                                "Waiting to lock reported several times per single thread:%n%s%n", chunk
+                        );
                     }
+                    waitingToLock = lock;
+                    continue;
                 }
+
+                if ((lock = createLock(line, start, WAITING_ON)) != null || (lock = createParkingLock(line, start)) != null) {
+                    if (waitingOnLock != null) throw new IllegalRuntimeStateException(
+                            "Waiting on lock reported several times per single thread:%n%s%n", chunk
+                    );
+                    waitingOnLock = lock;
+                    continue;
+                }
+            }
+
+            if (indexOf(line, OWNABLE_SYNCHRONIZERS, 0) != -1) {
+                inSynchronizers = true;
                 continue;
             }
 
             // Ignored
             if (
-                    line.equals("   No compile task") ||
-                    line.startsWith("   Compiling: ")
+                    "   No compile task".contentEquals(line) ||
+                    startsWith(line, "   Compiling: ", 0)
             ) {
                 continue;
             }
@@ -267,10 +630,28 @@ public class ThreadDumpFactory {
             LOG.warning("Unknown line: " + line);
         }
 
-        builder.setStacktrace(new StackTrace(traceElements));
+        StackTraceElement innerFrame;
+        if (firstFrame != null && mapped) {
+            ByteLine first = (ByteLine) firstFrame;
+            ByteLine last = (ByteLine) lastFrame;
+            MappedFrames frames = new MappedFrames(first.buffer, first.offset, last.offset + last.length);
+            builder.setStacktrace(StackTrace.lazy(depth + 1, frames));
+            innerFrame = traceElement(firstFrame);
+        } else {
+            if (parts != null) {
+                // Not mapped, decode right away
+                for (int i = traceStart; i < lines.size(); i++) {
+                    StackTraceElement elem = traceElement(lines.get(i));
+                    if (elem != null) {
+                        traceElements.add(elem);
+                    }
+                }
+            }
+            builder.setStacktrace(new StackTrace(traceElements));
+            innerFrame = builder.getStacktrace().getElement(0);
+        }
 
         ThreadStatus status = builder.getThreadStatus();
-        StackTraceElement innerFrame = builder.getStacktrace().getElement(0);
 
         // Probably a bug in JVM/jstack but let's see what we can do
         if (waitingOnLock == null && !status.isRunnable() && WAIT_TRACE_ELEMENT.equals(innerFrame)) {
@@ -280,7 +661,7 @@ public class ThreadDumpFactory {
             }
             if (acquiredLocks.size() == 1) {
                 waitingOnLock = acquiredLocks.iterator().next();
-                logFixup("FIXUP: Adjust lock state from 'locked' to 'waiting on' when thread entering Object.wait()", wholeThread);
+                logFixup("FIXUP: Adjust lock state from 'locked' to 'waiting on' when thread entering Object.wait()", chunk);
             }
         }
 
@@ -290,7 +671,7 @@ public class ThreadDumpFactory {
 
             // 'waiting on' is reported even when blocked re-entering the monitor. Convert it from waitingOn to waitingTo
             if (builder.getThreadStatus().isBlocked()) {
-                logFixup("FIXUP: Adjust lock state from 'waiting on' to 'waiting to' when thread re-acquiring the monitor after Object.wait()", wholeThread);
+                logFixup("FIXUP: Adjust lock state from 'waiting on' to 'waiting to' when thread re-acquiring the monitor after Object.wait()", chunk);
                 waitingToLock = waitingOnLock;
                 waitingOnLock = null;
             }
@@ -301,7 +682,7 @@ public class ThreadDumpFactory {
             // Presumably when entering or leaving the parked state.
             // Remove the lock instead of fixing the thread status as there is
             // no general way to tell PARKED and PARKED_TIMED apart.
-            logFixup("FIXUP: Remove 'waiting to' lock declared on RUNNABLE thread", wholeThread);
+            logFixup("FIXUP: Remove 'waiting to' lock declared on RUNNABLE thread", chunk);
             waitingOnLock = null;
         }
 
@@ -310,11 +691,11 @@ public class ThreadDumpFactory {
         if (status.isBlocked() && waitingToLock == null) {
             Monitor monitor = getMonitorJustAcquired(monitors);
             if (monitor != null) {
-                logFixup("FIXUP: Adjust lock state from 'locked' to 'waiting to' on BLOCKED thread", wholeThread);
+                logFixup("FIXUP: Adjust lock state from 'locked' to 'waiting to' on BLOCKED thread", chunk);
                 waitingToLock = monitor.getLock();
                 monitors.remove(0);
             } else {
-                logFixup("FIXUP: Adjust thread state from 'BLOCKED' to 'RUNNABLE' when monitor is missing", wholeThread);
+                logFixup("FIXUP: Adjust thread state from 'BLOCKED' to 'RUNNABLE' when monitor is missing", chunk);
                 builder.setThreadStatus(status = ThreadStatus.RUNNABLE);
             }
         }
@@ -322,7 +703,7 @@ public class ThreadDumpFactory {
         if (status.isBlocked() && waitingToLock != null) {
             boolean removed = filterMonitors(monitors, waitingToLock);
             if (removed) {
-                logFixup("FIXUP: Removed owned monitor that the thread is waiting to lock", wholeThread);
+                logFixup("FIXUP: Removed owned monitor that the thread is waiting to lock", chunk);
             }
         }
 
@@ -330,19 +711,19 @@ public class ThreadDumpFactory {
         if (status.isWaiting()) {
             if (Objects.equals(waitingOnLock, waitingToLock)) {
                 waitingToLock = null;
-                logFixup("FIXUP: Removed waiting-to lock when the thread is waiting on the same lock", wholeThread);
+                logFixup("FIXUP: Removed waiting-to lock when the thread is waiting on the same lock", chunk);
             }
             boolean removed = filterMonitors(monitors, waitingOnLock);
             if (removed) {
-                logFixup("FIXUP: Removed acquired monitor(s) when the thread is waiting on the same lock", wholeThread);
+                logFixup("FIXUP: Removed acquired monitor(s) when the thread is waiting on the same lock", chunk);
             }
         }
 
         if (waitingToLock != null && !status.isBlocked()) throw new IllegalRuntimeStateException(
-                "%s thread declares they are waiting to acquire same lock:%n%s%n", status, wholeThread
+                "%s thread declares they are waiting to acquire same lock:%n%s%n", status, chunk
         );
         if (waitingOnLock != null && !status.isWaiting() && !status.isParked()) throw new IllegalRuntimeStateException(
-                "%s thread declares it is waiting on lock:%n%s%n", status, wholeThread
+                "%s thread declares it is waiting on lock:%n%s%n", status, chunk
         );
 
         builder.setAcquiredMonitors(monitors);
@@ -353,9 +734,12 @@ public class ThreadDumpFactory {
         return builder;
     }
 
-    private void logFixup(String msg, String wholeThread) {
+    private void logFixup(String msg, Chunk chunk) {
         Level level = failOnErrors ? Level.WARNING : Level.FINE;
-        LOG.log(level, msg + ":" + System.lineSeparator() + wholeThread);
+        // Do not render the chunk unless it is going to be logged
+        if (LOG.isLoggable(level)) {
+            LOG.log(level, msg + ":" + System.lineSeparator() + chunk);
+        }
     }
 
     // Get monitor acquired on current stack frame, null when it was acquired earlier or no monitor is held
@@ -373,32 +757,102 @@ public class ThreadDumpFactory {
         return monitor;
     }
 
-    private static final WeakHashMap<String, StackTraceElement> traceElementCache = new WeakHashMap<String, StackTraceElement>();
-    private StackTraceElement traceElement(String line) {
-        if (!line.startsWith("\tat ") && !line.matches("(  )+at .*")) return null;
+    private StackTraceElement traceElement(CharSequence line) {
+        int start = frameStart(line);
+        if (start == -1) return null;
 
-        StackTraceElement cached = traceElementCache.get(line);
+        // Mapped lines share hash code and equality with their String counterparts so they can be used for lookup
+        StackTraceElement cached = frameCache.get(line);
         if (cached != null) return cached;
 
-        Matcher match = STACK_TRACE_ELEMENT_LINE.matcher(line);
-        if (!match.find()) return null;
+        int[] parts = new int[FRAME_PARTS];
+        if (!frameParts(line, start, parts)) return null;
 
-        String sourceFile = match.group(3);
-        int sourceLine = match.group(4) == null
-                ? -1
-                : Integer.parseInt(match.group(4).substring(1))
-        ;
+        int open = parts[0];
+        int dot = parts[1];
+        int sourceStart = parts[2];
+        int sourceEnd = parts[3];
+        int sourceLine = parts[4] == -1 ? -1 : Integer.parseInt(substring(line, parts[4] + 1, parts[5]));
 
-        if (sourceLine == -1 && "Native Method".equals(match.group(3))) {
+        String sourceFile = substring(line, sourceStart, sourceEnd);
+        if (sourceLine == -1 && "Native Method".equals(sourceFile)) {
             sourceFile = null;
             sourceLine = -2; // Magic value for native methods
         }
 
         StackTraceElement element = StackTrace.element(
-                match.group(1), match.group(2), sourceFile, sourceLine
+                frameCache.intern(substring(line, start, dot)),
+                frameCache.intern(substring(line, dot + 1, open)),
+                sourceFile == null ? null : frameCache.intern(sourceFile), sourceLine
         );
-        traceElementCache.put(line, element);
-        return element;
+        return frameCache.put(line.toString(), element);
+    }
+
+    // Tell whether the line is a stack frame without creating the element, parts are overwritten
+    private static boolean isTraceElement(CharSequence line, int[] parts) {
+        int start = frameStart(line);
+        return start != -1 && frameParts(line, start, parts);
+    }
+
+    // Fill positions of opening parenthesis, method dot, source file start and end, line number colon or -1, and
+    // closing parenthesis. False if malformed
+    private static boolean frameParts(CharSequence line, int start, int[] parts) {
+        // TODO module name and version are ignored at the time: java.lang.Thread.sleep(java.base@9-ea/Native Method)
+        int open = indexOf(line, '(', start);
+        if (open == -1) return false;
+        int dot = lastIndexOf(line, '.', open);
+        if (dot <= start || dot == open - 1) return false;
+        for (int i = start; i < open; i++) {
+            if (Character.isWhitespace(line.charAt(i))) return false;
+        }
+
+        int close = lastIndexOf(line, ')', line.length() - 1);
+        if (close < open) return false;
+        int sourceStart = lastIndexOf(line, '/', close);
+        sourceStart = sourceStart > open + 1 ? sourceStart + 1 : open + 1;
+
+        int sourceEnd = close;
+        int colon = indexOf(line, ':', sourceStart);
+        if (colon != -1 && colon < close) {
+            if (colon == close - 1) return false;
+            for (int i = colon + 1; i < close; i++) {
+                char c = line.charAt(i);
+                if (c < '0' || c > '9') return false;
+            }
+            sourceEnd = colon;
+        } else {
+            colon = -1;
+        }
+        if (sourceEnd == sourceStart) return false;
+
+        parts[0] = open;
+        parts[1] = dot;
+        parts[2] = sourceStart;
+        parts[3] = sourceEnd;
+        parts[4] = colon;
+        parts[5] = close;
+        return true;
+    }
+
+    // Position after the 'at ' prefix of a stack frame line or -1 if the line is not a frame
+    private static int frameStart(CharSequence line) {
+        if (startsWith(line, "\tat ", 0)) return 4;
+
+        // Indented by pairs of spaces, presumably when tabs got lost in copy&paste
+        int spaces = 0;
+        while (spaces < line.length() && line.charAt(spaces) == ' ') {
+            spaces++;
+        }
+        if (spaces == 0 || spaces % 2 != 0 || !startsWith(line, "at ", spaces)) return -1;
+        return spaces + 3;
+    }
+
+    private static int skipWhitespace(CharSequence line, int from) {
+        int i = from;
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
     }
 
     private boolean filterMonitors(List<ThreadLock.Monitor> monitors, ThreadLock lock) {
@@ -414,13 +868,72 @@ public class ThreadDumpFactory {
         return removed;
     }
 
-    private @Nonnull ThreadLock createLock(Matcher matcher) {
-        String lockId = matcher.group(1);
+    private @CheckForNull ThreadLock createLock(CharSequence line, int start, String prefix) {
+        if (!startsWith(line, prefix, start)) return null;
+        return createLock(line, start, prefix.length());
+    }
+
+    private @CheckForNull ThreadLock createParkingLock(CharSequence line, int start) {
+        if (!startsWith(line, PARKING, start)) return null;
+        int offset = PARKING.length();
+        if (startsWith(line, " ", start + offset)) {
+            offset++;
+        }
+        return createLock(line, start, offset);
+    }
+
+    /**
+     * Parse lock in a form of <tt>&lt;0x0000000000000000&gt; (a fully.qualified.ClassName)</tt>.
+     *
+     * @param start Beginning of the lock declaration including its prefix.
+     * @param offset Length of the prefix.
+     * @return null if the lock can not be parsed.
+     */
+    private @CheckForNull ThreadLock createLock(CharSequence line, int start, int offset) {
+        int pos = start + offset;
+        if (!startsWith(line, "<", pos)) return null;
+        pos++;
+        if (startsWith(line, "0x", pos)) {
+            pos += 2;
+        }
+
+        int idStart = pos;
+        while (pos < line.length() && isWordChar(line.charAt(pos))) {
+            pos++;
+        }
+        if (pos == idStart || !startsWith(line, "> (a ", pos)) return null;
+        int idEnd = pos;
+
+        int classStart = pos + 5;
+        int classEnd = indexOf(line, ')', classStart);
+        if (classEnd == -1 || classEnd == classStart) return null;
+
         try {
-            return new ThreadLock(matcher.group(2), parseLong(lockId));
+            return new ThreadLock(substring(line, classStart, classEnd), parseHex(line, idStart, idEnd));
         } catch (NumberFormatException ex) {
-            throw new IllegalRuntimeStateException("Failed parsing lock %s: %s", matcher.group(0), ex.getMessage());
+            throw new IllegalRuntimeStateException(
+                    "Failed parsing lock %s: %s", substring(line, start, classEnd + 1), ex.getMessage()
+            );
+        }
+    }
+
+    // Hexadecimal number without prefix, avoiding substring when it fits long
+    private static long parseHex(CharSequence line, int from, int to) {
+        if (to - from <= 16) {
+            long value = 0;
+            int i = from;
+            for (; i < to; i++) {
+                int digit = Character.digit(line.charAt(i), 16);
+                if (digit == -1) break;
+                value = (value << 4) | digit;
+            }
+            if (i == to) return value;
         }
+        return parseLong(substring(line, from, to));
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
     }
 
     private void initHeader(ThreadDumpThread.Builder builder, String attrs) {
@@ -431,8 +944,18 @@ public class ThreadDumpFactory {
             else if (token.startsWith("prio=")) builder.setPriority(Integer.parseInt(token.substring(5)));
             else if (token.startsWith("tid=")) builder.setTid(parseLong(token.substring(4)));
             else if (token.startsWith("nid=")) builder.setNid(parseNid(token.substring(4)));
-            else if (token.matches("#\\d+")) builder.setId(Integer.parseInt(token.substring(1)));
+            else if (isThreadId(token)) builder.setId(Integer.parseInt(token.substring(1)));
+        }
+    }
+
+    // Matches #\d+
+    private static boolean isThreadId(String token) {
+        if (token.length() < 2 || token.charAt(0) != '#') return false;
+        for (int i = 1; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9') return false;
         }
+        return true;
     }
 
     private long parseNid(String value) {
@@ -449,7 +972,453 @@ public class ThreadDumpFactory {
             value = value.substring(2);
         }
 
-        // Long.parseLong is faster but unsuitable in some cases: https://github.com/olivergondza/dumpling/issues/71
+        // Long.parseLong is unsuitable in some cases: https://github.com/olivergondza/dumpling/issues/71
+        if (value.length() <= 16) {
+            try {
+                return Long.parseUnsignedLong(value, 16);
+            } catch (NumberFormatException ex) {
+                // Fallback to BigInteger to report the problem consistently
+            }
+        }
         return new BigInteger(value, 16).longValue();
     }
+
+    // String operations for lines that are not necessarily Strings
+
+    private static boolean startsWith(CharSequence line, String prefix, int from) {
+        if (line instanceof String) return ((String) line).startsWith(prefix, from);
+
+        if (from < 0 || from + prefix.length() > line.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(from + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence line, char c, int from) {
+        if (line instanceof String) return ((String) line).indexOf(c, from);
+
+        for (int i = Math.max(from, 0); i < line.length(); i++) {
+            if (line.charAt(i) == c) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(CharSequence line, String str, int from) {
+        if (line instanceof String) return ((String) line).indexOf(str, from);
+
+        for (int i = Math.max(from, 0); i <= line.length() - str.length(); i++) {
+            if (startsWith(line, str, i)) return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence line, char c, int from) {
+        if (line instanceof String) return ((String) line).lastIndexOf(c, from);
+
+        for (int i = Math.min(from, line.length() - 1); i >= 0; i--) {
+            if (line.charAt(i) == c) return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence line, String str, int from) {
+        if (line instanceof String) return ((String) line).lastIndexOf(str, from);
+
+        for (int i = Math.min(from, line.length() - str.length()); i >= 0; i--) {
+            if (startsWith(line, str, i)) return i;
+        }
+        return -1;
+    }
+
+    private static String substring(CharSequence line, int from, int to) {
+        return line.subSequence(from, to).toString();
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        StringBuilder ascii = new StringBuilder();
+        for (char c = 0; c < 128; c++) {
+            ascii.append(c);
+        }
+        return Arrays.equals(ascii.toString().getBytes(StandardCharsets.US_ASCII), ascii.toString().getBytes(charset));
+    }
+
+    /**
+     * Parse range of chunks splitting it between workers.
+     *
+     * Results are stored at the chunk position so they can be reassembled in the original order.
+     */
+    private final class ChunkTask extends RecursiveAction {
+        private final @Nonnull List<Chunk> chunks;
+        private final int from;
+        private final int to;
+        private final @Nonnull ThreadDumpThread.Builder[] builders;
+        private final @Nonnull RuntimeException[] failures;
+
+        private ChunkTask(@Nonnull List<Chunk> chunks, int from, int to) {
+            this(chunks, from, to, new ThreadDumpThread.Builder[chunks.size()], new RuntimeException[chunks.size()]);
+        }
+
+        private ChunkTask(
+                @Nonnull List<Chunk> chunks, int from, int to,
+                @Nonnull ThreadDumpThread.Builder[] builders, @Nonnull RuntimeException[] failures
+        ) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.builders = builders;
+            this.failures = failures;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNKS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        builders[i] = thread(chunks.get(i));
+                    } catch (RuntimeException ex) {
+                        failures[i] = ex;
+                    }
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                    new ChunkTask(chunks, from, middle, builders, failures),
+                    new ChunkTask(chunks, middle, to, builders, failures)
+            );
+        }
+    }
+
+    /**
+     * Lines of threaddump that belong together, typically a single thread.
+     */
+    private static final class Chunk {
+        private final @Nonnull List<CharSequence> lines;
+        private final boolean crlf;
+
+        private Chunk(@Nonnull List<CharSequence> lines, boolean crlf) {
+            this.lines = lines;
+            this.crlf = crlf;
+        }
+
+        private @Nonnull String lineSeparator() {
+            return crlf ? "\r\n" : "\n";
+        }
+
+        // Lines without trailing blank ones
+        private @Nonnull List<String> trimmedLines() {
+            int end = lines.size();
+            while (end > 0 && lines.get(end - 1).length() == 0) {
+                end--;
+            }
+            List<String> trimmed = new ArrayList<String>(end);
+            for (int i = 0; i < end; i++) {
+                trimmed.add(lines.get(i).toString());
+            }
+            return trimmed;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (CharSequence line: lines) {
+                if (sb.length() != 0) {
+                    sb.append(lineSeparator());
+                }
+                sb.append(line);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Split threaddump into {@link Chunk}s.
+     *
+     * New chunk starts with a line opening with a quote or with a non-indented line following a blank one.
+     */
+    private static abstract class ChunkReader implements Closeable {
+        // The line starting next chunk
+        private @CheckForNull CharSequence pending;
+        private boolean pendingCrlf;
+        // Line separator of the last line read
+        protected boolean crlf;
+
+        /**
+         * @return null when there are no more chunks.
+         */
+        private @CheckForNull Chunk next() throws IOException {
+            while (true) {
+                List<CharSequence> lines = new ArrayList<CharSequence>();
+                boolean chunkCrlf = false;
+                boolean blank = true;
+                if (pending != null) {
+                    lines.add(pending);
+                    chunkCrlf = pendingCrlf;
+                    blank = pending.length() == 0;
+                    pending = null;
+                }
+
+                CharSequence line;
+                while ((line = readLine()) != null) {
+                    if (!lines.isEmpty() && isChunkStart(line, lines.get(lines.size() - 1))) {
+                        pending = line;
+                        pendingCrlf = crlf;
+                        break;
+                    }
+
+                    lines.add(line);
+                    chunkCrlf |= crlf;
+                    blank &= line.length() == 0;
+                }
+
+                if (lines.isEmpty()) return null;
+                if (!blank) return new Chunk(lines, chunkCrlf);
+                // Skip chunks of blank lines
+            }
+        }
+
+        private static boolean isChunkStart(CharSequence line, CharSequence previous) {
+            if (startsWith(line, "\"", 0)) return true;
+
+            return previous.length() == 0 && line.length() != 0 && !Character.isWhitespace(line.charAt(0));
+        }
+
+        /**
+         * Read line without terminator setting {@link #crlf}.
+         *
+         * @return null at the end of the input.
+         */
+        protected abstract @CheckForNull CharSequence readLine() throws IOException;
+    }
+
+    private static final class StreamChunkReader extends ChunkReader {
+        private final @Nonnull Reader reader;
+        private final @Nonnull char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+
+        private StreamChunkReader(@Nonnull Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        protected @CheckForNull CharSequence readLine() throws IOException {
+            StringBuilder sb = null;
+            while (true) {
+                if (position >= limit) {
+                    limit = reader.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        if (sb == null) return null;
+                        return stripCr(sb.toString());
+                    }
+                }
+
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+
+                if (position < limit) { // Line terminator found
+                    int end = position++;
+                    if (sb == null) {
+                        crlf = end > start && buffer[end - 1] == '\r';
+                        return new String(buffer, start, crlf ? end - start - 1 : end - start);
+                    }
+
+                    sb.append(buffer, start, end - start);
+                    return stripCr(sb.toString());
+                }
+
+                if (sb == null) {
+                    sb = new StringBuilder();
+                }
+                sb.append(buffer, start, position - start);
+            }
+        }
+
+        private String stripCr(String line) {
+            crlf = line.endsWith("\r");
+            return crlf ? line.substring(0, line.length() - 1) : line;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read lines of memory mapped file.
+     *
+     * ASCII lines are not decoded but presented as {@link ByteLine}s, the rest is decoded using platform encoding.
+     */
+    private static final class MappedChunkReader extends ChunkReader {
+        private final @Nonnull ByteBuffer buffer;
+        private final @Nonnull Charset charset = Charset.defaultCharset();
+        private int position;
+
+        private MappedChunkReader(@Nonnull ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        protected @CheckForNull CharSequence readLine() {
+            int limit = buffer.limit();
+            if (position >= limit) return null;
+
+            int start = position;
+            boolean ascii = true;
+            // Compute String compatible hash code while scanning, excluding the possible trailing CR
+            int hash = 0;
+            int prevHash = 0;
+            while (position < limit) {
+                byte b = buffer.get(position);
+                if (b == '\n') break;
+                ascii &= b >= 0;
+                prevHash = hash;
+                hash = 31 * hash + b;
+                position++;
+            }
+
+            int end = position;
+            position++; // Skip terminator
+            crlf = end > start && buffer.get(end - 1) == '\r';
+            if (crlf) {
+                end--;
+                hash = prevHash;
+            }
+
+            if (ascii) return new ByteLine(buffer, start, end - start, hash);
+
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            return new String(bytes, charset);
+        }
+
+        @Override
+        public void close() {
+            // Noop
+        }
+    }
+
+    /**
+     * Stack frames decoded from range of the mapped threaddump.
+     *
+     * The range can contain lock lines interleaved with the frames, these are skipped.
+     */
+    private final class MappedFrames implements StackTrace.Loader {
+        private final @Nonnull ByteBuffer buffer;
+        private final int from;
+        private final int to;
+
+        private MappedFrames(@Nonnull ByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public @Nonnull List<StackTraceElement> load() {
+            List<StackTraceElement> elements = new ArrayList<StackTraceElement>();
+            int start = from;
+            while (start < to) {
+                int end = start;
+                while (end < to && buffer.get(end) != '\n') {
+                    end++;
+                }
+                int next = end + 1;
+                if (end > start && buffer.get(end - 1) == '\r') {
+                    end--;
+                }
+
+                StackTraceElement element = traceElement(new ByteLine(buffer, start, end - start));
+                if (element != null) {
+                    elements.add(element);
+                }
+                start = next;
+            }
+            return elements;
+        }
+    }
+
+    /**
+     * ASCII line backed by bytes of the mapped threaddump.
+     *
+     * Hash code and equality are consistent with String so the lines can be used to query String keyed maps.
+     * Only absolute reads are performed on the buffer so the lines can be parsed concurrently.
+     */
+    private static final class ByteLine implements CharSequence {
+        private final @Nonnull ByteBuffer buffer;
+        private final int offset;
+        private final int length;
+        private int hash;
+
+        private ByteLine(@Nonnull ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private ByteLine(@Nonnull ByteBuffer buffer, int offset, int length, int hash) {
+            this(buffer, offset, length);
+            this.hash = hash;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) throw new IndexOutOfBoundsException(String.valueOf(index));
+            return (char) buffer.get(offset + index);
+        }
+
+        @Override
+        public @Nonnull CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException(start + ", " + end);
+            return new ByteLine(buffer, offset + start, end - start);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = hash;
+            if (h == 0) {
+                for (int i = 0; i < length; i++) {
+                    h = 31 * h + buffer.get(offset + i);
+                }
+                hash = h;
+            }
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CharSequence)) return false;
+
+            CharSequence other = (CharSequence) o;
+            if (other.length() != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (other.charAt(i) != buffer.get(offset + i)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
 }
@@ -0,0 +1,265 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+
+/**
+ * Read threaddumps from a log they are interleaved with, such as stdout of a process receiving <tt>kill -3</tt>.
+ *
+ * Threaddumps are recognized by the <tt>Full thread dump</tt> line optionally preceded by a timestamp. A threaddump
+ * ends with the JNI references line, with the start of the next threaddump or with the end of the log. Threaddumps
+ * are parsed one at a time as they are requested so memory usage does not grow with the size of the log. Threaddumps
+ * skipped by {@link #skip(int)} or by the time range are only scanned for their end, never parsed.
+ *
+ * @author ogondza
+ * @see ThreadDumpFactory#fromLog(java.io.InputStream)
+ */
+public final class ThreadDumpLogReader implements Iterator<ThreadDumpRuntime>, Closeable {
+
+    private static final String DUMP_START = "Full thread dump ";
+
+    private final @Nonnull ThreadDumpFactory factory;
+    private final @Nonnull BufferedReader reader;
+    private final @Nonnull SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    private @CheckForNull Date from;
+    private @CheckForNull Date to;
+
+    // Start of the threaddump found while reading the previous one
+    private @CheckForNull String startLine;
+    private @CheckForNull String timestampLine;
+    // Line preceding the current one that can be a timestamp of the following threaddump
+    private @CheckForNull String previousLine;
+    private boolean exhausted = false;
+
+    private @CheckForNull ThreadDumpRuntime next;
+    private @CheckForNull Date nextTimestamp;
+    private @CheckForNull Date timestamp;
+
+    /*package*/ ThreadDumpLogReader(@Nonnull ThreadDumpFactory factory, @Nonnull BufferedReader reader) {
+        this.factory = factory;
+        this.reader = reader;
+        timestampFormat.setLenient(false);
+    }
+
+    /**
+     * Only read threaddumps captured in given time range.
+     *
+     * Threaddumps without timestamp are skipped when the range is set. The log is expected to be chronological so
+     * reading stops with the first threaddump after the range.
+     *
+     * @param from Inclusive lower bound, null for unbounded.
+     * @param to Inclusive upper bound, null for unbounded.
+     */
+    public @Nonnull ThreadDumpLogReader between(@CheckForNull Date from, @CheckForNull Date to) {
+        if (next != null) throw new IllegalStateException("Time range set after reading threaddump");
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    /**
+     * Timestamp of the threaddump last returned by {@link #next()}.
+     *
+     * @return null if the threaddump is not preceded by timestamp.
+     */
+    public @CheckForNull Date getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            advance(true);
+        }
+        return next != null;
+    }
+
+    @Override
+    public @Nonnull ThreadDumpRuntime next() {
+        if (!hasNext()) throw new NoSuchElementException();
+
+        ThreadDumpRuntime runtime = next;
+        timestamp = nextTimestamp;
+        next = null;
+        nextTimestamp = null;
+        return runtime;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Skip threaddumps without parsing them.
+     *
+     * @return Number of threaddumps skipped, less than requested when the log ended.
+     */
+    public @Nonnegative int skip(@Nonnegative int count) {
+        int skipped = 0;
+        if (count > 0 && next != null) {
+            next = null;
+            nextTimestamp = null;
+            skipped++;
+        }
+
+        while (skipped < count && advance(false)) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Find next threaddump in the time range and either parse it or skip it.
+     *
+     * @return false when there are no more threaddumps.
+     */
+    private boolean advance(boolean parse) {
+        try {
+            while (findStart()) {
+                Date dumpTimestamp = timestamp(timestampLine);
+                if (to != null && dumpTimestamp != null && dumpTimestamp.after(to)) {
+                    exhausted = true;
+                    return false;
+                }
+
+                boolean inRange = (from == null && to == null) || (
+                        dumpTimestamp != null && (from == null || !dumpTimestamp.before(from))
+                );
+                if (!inRange || !parse) {
+                    readBody(null);
+                    if (inRange) return true;
+                    continue;
+                }
+
+                StringBuilder body = new StringBuilder();
+                readBody(body);
+                next = factory.fromReader(new StringReader(body.toString()));
+                nextTimestamp = dumpTimestamp;
+                return true;
+            }
+            return false;
+        } catch (IOException ex) {
+            throw new IllegalRuntimeStateException("Failed reading threaddump log: %s", ex.getMessage());
+        }
+    }
+
+    // Read until the start of the next threaddump
+    private boolean findStart() throws IOException {
+        if (startLine != null) return true;
+        if (exhausted) return false;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(DUMP_START)) {
+                startLine = line;
+                timestampLine = previousLine;
+                previousLine = null;
+                return true;
+            }
+            previousLine = line;
+        }
+
+        exhausted = true;
+        return false;
+    }
+
+    /**
+     * Consume current threaddump.
+     *
+     * @param body Buffer to append the threaddump to, null to discard it.
+     */
+    private void readBody(@CheckForNull StringBuilder body) throws IOException {
+        if (body != null) {
+            if (timestamp(timestampLine) != null) {
+                body.append(timestampLine).append('\n');
+            }
+            body.append(startLine).append('\n');
+        }
+        startLine = null;
+        timestampLine = null;
+
+        // The last line is held back as it can be a timestamp of the next threaddump
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(DUMP_START)) {
+                startLine = line;
+                if (timestamp(previousLine) != null) {
+                    timestampLine = previousLine;
+                } else if (previousLine != null && body != null) {
+                    // No JNI trailer and no timestamp - the held back line still belongs to this threaddump
+                    body.append(previousLine).append('\n');
+                }
+                previousLine = null;
+                return;
+            }
+
+            if (previousLine != null && body != null) {
+                body.append(previousLine).append('\n');
+            }
+            previousLine = null;
+
+            if (line.startsWith("JNI global references") || line.startsWith("JNI global refs")) return;
+
+            previousLine = line;
+        }
+
+        if (previousLine != null && body != null) {
+            body.append(previousLine).append('\n');
+        }
+        previousLine = null;
+        exhausted = true;
+    }
+
+    // Parse timestamp line, null if the line is something else
+    private @CheckForNull Date timestamp(@CheckForNull String line) {
+        if (line == null) return null;
+
+        String trimmed = line.trim();
+        ParsePosition position = new ParsePosition(0);
+        Date date = timestampFormat.parse(trimmed, position);
+        return position.getIndex() == trimmed.length() ? date : null;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Immutable set of runtime threads represented by bits of their ordinals.
+ *
+ * Used for large runtimes only, and only for sets that iterate in runtime order so it can not change the order
+ * observed by clients. Sparse sets are kept in hash sets as the bits would take more memory than the entries.
+ *
+ * @author ogondza
+ */
+/*package*/ final class BitSetThreads<ThreadType extends ProcessThread<ThreadType, ?, ?>> extends AbstractSet<ThreadType> {
+
+    /**
+     * Minimal number of threads in runtime to use bit sets.
+     */
+    /*package*/ static final int THRESHOLD = 256;
+
+    private final @Nonnull ThreadType[] universe;
+    private final @Nonnull BitSet bits;
+    private final @Nonnegative int size;
+    private int hashCode;
+
+    private BitSetThreads(@Nonnull ThreadType[] universe, @Nonnull BitSet bits, @Nonnegative int size) {
+        this.universe = universe;
+        this.bits = bits;
+        this.size = size;
+    }
+
+    /**
+     * Represent collection as bits if possible.
+     *
+     * @param universe All runtime threads indexed by ordinal.
+     * @return null if runtime is too small, the threads are not in runtime order or too sparse.
+     */
+    /*package*/ static @CheckForNull <T extends ProcessThread<T, ?, ?>> BitSetThreads<T> from(
+            @Nonnull T[] universe, @Nonnull Collection<T> threads
+    ) {
+        if (universe.length < THRESHOLD) return null;
+        if (threads instanceof BitSetThreads && ((BitSetThreads<T>) threads).universe == universe) {
+            return (BitSetThreads<T>) threads;
+        }
+
+        BitSet bits = new BitSet();
+        int last = -1;
+        int count = 0;
+        for (T thread: threads) {
+            int ordinal = thread.ordinal;
+            if (ordinal <= last || ordinal >= universe.length || universe[ordinal] != thread) return null;
+
+            bits.set(ordinal);
+            last = ordinal;
+            count++;
+        }
+
+        return dense(count, last) ? new BitSetThreads<T>(universe, bits, count) : null;
+    }
+
+    /**
+     * Create set of threads whose ordinals are set.
+     *
+     * The bits are not copied so caller must not modify them.
+     */
+    /*package*/ static @Nonnull <T extends ProcessThread<T, ?, ?>> Set<T> of(@Nonnull T[] universe, @Nonnull BitSet bits) {
+        int count = bits.cardinality();
+        if (count == 0) return Collections.emptySet();
+
+        if (dense(count, bits.length() - 1)) return new BitSetThreads<T>(universe, bits, count);
+
+        LinkedHashSet<T> threads = new LinkedHashSet<T>(count * 2);
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            threads.add(universe[i]);
+        }
+        return threads;
+    }
+
+    // Take no more memory than hash set entries would
+    private static boolean dense(int count, int last) {
+        return (long) count * 64 > last;
+    }
+
+    /**
+     * Bits of contained threads, not to be modified.
+     */
+    /*package*/ @Nonnull BitSet bits() {
+        return bits;
+    }
+
+    /*package*/ @Nonnull ThreadType get(@Nonnegative int ordinal) {
+        return universe[ordinal];
+    }
+
+    /*package*/ boolean isCompatible(@Nonnull BitSetThreads<?> other) {
+        return universe == other.universe;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof ProcessThread)) return false;
+
+        int ordinal = ((ProcessThread<?, ?, ?>) o).ordinal;
+        if (ordinal < 0 || ordinal >= universe.length || !bits.get(ordinal)) return false;
+
+        // Equal thread of equal runtime has the same ordinal
+        return universe[ordinal].equals(o);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        if (c instanceof BitSetThreads && isCompatible((BitSetThreads<?>) c)) {
+            BitSet missing = (BitSet) ((BitSetThreads<?>) c).bits.clone();
+            missing.andNot(bits);
+            return missing.isEmpty();
+        }
+        return super.containsAll(c);
+    }
+
+    @Override
+    public Iterator<ThreadType> iterator() {
+        return new Iterator<ThreadType>() {
+            private int next = bits.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public ThreadType next() {
+                if (next < 0) throw new NoSuchElementException();
+
+                ThreadType thread = universe[next];
+                next = bits.nextSetBit(next + 1);
+                return thread;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean add(ThreadType thread) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends ThreadType> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof BitSetThreads && isCompatible((BitSetThreads<?>) o)) {
+            return bits.equals(((BitSetThreads<?>) o).bits);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        // Racing threads compute the same value
+        int h = hashCode;
+        if (h == 0 && size != 0) {
+            h = hashCode = super.hashCode();
+        }
+        return h;
+    }
+}
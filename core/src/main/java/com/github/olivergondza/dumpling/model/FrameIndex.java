@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Threads of a runtime by methods on their stacks.
+ *
+ * Lookups take time proportional to the number of matching threads, not the number of frames.
+ *
+ * @author ogondza
+ * @see ThreadSet#inMethod(String)
+ * @see ThreadSet#inClass(String)
+ * @see ThreadSet#inPackagePrefix(String)
+ */
+/*package*/ final class FrameIndex {
+
+    // Ordinals of threads by class and method name, sorted by class name to look up packages
+    private final @Nonnull TreeMap<String, Map<String, Ordinals>> classes = new TreeMap<String, Map<String, Ordinals>>();
+
+    /*package*/ FrameIndex(@Nonnull ProcessThread<?, ?, ?>[] threads) {
+        for (int ordinal = 0; ordinal < threads.length; ordinal++) {
+            List<StackTraceElement> elements = threads[ordinal].getStackTrace().getElements();
+            for (StackTraceElement element: elements) {
+                Map<String, Ordinals> methods = classes.get(element.getClassName());
+                if (methods == null) {
+                    methods = new HashMap<String, Ordinals>();
+                    classes.put(element.getClassName(), methods);
+                }
+
+                Ordinals ordinals = methods.get(element.getMethodName());
+                if (ordinals == null) {
+                    ordinals = new Ordinals();
+                    methods.put(element.getMethodName(), ordinals);
+                }
+                ordinals.add(ordinal);
+            }
+        }
+
+        for (Map<String, Ordinals> methods: classes.values()) {
+            for (Ordinals ordinals: methods.values()) {
+                ordinals.trim();
+            }
+        }
+    }
+
+    /**
+     * @param method Fully qualified method name like "java.lang.Thread.sleep".
+     */
+    /*package*/ @Nonnull BitSet inMethod(@Nonnull String method) {
+        BitSet bits = new BitSet();
+        int dot = method.lastIndexOf('.');
+        if (dot < 0) return bits;
+
+        Map<String, Ordinals> methods = classes.get(method.substring(0, dot));
+        if (methods == null) return bits;
+
+        Ordinals ordinals = methods.get(method.substring(dot + 1));
+        if (ordinals != null) {
+            ordinals.addTo(bits);
+        }
+        return bits;
+    }
+
+    /*package*/ @Nonnull BitSet inClass(@Nonnull String className) {
+        BitSet bits = new BitSet();
+        Map<String, Ordinals> methods = classes.get(className);
+        if (methods != null) {
+            addTo(bits, methods);
+        }
+        return bits;
+    }
+
+    /*package*/ @Nonnull BitSet inPackagePrefix(@Nonnull String prefix) {
+        BitSet bits = new BitSet();
+        for (Map.Entry<String, Map<String, Ordinals>> entry: classes.tailMap(prefix, true).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) break;
+
+            addTo(bits, entry.getValue());
+        }
+        return bits;
+    }
+
+    private static void addTo(@Nonnull BitSet bits, @Nonnull Map<String, Ordinals> methods) {
+        for (Ordinals ordinals: methods.values()) {
+            ordinals.addTo(bits);
+        }
+    }
+
+    /**
+     * Ascending thread ordinals without duplicates.
+     */
+    private static final class Ordinals {
+        private int[] ordinals = new int[4];
+        private int size;
+
+        private void add(int ordinal) {
+            // Method repeated on the same stack
+            if (size > 0 && ordinals[size - 1] == ordinal) return;
+
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+
+        private void trim() {
+            if (size != ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size);
+            }
+        }
+
+        private void addTo(@Nonnull BitSet bits) {
+            for (int i = 0; i < size; i++) {
+                bits.set(ordinals[i]);
+            }
+        }
+    }
+}
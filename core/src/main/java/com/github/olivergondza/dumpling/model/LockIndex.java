@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.factory.IllegalRuntimeStateException;
+
+/**
+ * Owners and waiters of locks in {@link ProcessRuntime}.
+ *
+ * Built once with the runtime so blocking relations can be resolved without scanning all threads.
+ *
+ * @author ogondza
+ * @see ProcessRuntime#getLockIndex()
+ */
+public final class LockIndex<ThreadType extends ProcessThread<ThreadType, ?, ?>> {
+
+    private final @Nonnull Map<ThreadLock, ThreadType> monitorOwners = new HashMap<ThreadLock, ThreadType>();
+    private final @Nonnull Map<ThreadLock, ThreadType> synchronizerOwners = new HashMap<ThreadLock, ThreadType>();
+    private final @Nonnull Map<ThreadLock, List<ThreadType>> monitorWaiters = new HashMap<ThreadLock, List<ThreadType>>();
+    private final @Nonnull Map<ThreadLock, List<ThreadType>> synchronizerWaiters = new HashMap<ThreadLock, List<ThreadType>>();
+
+    // Threads are unique within runtime
+    private final @Nonnull Map<ThreadType, ThreadType> blocking = new IdentityHashMap<ThreadType, ThreadType>();
+    private final @Nonnull Map<ThreadType, List<ThreadType>> blocked = new IdentityHashMap<ThreadType, List<ThreadType>>();
+
+    /**
+     * @throws IllegalRuntimeStateException In case multiple threads own the same lock.
+     */
+    /*package*/ LockIndex(@Nonnull Iterable<ThreadType> threads) {
+        // At most one thread should own the monitor/synchronizer
+        for (ThreadType t: threads) {
+            for (ThreadLock.Monitor monitor: t.getMonitors()) {
+                ThreadType existing = monitorOwners.put(monitor.getLock(), t);
+                if (existing != null && existing != t) {
+                    throw new IllegalRuntimeStateException(
+                            "Multiple threads own the same monitor '%s':%n%s%n%nAND%n%n%s%n",
+                            monitor.getLock(), existing, t
+                    );
+                }
+            }
+
+            for (ThreadLock lock: t.getAcquiredSynchronizers()) {
+                ThreadType existing = synchronizerOwners.put(lock, t);
+                if (existing != null && existing != t) {
+                    throw new IllegalRuntimeStateException(
+                            "Multiple threads own the same synchronizer '%s':%n%s%n%nAND%n%n%s%n",
+                            lock, existing, t
+                    );
+                }
+            }
+        }
+
+        for (ThreadType t: threads) {
+            ThreadLock waitingTo = t.getWaitingToLock();
+            if (waitingTo != null) {
+                add(monitorWaiters, waitingTo, t);
+            }
+
+            // Some threads are blocked by other particular ones when parking, but not all parking threads are blocked
+            // by a thread (we can identify). This naive implementation seems to work reasonably well. These notes might
+            // be of value:
+            //
+            // Not detectable:
+            //
+            // com.google.common.util.concurrent.AbstractFuture$Sync
+            // java.util.concurrent.CountDownLatch$Sync
+            // java.util.concurrent.FutureTask
+            // java.util.concurrent.FutureTask$Sync
+            // java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject
+            // java.util.concurrent.Semaphore$NonfairSync
+            // java.util.concurrent.SynchronousQueue$TransferStack (Idle ThreadPoolExecutor$Worker)
+            //
+            // Detectable in certain situations:
+            //
+            // java.util.concurrent.locks.ReentrantLock$NonfairSync
+            // java.util.concurrent.locks.ReentrantReadWriteLock$NonfairSync (both write or write/read lock blockage)
+            ThreadLock waitingOn = t.getWaitingOnLock();
+            boolean parked = waitingOn != null && t.getStatus().isParked();
+            if (parked) {
+                add(synchronizerWaiters, waitingOn, t);
+            }
+
+            ThreadType owner = waitingTo == null ? null : monitorOwners.get(waitingTo);
+            if (owner == null && parked) {
+                owner = synchronizerOwners.get(waitingOn);
+            }
+
+            if (owner != null && owner != t) {
+                blocking.put(t, owner);
+                add(blocked, owner, t);
+            }
+        }
+    }
+
+    private static <K, T> void add(Map<K, List<T>> map, K key, T value) {
+        List<T> values = map.get(key);
+        if (values == null) {
+            values = new ArrayList<T>(2);
+            map.put(key, values);
+        }
+        values.add(value);
+    }
+
+    /**
+     * Thread holding the monitor.
+     */
+    public @CheckForNull ThreadType getMonitorOwner(@Nonnull ThreadLock lock) {
+        return monitorOwners.get(lock);
+    }
+
+    /**
+     * Thread holding the ownable synchronizer.
+     */
+    public @CheckForNull ThreadType getSynchronizerOwner(@Nonnull ThreadLock lock) {
+        return synchronizerOwners.get(lock);
+    }
+
+    /**
+     * Threads waiting to acquire the monitor, in runtime order.
+     */
+    public @Nonnull List<ThreadType> getMonitorWaiters(@Nonnull ThreadLock lock) {
+        return unmodifiable(monitorWaiters.get(lock));
+    }
+
+    /**
+     * Threads parked on the synchronizer, in runtime order.
+     */
+    public @Nonnull List<ThreadType> getSynchronizerWaiters(@Nonnull ThreadLock lock) {
+        return unmodifiable(synchronizerWaiters.get(lock));
+    }
+
+    /*package*/ @CheckForNull ThreadType getBlockingThread(@Nonnull ThreadType thread) {
+        return blocking.get(thread);
+    }
+
+    /*package*/ @Nonnull List<ThreadType> getBlockedThreads(@Nonnull ThreadType thread) {
+        return unmodifiable(blocked.get(thread));
+    }
+
+    private static <T> List<T> unmodifiable(@CheckForNull List<T> list) {
+        if (list == null) return Collections.emptyList();
+        return Collections.unmodifiableList(list);
+    }
+}
@@ -24,12 +24,13 @@
 package com.github.olivergondza.dumpling.model;
 
 import java.io.PrintStream;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 import com.github.olivergondza.dumpling.factory.IllegalRuntimeStateException;
@@ -47,15 +48,27 @@ public abstract class ProcessRuntime<
 > extends ModelObject {
 
     private final @Nonnull SetType threads;
+    private final @Nonnull ThreadType[] ordered;
     private final @Nonnull SetType emptySet;
+    private final @Nonnull LockIndex<ThreadType> lockIndex;
+    private volatile WaitForGraph<ThreadType> waitForGraph;
+    private volatile FrameIndex frameIndex;
+    private volatile ThreadIdIndex idIndex;
+    // Only needed while threads are created
+    private StackTraceTrie stackTraces = new StackTraceTrie();
 
     public ProcessRuntime(@Nonnull Set<? extends ProcessThread.Builder<?>> builders) {
-        this.threads = createThreads(builders);
+        Set<ThreadType> threads = createThreads(builders);
+        stackTraces.seal();
+        this.stackTraces = null;
+        this.ordered = order(threads);
+        Set<ThreadType> bits = BitSetThreads.from(ordered, threads);
+        this.threads = createSet(bits != null ? bits : Collections.unmodifiableSet(threads));
         this.emptySet = createSet(Collections.<ThreadType>emptySet());
-        checkSanity();
+        this.lockIndex = new LockIndex<ThreadType>(this.threads);
     }
 
-    private @Nonnull SetType createThreads(@Nonnull Set<? extends ProcessThread.Builder<?>> builders) {
+    private @Nonnull Set<ThreadType> createThreads(@Nonnull Set<? extends ProcessThread.Builder<?>> builders) {
         Set<ThreadType> threads = new LinkedHashSet<ThreadType>(builders.size());
         for (ProcessThread.Builder<?> builder: builders) {
             threads.add(createThread(builder));
@@ -67,34 +80,24 @@ public abstract class ProcessRuntime<
                 "%d builders produced %d threads", buildersSize, threadsSize
         );
 
-        return createSet(Collections.unmodifiableSet(threads));
-    }
-
-    private void checkSanity() {
-        // At most one thread should own the monitor/synchronizer
-        HashMap<ThreadLock, ThreadType> monitors = new HashMap<ThreadLock, ThreadType>();
-        HashMap<ThreadLock, ThreadType> synchronizers = new HashMap<ThreadLock, ThreadType>();
-        for (ThreadType t: threads) {
-            for (ThreadLock lock: t.getAcquiredMonitors()) {
-                ThreadType existing = monitors.put(lock, t);
-                if (existing != null) {
-                    throw new IllegalRuntimeStateException(
-                            "Multiple threads own the same monitor '%s':%n%s%n%nAND%n%n%s%n",
-                            lock, existing, t
-                    );
-                }
-            }
-
-            for (ThreadLock lock: t.getAcquiredSynchronizers()) {
-                ThreadType existing = synchronizers.put(lock, t);
-                if (existing != null) {
-                    throw new IllegalRuntimeStateException(
-                            "Multiple threads own the same synchronizer '%s':%n%s%n%nAND%n%n%s%n",
-                            lock, existing, t
-                    );
-                }
-            }
+        return threads;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static @Nonnull <T extends ProcessThread<T, ?, ?>> T[] order(@Nonnull Set<T> threads) {
+        T[] ordered = (T[]) threads.toArray(new ProcessThread<?, ?, ?>[threads.size()]);
+        for (int i = 0; i < ordered.length; i++) {
+            ordered[i].ordinal = i;
         }
+        return ordered;
+    }
+
+    /**
+     * Get trace sharing frames with other threads of this runtime.
+     */
+    /*package*/ @Nonnull StackTrace intern(@Nonnull StackTrace trace) {
+        StackTraceTrie trie = stackTraces;
+        return trie == null ? trace : trie.intern(trace);
     }
 
     protected abstract @Nonnull SetType createSet(@Nonnull Set<ThreadType> threads);
@@ -108,6 +111,89 @@ public abstract class ProcessRuntime<
         return threads;
     }
 
+    /**
+     * Lock owners and waiters.
+     */
+    public @Nonnull LockIndex<ThreadType> getLockIndex() {
+        return lockIndex;
+    }
+
+    /**
+     * Threads waiting for other threads.
+     *
+     * Created on first access.
+     */
+    public @Nonnull WaitForGraph<ThreadType> getWaitForGraph() {
+        WaitForGraph<ThreadType> graph = waitForGraph;
+        if (graph == null) {
+            // Racing threads construct equivalent graphs
+            graph = waitForGraph = new WaitForGraph<ThreadType>(threads.getThreadsAsSet(), lockIndex);
+        }
+        return graph;
+    }
+
+    /**
+     * Threads by methods on their stacks.
+     *
+     * Created on first access.
+     */
+    /*package*/ @Nonnull FrameIndex getFrameIndex() {
+        FrameIndex index = frameIndex;
+        if (index == null) {
+            // Racing threads construct equivalent indexes
+            index = frameIndex = new FrameIndex(ordered);
+        }
+        return index;
+    }
+
+    /**
+     * Threads by their identifiers.
+     *
+     * Created on first access.
+     */
+    /*package*/ @Nonnull ThreadIdIndex getIdIndex() {
+        ThreadIdIndex index = idIndex;
+        if (index == null) {
+            // Racing threads construct equivalent indexes
+            index = idIndex = new ThreadIdIndex(ordered);
+        }
+        return index;
+    }
+
+    /*package*/ @CheckForNull ThreadType getThread(int ordinal) {
+        return ordinal == -1 ? null : ordered[ordinal];
+    }
+
+    /**
+     * Get thread by java thread id.
+     *
+     * @return <tt>null</tt> if there is no such thread.
+     * @see ProcessThread#getId()
+     */
+    public @CheckForNull ThreadType forId(long id) {
+        return getThread(getIdIndex().forId(id));
+    }
+
+    /**
+     * Get thread by JVM thread id.
+     *
+     * @return <tt>null</tt> if there is no such thread.
+     * @see ProcessThread#getTid()
+     */
+    public @CheckForNull ThreadType forTid(long tid) {
+        return getThread(getIdIndex().forTid(tid));
+    }
+
+    /**
+     * Get thread by native thread id.
+     *
+     * @return <tt>null</tt> if there is no such thread.
+     * @see ProcessThread#getNid()
+     */
+    public @CheckForNull ThreadType forNid(long nid) {
+        return getThread(getIdIndex().forNid(nid));
+    }
+
     public @Nonnull SetType getEmptyThreadSet() {
         return emptySet;
     }
@@ -118,6 +204,9 @@ public abstract class ProcessRuntime<
     public @Nonnull SetType getThreadSet(@Nonnull Collection<ThreadType> threads) {
         if (threads.isEmpty()) return emptySet;
 
+        Set<ThreadType> bits = BitSetThreads.from(ordered, threads);
+        if (bits != null) return createSet(bits);
+
         Set<ThreadType> threadSet = threads instanceof Set
                 ? (Set<ThreadType>) threads
                 : new LinkedHashSet<ThreadType>(threads)
@@ -125,6 +214,16 @@ public abstract class ProcessRuntime<
         return createSet(threadSet);
     }
 
+    /**
+     * Instantiate {@link ThreadSet} of threads with given ordinals.
+     *
+     * The bits are not copied so caller must not modify them.
+     */
+    /*package*/ @Nonnull SetType getThreadSet(@Nonnull BitSet ordinals) {
+        Set<ThreadType> threads = BitSetThreads.of(ordered, ordinals);
+        return threads.isEmpty() ? emptySet : createSet(threads);
+    }
+
     /**
      * Run query against all threads in the runtime.
      *
@@ -26,7 +26,9 @@ package com.github.olivergondza.dumpling.model;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -52,11 +54,47 @@ public class ProcessThread<
     private final @Nonnull RuntimeType runtime;
     private final @Nonnull Builder<?> state;
 
+    // Computed once as queries consult these repeatedly
+    private final @Nonnull Set<ThreadLock> acquiredMonitors;
+    private final @Nonnull Set<ThreadLock> acquiredSynchronizers;
+    private final @Nonnull Set<ThreadLock> acquiredLocks;
+
+    // Position in runtime, assigned by the runtime once constructed
+    /*package*/ int ordinal = -1;
+
     protected ProcessThread(@Nonnull RuntimeType runtime, @Nonnull Builder<?> builder) {
         this.runtime = runtime;
         this.state = builder.clone();
+        state.stackTrace = runtime.intern(state.stackTrace);
 
         checkSanity();
+
+        // Convert to Set not to expose duplicates
+        LinkedHashSet<ThreadLock> monitors = new LinkedHashSet<ThreadLock>(state.acquiredMonitors.size());
+        for (Monitor m: state.acquiredMonitors) {
+            monitors.add(m.getLock());
+        }
+        acquiredMonitors = immutable(monitors);
+        acquiredSynchronizers = immutable(new LinkedHashSet<ThreadLock>(state.acquiredSynchronizers));
+
+        if (acquiredSynchronizers.isEmpty()) {
+            acquiredLocks = acquiredMonitors;
+        } else if (acquiredMonitors.isEmpty()) {
+            acquiredLocks = acquiredSynchronizers;
+        } else {
+            LinkedHashSet<ThreadLock> locks = new LinkedHashSet<ThreadLock>(monitors);
+            locks.addAll(acquiredSynchronizers);
+            acquiredLocks = immutable(locks);
+        }
+    }
+
+    // Most threads hold no lock or a single one
+    private static @Nonnull Set<ThreadLock> immutable(@Nonnull Set<ThreadLock> locks) {
+        switch (locks.size()) {
+            case 0: return Collections.emptySet();
+            case 1: return Collections.singleton(locks.iterator().next());
+            default: return Collections.unmodifiableSet(locks);
+        }
     }
 
     private void checkSanity() {
@@ -150,72 +188,59 @@ public class ProcessThread<
         return state.waitingToLock;
     }
 
+    /**
+     * Monitors and synchronizers held by the thread.
+     *
+     * @return Immutable set.
+     */
     public @Nonnull Set<ThreadLock> getAcquiredLocks() {
-        // Convert to Set not to expose duplicates
-        LinkedHashSet<ThreadLock> locks = new LinkedHashSet<ThreadLock>(
-                state.acquiredMonitors.size() + state.acquiredSynchronizers.size()
-        );
-        for (Monitor m: state.acquiredMonitors) {
-            locks.add(m.getLock());
-        }
-        locks.addAll(state.acquiredSynchronizers);
-        return locks;
+        return acquiredLocks;
     }
 
+    /**
+     * @return Immutable set.
+     */
     public @Nonnull Set<ThreadLock> getAcquiredMonitors() {
-        LinkedHashSet<ThreadLock> locks = new LinkedHashSet<ThreadLock>(state.acquiredMonitors.size());
-        for (Monitor m: state.acquiredMonitors) {
-            locks.add(m.getLock());
-        }
-        return locks;
+        return acquiredMonitors;
     }
 
+    /**
+     * @return Immutable set.
+     */
     public @Nonnull Set<ThreadLock> getAcquiredSynchronizers() {
-        return new LinkedHashSet<ThreadLock>(state.acquiredSynchronizers);
+        return acquiredSynchronizers;
     }
 
     /**
-     * Get threads that are waiting for lock held by this thread.
+     * Thread holds the lock, either as monitor or synchronizer.
      */
-    public @Nonnull SetType getBlockedThreads() {
-        Set<ThreadLock> acquiredMonitors = getAcquiredMonitors();
-
-        Set<ThreadType> blocked = new LinkedHashSet<ThreadType>();
-        for (ThreadType thread: runtime.getThreads()) {
-            if (thread == this) continue;
-            if (acquiredMonitors.contains(thread.getWaitingToLock()) || isParkingBlocking(this, thread)) {
-                blocked.add(thread);
-                assert thread.getBlockingThread() == this; // Verify consistency of back references
-            } else {
-                assert thread.getBlockingThread() != this; // Verify consistency of back references
-            }
-        }
+    public boolean holdsLock(@Nonnull ThreadLock lock) {
+        return acquiredLocks.contains(lock);
+    }
+
+    public boolean holdsMonitor(@Nonnull ThreadLock lock) {
+        return acquiredMonitors.contains(lock);
+    }
 
-        return runtime.getThreadSet(blocked);
+    public boolean holdsSynchronizer(@Nonnull ThreadLock lock) {
+        return acquiredSynchronizers.contains(lock);
     }
 
     /**
-     * Some threads are blocked by other particular ones when parking, but not all parking threads are blocked by a
-     * thread (we can identify). This naive implementation seems to work reasonably well. These notes might be of value:
-     *
-     * Not detectable:
+     * Monitors acquired by the thread including the depth of the stack frame they were acquired on.
      *
-     * com.google.common.util.concurrent.AbstractFuture$Sync
-     * java.util.concurrent.CountDownLatch$Sync
-     * java.util.concurrent.FutureTask
-     * java.util.concurrent.FutureTask$Sync
-     * java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject
-     * java.util.concurrent.Semaphore$NonfairSync
-     * java.util.concurrent.SynchronousQueue$TransferStack (Idle ThreadPoolExecutor$Worker)
-     *
-     * Detectable in certain situations:
-     *
-     * java.util.concurrent.locks.ReentrantLock$NonfairSync
-     * java.util.concurrent.locks.ReentrantReadWriteLock$NonfairSync (both write lock or write/read lock blockage)
+     * Unlike {@link #getAcquiredMonitors()}, monitors acquired repeatedly are reported for every frame.
      */
-    // Cannot be a private instance method since ths and tht are statically distinct types javac fail to permit private access on - strange
-    private static boolean isParkingBlocking(ProcessThread<?, ?, ?> ths, ProcessThread<?, ?, ?> tht) {
-        return tht.getStatus().isParked() && ths.getAcquiredSynchronizers().contains(tht.getWaitingOnLock());
+    public @Nonnull List<ThreadLock.Monitor> getMonitors() {
+        return state.acquiredMonitors;
+    }
+
+    /**
+     * Get threads that are waiting for lock held by this thread.
+     */
+    public @Nonnull SetType getBlockedThreads() {
+        List<ThreadType> blocked = runtime.getLockIndex().getBlockedThreads((ThreadType) this);
+        return runtime.getThreadSet(new LinkedHashSet<ThreadType>(blocked));
     }
 
     /**
@@ -235,18 +260,7 @@ public class ProcessThread<
      * @return Blocking thread or null if not block by a thread.
      */
     public @CheckForNull ThreadType getBlockingThread() {
-        if (state.waitingToLock == null && state.waitingOnLock == null) {
-            return null;
-        }
-
-        for (ThreadType thread: runtime.getThreads()) {
-            if (thread == this) continue;
-            Set<ThreadLock> acquired = thread.getAcquiredMonitors();
-            if (acquired.contains(state.waitingToLock)) return thread;
-            if (isParkingBlocking(thread, this)) return thread;
-        }
-
-        return null;
+        return runtime.getLockIndex().getBlockingThread((ThreadType) this);
     }
 
     /**
@@ -531,11 +545,138 @@ public class ProcessThread<
         boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread);
     }
 
+    /**
+     * {@link Predicate} estimating its cost and selectivity.
+     *
+     * Combined predicates use the estimates to evaluate cheap and decisive checks first. Predicates without estimates
+     * are presumed to cost {@value #DEFAULT_COST} and match half of the threads.
+     *
+     * @see #allOf(Predicate...)
+     * @see #anyOf(Predicate...)
+     */
+    public interface EstimatedPredicate extends Predicate {
+        double DEFAULT_COST = 10;
+        double DEFAULT_SELECTIVITY = 0.5;
+
+        /**
+         * Relative cost of single evaluation, 1 being a comparison of thread attribute.
+         */
+        double getCost();
+
+        /**
+         * Estimated fraction of threads matched, from 0 to 1.
+         */
+        double getSelectivity();
+    }
+
+    private static abstract class Estimated implements EstimatedPredicate {
+        private final double cost;
+        private final double selectivity;
+
+        private Estimated(double cost, double selectivity) {
+            this.cost = cost;
+            this.selectivity = selectivity;
+        }
+
+        @Override
+        public double getCost() {
+            return cost;
+        }
+
+        @Override
+        public double getSelectivity() {
+            return selectivity;
+        }
+    }
+
+    private static double cost(@Nonnull Predicate predicate) {
+        return predicate instanceof EstimatedPredicate
+                ? ((EstimatedPredicate) predicate).getCost()
+                : EstimatedPredicate.DEFAULT_COST
+        ;
+    }
+
+    private static double selectivity(@Nonnull Predicate predicate) {
+        return predicate instanceof EstimatedPredicate
+                ? ((EstimatedPredicate) predicate).getSelectivity()
+                : EstimatedPredicate.DEFAULT_SELECTIVITY
+        ;
+    }
+
+    /**
+     * Match thread that all the predicates match.
+     *
+     * Predicates are evaluated in the order of their cost per chance to reject the thread.
+     */
+    public static @Nonnull EstimatedPredicate allOf(@Nonnull Predicate... predicates) {
+        final Predicate[] ordered = order(predicates, false);
+
+        double cost = 0;
+        double selectivity = 1;
+        for (Predicate predicate: ordered) {
+            cost += selectivity * cost(predicate);
+            selectivity *= selectivity(predicate);
+        }
+
+        return new Estimated(cost, selectivity) {
+            @Override
+            public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
+                for (Predicate predicate: ordered) {
+                    if (!predicate.isValid(thread)) return false;
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Match thread that any of the predicates match.
+     *
+     * Predicates are evaluated in the order of their cost per chance to accept the thread.
+     */
+    public static @Nonnull EstimatedPredicate anyOf(@Nonnull Predicate... predicates) {
+        final Predicate[] ordered = order(predicates, true);
+
+        double cost = 0;
+        double rejected = 1;
+        for (Predicate predicate: ordered) {
+            cost += rejected * cost(predicate);
+            rejected *= 1 - selectivity(predicate);
+        }
+
+        return new Estimated(cost, 1 - rejected) {
+            @Override
+            public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
+                for (Predicate predicate: ordered) {
+                    if (predicate.isValid(thread)) return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private static @Nonnull Predicate[] order(@Nonnull Predicate[] predicates, final boolean accepting) {
+        Predicate[] ordered = predicates.clone();
+        // Stable so equally ranked predicates keep their order
+        Arrays.sort(ordered, new Comparator<Predicate>() {
+            @Override
+            public int compare(Predicate lhs, Predicate rhs) {
+                return Double.compare(rank(lhs), rank(rhs));
+            }
+
+            private double rank(Predicate predicate) {
+                double decisive = accepting ? selectivity(predicate) : 1 - selectivity(predicate);
+                return decisive <= 0 ? Double.POSITIVE_INFINITY : cost(predicate) / decisive;
+            }
+        });
+        return ordered;
+    }
+
     /**
      * Match thread by name.
      */
     public static @Nonnull Predicate nameIs(final @Nonnull String name) {
-        return new Predicate() {
+        return new Estimated(1, 0.01) {
             @Override
             public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
                 return thread.getName().equals(name);
@@ -547,7 +688,7 @@ public class ProcessThread<
      * Match thread its name contains pattern.
      */
     public static @Nonnull Predicate nameContains(final @Nonnull Pattern pattern) {
-        return new Predicate() {
+        return new Estimated(10, 0.1) {
             @Override
             public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
                 return pattern.matcher(thread.getName()).find();
@@ -559,7 +700,7 @@ public class ProcessThread<
      * Match thread its name contains string.
      */
     public static @Nonnull Predicate nameContains(final @Nonnull String pattern) {
-        return new Predicate() {
+        return new Estimated(2, 0.1) {
             @Override
             public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
                 return thread.getName().contains(pattern);
@@ -571,7 +712,7 @@ public class ProcessThread<
      * Match waiting thread waiting for given thread to be notified.
      */
     public static @Nonnull Predicate waitingOnLock(final @Nonnull String className) {
-        return new Predicate() {
+        return new Estimated(1, 0.05) {
             @Override
             public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
                 final ThreadLock lock = thread.getWaitingOnLock();
@@ -584,7 +725,7 @@ public class ProcessThread<
      * Match thread that is waiting on lock identified by <tt>className</tt>.
      */
     public static @Nonnull Predicate waitingToLock(final @Nonnull String className) {
-        return new Predicate() {
+        return new Estimated(1, 0.05) {
             @Override
             public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
                 final ThreadLock lock = thread.getWaitingToLock();
@@ -597,7 +738,7 @@ public class ProcessThread<
      * Match thread that has acquired lock identified by <tt>className</tt>.
      */
     public static @Nonnull Predicate acquiredLock(final @Nonnull String className) {
-        return new Predicate() {
+        return new Estimated(2, 0.05) {
             @Override
             public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
                 for (ThreadLock lock: thread.getAcquiredLocks()) {
@@ -614,14 +755,26 @@ public class ProcessThread<
      * @param pattern Fully qualified method name like "com.github.olivergondza.dumpling.model.ProcessThread.evaluating".
      */
     public static @Nonnull Predicate evaluating(final @Nonnull String pattern) {
-        return new Predicate() {
+        return new Estimated(50, 0.1) {
             @Override
             public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
                 for (StackTraceElement element : thread.getStackTrace().getElements()) {
-                    if ((element.getClassName() + "." + element.getMethodName()).equals(pattern)) return true;
+                    if (isMethod(element, pattern)) return true;
                 }
                 return false;
             }
         };
     }
+
+    // Compare without concatenating the names
+    private static boolean isMethod(@Nonnull StackTraceElement element, @Nonnull String pattern) {
+        String className = element.getClassName();
+        String methodName = element.getMethodName();
+        int dot = className.length();
+        return pattern.length() == dot + 1 + methodName.length()
+                && pattern.charAt(dot) == '.'
+                && pattern.startsWith(className)
+                && pattern.endsWith(methodName)
+        ;
+    }
 }
@@ -24,8 +24,11 @@
 package com.github.olivergondza.dumpling.model;
 
 import java.io.PrintStream;
+import java.util.AbstractList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnegative;
@@ -74,18 +77,68 @@ public class StackTrace extends ModelObject {
         return new StackTraceElement(declaringClass, methodName, fileName, -2);
     }
 
-    private @Nonnull StackTraceElement[] elements;
+    /**
+     * Source of elements decoded on first access.
+     *
+     * @see StackTrace#lazy(int, Loader)
+     */
+    public interface Loader {
+        @Nonnull List<StackTraceElement> load();
+    }
+
+    /**
+     * Create trace its elements are decoded on first access.
+     *
+     * @param size Number of elements the loader provides.
+     */
+    public static @Nonnull StackTrace lazy(@Nonnegative int size, @Nonnull Loader loader) {
+        return new StackTrace(size, loader);
+    }
+
+    // Represented either by elements, possibly not loaded yet, or by a trie node. Node traces cache the elements on
+    // first random access
+    private volatile @CheckForNull StackTraceElement[] elements;
+    private final @CheckForNull StackTraceTrie.Node node;
+    private final int size;
+    private @CheckForNull Loader loader;
 
     public StackTrace(@Nonnull StackTraceElement... elements) {
         this.elements = elements.clone(); // Shallow copy is ok here as StackTraceElement is immutable
+        this.node = null;
+        this.size = elements.length;
     }
 
     public StackTrace(@Nonnull List<StackTraceElement> elements) {
         this.elements = elements.toArray(new StackTraceElement[elements.size()]);
+        this.node = null;
+        this.size = elements.size();
+    }
+
+    /**
+     * Trace represented by innermost node of runtime trie.
+     */
+    /*package*/ StackTrace(@Nonnull StackTraceTrie.Node node) {
+        this.elements = null;
+        this.node = node;
+        this.size = node.depth();
+    }
+
+    private StackTrace(@Nonnegative int size, @Nonnull Loader loader) {
+        this.elements = null;
+        this.node = null;
+        this.size = size;
+        this.loader = loader;
+    }
+
+    /**
+     * Elements are available without decoding.
+     */
+    /*package*/ boolean isLoaded() {
+        return node != null || elements != null;
     }
 
     public int size() {
-        return elements.length;
+        return size;
     }
 
     /**
@@ -96,10 +149,11 @@ public class StackTrace extends ModelObject {
     public @CheckForNull StackTraceElement getElement(@Nonnegative int depth) {
         if (depth < 0) throw new ArrayIndexOutOfBoundsException(depth);
 
-        return elements.length > depth
-                ? elements[depth]
-                : null
-        ;
+        if (depth >= size()) return null;
+
+        if (node != null && depth == 0) return node.element();
+
+        return elements()[depth];
     }
 
     /**
@@ -115,14 +169,41 @@ public class StackTrace extends ModelObject {
 
     /**
      * Get all the stack trace elements.
+     *
+     * Iterate the list rather than accessing it by index to walk the trace in linear time without copying the frames.
      */
     public @Nonnull List<StackTraceElement> getElements() {
-        return Arrays.asList(elements);
+        if (node != null && elements == null) return new NodeElements();
+
+        return Arrays.asList(elements());
+    }
+
+    private @Nonnull StackTraceElement[] elements() {
+        StackTraceElement[] elements = this.elements;
+        if (elements != null) return elements;
+
+        if (node != null) {
+            // Racing threads expand equal arrays
+            return this.elements = node.elements();
+        }
+        return load();
+    }
+
+    private synchronized @Nonnull StackTraceElement[] load() {
+        if (elements == null) {
+            List<StackTraceElement> loaded = loader.load();
+            if (loaded.size() != size) throw new IllegalStateException(
+                    "Expected " + size + " stack trace elements, loaded " + loaded.size()
+            );
+            elements = loaded.toArray(new StackTraceElement[size]);
+            loader = null;
+        }
+        return elements;
     }
 
     @Override
     public void toString(PrintStream stream, Mode mode) {
-        for (StackTraceElement e: elements) {
+        for (StackTraceElement e: getElements()) {
             stream.println();
             stream.append("\tat ").append(e.toString());
         }
@@ -132,7 +213,7 @@ public class StackTrace extends ModelObject {
 
     @Override
     public int hashCode() {
-        return 31 * Arrays.hashCode(elements);
+        return 31 * (node != null ? node.arraysHashCode() : Arrays.hashCode(elements()));
     }
 
     @Override
@@ -142,7 +223,64 @@ public class StackTrace extends ModelObject {
         if (getClass() != rhs.getClass()) return false;
 
         StackTrace other = (StackTrace) rhs;
-        if (!Arrays.equals(elements, other.elements)) return false;
+        if (node != null && other.node != null) {
+            // Equal traces of the same runtime share the node
+            if (node == other.node) return true;
+            if (node.depth() != other.node.depth() || node.arraysHashCode() != other.node.arraysHashCode()) return false;
+        }
+        if (size != other.size) return false;
+
+        Iterator<StackTraceElement> mine = getElements().iterator();
+        Iterator<StackTraceElement> others = other.getElements().iterator();
+        while (mine.hasNext()) {
+            if (!mine.next().equals(others.next())) return false;
+        }
         return true;
     }
+
+    /**
+     * Elements of trie node trace iterated from the innermost node outward.
+     */
+    private final class NodeElements extends AbstractList<StackTraceElement> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public StackTraceElement get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+            return getElement(index);
+        }
+
+        @Override
+        public @Nonnull Iterator<StackTraceElement> iterator() {
+            return new Iterator<StackTraceElement>() {
+                private @Nonnull StackTraceTrie.Node next = node;
+                private int remaining = size;
+
+                @Override
+                public boolean hasNext() {
+                    return remaining > 0;
+                }
+
+                @Override
+                public StackTraceElement next() {
+                    if (remaining == 0) throw new NoSuchElementException();
+
+                    StackTraceElement element = next.element();
+                    if (--remaining > 0) {
+                        next = next.parent();
+                    }
+                    return element;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Stack traces of runtime threads sharing their common outermost frames.
+ *
+ * Threads with the same stack share single {@link StackTrace} instance pointing to its innermost node. Not thread safe,
+ * populated during runtime construction.
+ *
+ * @author ogondza
+ */
+/*package*/ final class StackTraceTrie {
+
+    private final @Nonnull Node root = new Node();
+
+    /**
+     * Get compact trace equal to the one provided.
+     *
+     * Traces not loaded yet are returned as they are.
+     */
+    /*package*/ @Nonnull StackTrace intern(@Nonnull StackTrace trace) {
+        int size = trace.size();
+        // Keep decoding deferred
+        if (size == 0 || !trace.isLoaded()) return trace;
+
+        List<StackTraceElement> elements = trace.getElements();
+        Node node = root;
+        for (int i = size - 1; i >= 0; i--) {
+            node = node.child(elements.get(i));
+        }
+
+        if (node.trace == null) {
+            node.trace = new StackTrace(node);
+        }
+        return node.trace;
+    }
+
+    /**
+     * Release structures needed for interning only.
+     *
+     * Traces remain valid, no more traces can be interned.
+     */
+    @SuppressWarnings("unchecked")
+    /*package*/ void seal() {
+        ArrayDeque<Node> queue = new ArrayDeque<Node>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            Object children = node.children;
+            node.children = null;
+            if (children instanceof Node) {
+                queue.add((Node) children);
+            } else if (children != null) {
+                queue.addAll(((Map<?, Node>) children).values());
+            }
+        }
+    }
+
+    /**
+     * Stack frame along with all the outer ones.
+     */
+    /*package*/ static final class Node {
+        private final @CheckForNull Node parent;
+        private final @CheckForNull StackTraceElement element;
+        private final @Nonnegative int depth;
+        // Arrays.hashCode of the trace is sum + pow, with pow being 31 to the power of depth
+        private final int sum;
+        private final int pow;
+
+        // Single child or map of children
+        private @CheckForNull Object children;
+        private @CheckForNull StackTrace trace;
+
+        private Node() {
+            this.parent = null;
+            this.element = null;
+            this.depth = 0;
+            this.sum = 0;
+            this.pow = 1;
+        }
+
+        private Node(@Nonnull Node parent, @Nonnull StackTraceElement element) {
+            this.parent = parent;
+            this.element = element;
+            this.depth = parent.depth + 1;
+            this.sum = parent.sum + element.hashCode() * parent.pow;
+            this.pow = parent.pow * 31;
+        }
+
+        @SuppressWarnings("unchecked")
+        private @Nonnull Node child(@Nonnull StackTraceElement element) {
+            if (children == null) {
+                Node child = new Node(this, element);
+                children = child;
+                return child;
+            }
+
+            if (children instanceof Node) {
+                Node only = (Node) children;
+                if (only.element.equals(element)) return only;
+
+                Map<StackTraceElement, Node> map = new HashMap<StackTraceElement, Node>(4);
+                map.put(only.element, only);
+                children = map;
+            }
+
+            Map<StackTraceElement, Node> map = (Map<StackTraceElement, Node>) children;
+            Node child = map.get(element);
+            if (child == null) {
+                child = new Node(this, element);
+                map.put(element, child);
+            }
+            return child;
+        }
+
+        /*package*/ @Nonnegative int depth() {
+            return depth;
+        }
+
+        /*package*/ int arraysHashCode() {
+            return sum + pow;
+        }
+
+        /**
+         * Node of the next outer frame.
+         */
+        /*package*/ @Nonnull Node parent() {
+            return parent;
+        }
+
+        /*package*/ @Nonnull StackTraceElement element() {
+            return element;
+        }
+
+        /*package*/ @Nonnull StackTraceElement[] elements() {
+            StackTraceElement[] elements = new StackTraceElement[depth];
+            Node node = this;
+            for (int i = 0; i < depth; i++) {
+                elements[i] = node.element;
+                node = node.parent;
+            }
+            return elements;
+        }
+    }
+}
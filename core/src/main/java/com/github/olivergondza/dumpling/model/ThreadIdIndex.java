@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Thread ordinals by java, native and JVM thread ids.
+ *
+ * Keys are kept in primitive open addressing tables not to box them. The first thread in runtime order is indexed
+ * in case several of them declare the same id.
+ *
+ * @author ogondza
+ * @see ThreadSet#forId(long)
+ * @see ThreadSet#forTid(long)
+ * @see ThreadSet#forNid(long)
+ */
+/*package*/ final class ThreadIdIndex {
+
+    private final @Nonnull Table ids;
+    private final @Nonnull Table tids;
+    private final @Nonnull Table nids;
+
+    /*package*/ ThreadIdIndex(@Nonnull ProcessThread<?, ?, ?>[] threads) {
+        ids = new Table(threads.length);
+        tids = new Table(threads.length);
+        nids = new Table(threads.length);
+        for (int ordinal = 0; ordinal < threads.length; ordinal++) {
+            ProcessThread<?, ?, ?> thread = threads[ordinal];
+            Long id = thread.getId();
+            if (id != null) ids.putIfAbsent(id, ordinal);
+            Long tid = thread.getTid();
+            if (tid != null) tids.putIfAbsent(tid, ordinal);
+            Long nid = thread.getNid();
+            if (nid != null) nids.putIfAbsent(nid, ordinal);
+        }
+    }
+
+    /**
+     * @return Ordinal of the thread or -1 if there is none.
+     */
+    /*package*/ int forId(long id) {
+        return ids.get(id);
+    }
+
+    /*package*/ int forTid(long tid) {
+        return tids.get(tid);
+    }
+
+    /*package*/ int forNid(long nid) {
+        return nids.get(nid);
+    }
+
+    private static final class Table {
+        private final @Nonnull long[] keys;
+        private final @Nonnull int[] values;
+        private final int mask;
+
+        private Table(int size) {
+            // Power of two at least twice the size so probe sequences stay short
+            int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(values, -1);
+            mask = capacity - 1;
+        }
+
+        private void putIfAbsent(long key, int value) {
+            int slot = slot(key);
+            while (values[slot] != -1) {
+                if (keys[slot] == key) return;
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        private int get(long key) {
+            int slot = slot(key);
+            while (values[slot] != -1) {
+                if (keys[slot] == key) return values[slot];
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private int slot(long key) {
+            // Ids tend to be sequential or aligned addresses, spread them
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -26,14 +26,17 @@ package com.github.olivergondza.dumpling.model;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 import com.github.olivergondza.dumpling.query.SingleThreadSetQuery;
@@ -57,7 +60,7 @@ public class ThreadSet<
 
     protected ThreadSet(@Nonnull RuntimeType runtime, @Nonnull Set<ThreadType> threads) {
         this.runtime = runtime;
-        this.threads = Collections.unmodifiableSet(threads);
+        this.threads = threads instanceof BitSetThreads ? threads : Collections.unmodifiableSet(threads);
     }
 
     /**
@@ -84,15 +87,11 @@ public class ThreadSet<
      * Get threads blocked by any of current threads.
      */
     public @Nonnull SetType getBlockedThreads() {
-        Set<ThreadLock> acquired = new HashSet<ThreadLock>();
+        LockIndex<ThreadType> index = runtime.getLockIndex();
+        Set<ThreadType> blocked = new LinkedHashSet<ThreadType>();
         for (ThreadType thread: threads) {
-            acquired.addAll(thread.getAcquiredLocks());
-        }
-
-        Set<ThreadType> blocked = new HashSet<ThreadType>();
-        for (ThreadType thread: runtime.getThreads()) {
-            if (acquired.contains(thread.getWaitingToLock())) {
-                blocked.add(thread);
+            for (ThreadLock lock: thread.getAcquiredLocks()) {
+                blocked.addAll(index.getMonitorWaiters(lock));
             }
         }
 
@@ -103,19 +102,19 @@ public class ThreadSet<
      * Get threads blocking any of current threads.
      */
     public @Nonnull SetType getBlockingThreads() {
-        Set<ThreadLock> waitingTo = new HashSet<ThreadLock>();
+        LockIndex<ThreadType> index = runtime.getLockIndex();
+        Set<ThreadType> blocking = new LinkedHashSet<ThreadType>();
         for (ThreadType thread: threads) {
-            if (thread.getWaitingToLock() != null) {
-                waitingTo.add(thread.getWaitingToLock());
-            }
-        }
+            ThreadLock lock = thread.getWaitingToLock();
+            if (lock == null) continue;
 
-        Set<ThreadType> blocking = new HashSet<ThreadType>();
-        for (ThreadType thread: runtime.getThreads()) {
-            Set<ThreadLock> threadHolding = thread.getAcquiredLocks();
-            threadHolding.retainAll(waitingTo);
-            if (!threadHolding.isEmpty()) {
-                blocking.add(thread);
+            ThreadType monitorOwner = index.getMonitorOwner(lock);
+            if (monitorOwner != null) {
+                blocking.add(monitorOwner);
+            }
+            ThreadType synchronizerOwner = index.getSynchronizerOwner(lock);
+            if (synchronizerOwner != null) {
+                blocking.add(synchronizerOwner);
             }
         }
 
@@ -125,11 +124,81 @@ public class ThreadSet<
     public @Nonnull SetType ignoring(@Nonnull SetType ignoredThreads) {
         if (threads.isEmpty() || ignoredThreads.isEmpty()) return (SetType) this;
 
-        HashSet<ThreadType> newThreads = new HashSet<ThreadType>(threads);
+        BitSet bits = bits(ignoredThreads);
+        if (bits != null) {
+            bits.andNot(((BitSetThreads<?>) ignoredThreads.threads).bits());
+            return runtime.getThreadSet(bits);
+        }
+
+        LinkedHashSet<ThreadType> newThreads = new LinkedHashSet<ThreadType>(threads);
         newThreads.removeAll(ignoredThreads.threads);
         return derive(newThreads);
     }
 
+    /**
+     * Get threads present in either of the sets.
+     *
+     * Threads of this set are iterated first unless both sets are ordered as runtime threads.
+     *
+     * @return New thread collection bound to same runtime.
+     * @throws IllegalArgumentException if the sets belong to different runtimes.
+     */
+    public @Nonnull SetType union(@Nonnull SetType other) {
+        checkCompatible(other);
+        if (other.isEmpty()) return (SetType) this;
+        if (isEmpty()) return other;
+
+        BitSet bits = bits(other);
+        if (bits != null) {
+            bits.or(((BitSetThreads<?>) other.threads).bits());
+            return runtime.getThreadSet(bits);
+        }
+
+        LinkedHashSet<ThreadType> union = new LinkedHashSet<ThreadType>(threads);
+        union.addAll(other.threads);
+        return derive(union);
+    }
+
+    /**
+     * Get threads present in both sets.
+     *
+     * @return New thread collection bound to same runtime.
+     * @throws IllegalArgumentException if the sets belong to different runtimes.
+     */
+    public @Nonnull SetType intersection(@Nonnull SetType other) {
+        checkCompatible(other);
+        if (isEmpty()) return (SetType) this;
+        if (other.isEmpty()) return other;
+
+        BitSet bits = bits(other);
+        if (bits != null) {
+            bits.and(((BitSetThreads<?>) other.threads).bits());
+            return runtime.getThreadSet(bits);
+        }
+
+        LinkedHashSet<ThreadType> intersection = new LinkedHashSet<ThreadType>();
+        for (ThreadType thread: threads) {
+            if (other.threads.contains(thread)) intersection.add(thread);
+        }
+        return derive(intersection);
+    }
+
+    private void checkCompatible(@Nonnull SetType other) {
+        if (!runtime.equals(other.runtime)) throw new IllegalArgumentException(
+                "Arguments bound to different ProcessRuntimes"
+        );
+    }
+
+    // Copy of bits of this set if both sets are represented as bits of the same runtime
+    private BitSet bits(@Nonnull SetType other) {
+        if (!(threads instanceof BitSetThreads) || !(other.threads instanceof BitSetThreads)) return null;
+
+        BitSetThreads<ThreadType> lhs = (BitSetThreads<ThreadType>) threads;
+        if (!lhs.isCompatible((BitSetThreads<?>) other.threads)) return null;
+
+        return (BitSet) lhs.bits().clone();
+    }
+
     /**
      * Get subset of current threads.
      *
@@ -137,7 +206,17 @@ public class ThreadSet<
      * @return {@link ThreadSet} scoped to current runtime containing subset of threads that match the predicate.
      */
     public @Nonnull SetType where(ProcessThread.Predicate pred) {
-        HashSet<ThreadType> subset = new HashSet<ThreadType>(size() / 2);
+        if (threads instanceof BitSetThreads) {
+            BitSetThreads<ThreadType> storage = (BitSetThreads<ThreadType>) threads;
+            BitSet bits = storage.bits();
+            BitSet subset = new BitSet(bits.length());
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                if (pred.isValid(storage.get(i))) subset.set(i);
+            }
+            return runtime.getThreadSet(subset);
+        }
+
+        LinkedHashSet<ThreadType> subset = new LinkedHashSet<ThreadType>();
         for (ThreadType thread: threads) {
             if (pred.isValid(thread)) subset.add(thread);
         }
@@ -145,6 +224,159 @@ public class ThreadSet<
         return runtime.getThreadSet(subset);
     }
 
+    /**
+     * Get subset of current threads evaluating the predicate concurrently.
+     *
+     * Threads are split into ranges evaluated by given number of workers, so the predicate has to be thread safe.
+     * Worth it for expensive predicates on large sets only.
+     *
+     * @param pred Predicate to match.
+     * @param parallelism Number of workers, 1 evaluates on the calling thread.
+     * @return {@link ThreadSet} scoped to current runtime containing subset of threads that match the predicate, in
+     * the order of this set.
+     */
+    public @Nonnull SetType where(@Nonnull ProcessThread.Predicate pred, int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive, was " + parallelism);
+        if (parallelism == 1 || size() < 2) return where(pred);
+
+        Object[] candidates = threads.toArray();
+        boolean[] matches = new boolean[candidates.length];
+        // Several ranges per worker to balance uneven evaluation costs
+        int range = Math.max(1, candidates.length / (parallelism * 4));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new WhereTask(pred, candidates, matches, 0, candidates.length, range));
+        } finally {
+            pool.shutdown();
+        }
+
+        if (threads instanceof BitSetThreads) {
+            BitSet subset = new BitSet(candidates.length);
+            for (int i = 0; i < candidates.length; i++) {
+                if (matches[i]) subset.set(((ProcessThread<?, ?, ?>) candidates[i]).ordinal);
+            }
+            return runtime.getThreadSet(subset);
+        }
+
+        LinkedHashSet<ThreadType> subset = new LinkedHashSet<ThreadType>();
+        for (int i = 0; i < candidates.length; i++) {
+            if (matches[i]) subset.add((ThreadType) candidates[i]);
+        }
+        return runtime.getThreadSet(subset);
+    }
+
+    private static final class WhereTask extends RecursiveAction {
+        private final @Nonnull ProcessThread.Predicate pred;
+        private final @Nonnull Object[] candidates;
+        private final @Nonnull boolean[] matches;
+        private final int from;
+        private final int to;
+        private final int range;
+
+        private WhereTask(
+                @Nonnull ProcessThread.Predicate pred, @Nonnull Object[] candidates, @Nonnull boolean[] matches,
+                int from, int to, int range
+        ) {
+            this.pred = pred;
+            this.candidates = candidates;
+            this.matches = matches;
+            this.from = from;
+            this.to = to;
+            this.range = range;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= range) {
+                for (int i = from; i < to; i++) {
+                    matches[i] = pred.isValid((ProcessThread<?, ?, ?>) candidates[i]);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                    new WhereTask(pred, candidates, matches, from, middle, range),
+                    new WhereTask(pred, candidates, matches, middle, to, range)
+            );
+        }
+    }
+
+    /**
+     * Get thread by java thread id.
+     *
+     * @return <tt>null</tt> if there is no such thread in this set.
+     * @see ProcessThread#getId()
+     */
+    public @CheckForNull ThreadType forId(long id) {
+        return member(runtime.forId(id));
+    }
+
+    /**
+     * Get thread by JVM thread id.
+     *
+     * @return <tt>null</tt> if there is no such thread in this set.
+     * @see ProcessThread#getTid()
+     */
+    public @CheckForNull ThreadType forTid(long tid) {
+        return member(runtime.forTid(tid));
+    }
+
+    /**
+     * Get thread by native thread id.
+     *
+     * @return <tt>null</tt> if there is no such thread in this set.
+     * @see ProcessThread#getNid()
+     */
+    public @CheckForNull ThreadType forNid(long nid) {
+        return member(runtime.forNid(nid));
+    }
+
+    private @CheckForNull ThreadType member(@CheckForNull ThreadType thread) {
+        return thread != null && threads.contains(thread) ? thread : null;
+    }
+
+    /**
+     * Get threads that have method on stack.
+     *
+     * @param method Fully qualified method name like "java.lang.Thread.sleep".
+     * @see ProcessThread#evaluating(String)
+     */
+    public @Nonnull SetType inMethod(@Nonnull String method) {
+        return matching(runtime.getFrameIndex().inMethod(method));
+    }
+
+    /**
+     * Get threads that have method of given class on stack.
+     *
+     * @param className Fully qualified class name.
+     */
+    public @Nonnull SetType inClass(@Nonnull String className) {
+        return matching(runtime.getFrameIndex().inClass(className));
+    }
+
+    /**
+     * Get threads that have method of class which name starts with prefix on stack.
+     *
+     * @param prefix Class name prefix like "java.util.concurrent.".
+     */
+    public @Nonnull SetType inPackagePrefix(@Nonnull String prefix) {
+        return matching(runtime.getFrameIndex().inPackagePrefix(prefix));
+    }
+
+    private @Nonnull SetType matching(@Nonnull BitSet ordinals) {
+        if (threads instanceof BitSetThreads) {
+            ordinals.and(((BitSetThreads<?>) threads).bits());
+            return runtime.getThreadSet(ordinals);
+        }
+
+        LinkedHashSet<ThreadType> subset = new LinkedHashSet<ThreadType>();
+        for (ThreadType thread: threads) {
+            if (ordinals.get(thread.ordinal)) subset.add(thread);
+        }
+        return runtime.getThreadSet(subset);
+    }
+
     /**
      * Run query using this as an initial thread set.
      */
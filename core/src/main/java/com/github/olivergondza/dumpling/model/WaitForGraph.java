@@ -0,0 +1,374 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Immutable graph of threads waiting for other threads.
+ *
+ * Threads are assigned dense indexes in runtime order and all the edges are represented by primitive arrays, so
+ * traversals run in linear time without allocating per edge. Edge leads from the waiting thread to the thread it is
+ * waiting for. Every thread has at most one outgoing edge of each {@link Kind}.
+ *
+ * @author ogondza
+ * @see ProcessRuntime#getWaitForGraph()
+ */
+public final class WaitForGraph<ThreadType extends ProcessThread<ThreadType, ?, ?>> {
+
+    /**
+     * Kind of wait-for relation.
+     */
+    public enum Kind {
+        /**
+         * Thread is blocked acquiring monitor held by the other thread.
+         *
+         * @see ProcessThread#getWaitingToLock()
+         */
+        MONITOR,
+        /**
+         * Thread is in {@link Object#wait()} for monitor currently held by the other thread.
+         *
+         * @see ProcessThread#getWaitingOnLock()
+         */
+        WAITING_ON,
+        /**
+         * Thread is parked on ownable synchronizer held by the other thread.
+         *
+         * @see ProcessThread#getAcquiredSynchronizers()
+         */
+        SYNCHRONIZER
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final @Nonnull Set<Kind> ALL = EnumSet.allOf(Kind.class);
+
+    private final @Nonnull ThreadType[] threads;
+    private final @Nonnull Map<ThreadType, Integer> indexes;
+
+    // out[kind][node] is the target or -1
+    private final @Nonnull int[][] out;
+    // Sources of node's inbound edges are inSources[kind][inOffsets[kind][node] .. inOffsets[kind][node + 1]]
+    private final @Nonnull int[][] inOffsets;
+    private final @Nonnull int[][] inSources;
+
+    @SuppressWarnings("unchecked")
+    /*package*/ WaitForGraph(@Nonnull Set<ThreadType> threadSet, @Nonnull LockIndex<ThreadType> index) {
+        int size = threadSet.size();
+        threads = (ThreadType[]) threadSet.toArray(new ProcessThread<?, ?, ?>[size]);
+        indexes = new IdentityHashMap<ThreadType, Integer>(size);
+        for (int i = 0; i < size; i++) {
+            indexes.put(threads[i], i);
+        }
+
+        out = new int[KINDS.length][size];
+        for (int[] o: out) {
+            Arrays.fill(o, -1);
+        }
+        for (int i = 0; i < size; i++) {
+            ThreadType thread = threads[i];
+
+            ThreadLock waitingTo = thread.getWaitingToLock();
+            if (waitingTo != null) {
+                out[Kind.MONITOR.ordinal()][i] = target(i, index.getMonitorOwner(waitingTo));
+            }
+
+            ThreadLock waitingOn = thread.getWaitingOnLock();
+            if (waitingOn != null) {
+                if (thread.getStatus().isParked()) {
+                    out[Kind.SYNCHRONIZER.ordinal()][i] = target(i, index.getSynchronizerOwner(waitingOn));
+                } else {
+                    out[Kind.WAITING_ON.ordinal()][i] = target(i, index.getMonitorOwner(waitingOn));
+                }
+            }
+        }
+
+        inOffsets = new int[KINDS.length][];
+        inSources = new int[KINDS.length][];
+        for (int k = 0; k < KINDS.length; k++) {
+            int[] offsets = new int[size + 1];
+            int edges = 0;
+            for (int i = 0; i < size; i++) {
+                int target = out[k][i];
+                if (target != -1) {
+                    offsets[target + 1]++;
+                    edges++;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            int[] sources = new int[edges];
+            int[] fill = Arrays.copyOf(offsets, size);
+            for (int i = 0; i < size; i++) {
+                int target = out[k][i];
+                if (target != -1) {
+                    sources[fill[target]++] = i;
+                }
+            }
+
+            inOffsets[k] = offsets;
+            inSources[k] = sources;
+        }
+    }
+
+    private int target(int source, @CheckForNull ThreadType owner) {
+        if (owner == null) return -1;
+        Integer target = indexes.get(owner);
+        // Thread waiting for lock it holds itself is not waiting for another thread
+        return target == null || target == source ? -1 : target;
+    }
+
+    /**
+     * Number of threads.
+     */
+    public @Nonnegative int size() {
+        return threads.length;
+    }
+
+    /**
+     * Thread with given index.
+     */
+    public @Nonnull ThreadType getThread(@Nonnegative int node) {
+        return threads[node];
+    }
+
+    /**
+     * Index of a thread.
+     *
+     * @return -1 if the thread does not belong to the graph.
+     */
+    public int indexOf(@Nonnull ThreadType thread) {
+        Integer index = indexes.get(thread);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Thread the node is waiting for.
+     *
+     * @return Index of the thread or -1 if there is none.
+     */
+    public int target(@Nonnegative int node, @Nonnull Kind kind) {
+        return out[kind.ordinal()][node];
+    }
+
+    public @Nonnegative int outDegree(@Nonnegative int node, @Nonnull Kind kind) {
+        return out[kind.ordinal()][node] == -1 ? 0 : 1;
+    }
+
+    public @Nonnegative int outDegree(@Nonnegative int node) {
+        int degree = 0;
+        for (int[] o: out) {
+            if (o[node] != -1) degree++;
+        }
+        return degree;
+    }
+
+    public @Nonnegative int inDegree(@Nonnegative int node, @Nonnull Kind kind) {
+        int[] offsets = inOffsets[kind.ordinal()];
+        return offsets[node + 1] - offsets[node];
+    }
+
+    public @Nonnegative int inDegree(@Nonnegative int node) {
+        int degree = 0;
+        for (int[] offsets: inOffsets) {
+            degree += offsets[node + 1] - offsets[node];
+        }
+        return degree;
+    }
+
+    /**
+     * Thread waiting for the node.
+     *
+     * @param i Number of the inbound edge, less than {@link #inDegree(int, Kind)}.
+     * @return Index of the waiting thread.
+     */
+    public int source(@Nonnegative int node, @Nonnull Kind kind, @Nonnegative int i) {
+        int[] offsets = inOffsets[kind.ordinal()];
+        if (i < 0 || i >= offsets[node + 1] - offsets[node]) throw new IndexOutOfBoundsException(
+                "Node " + node + " has " + (offsets[node + 1] - offsets[node]) + " inbound " + kind + " edges, requested " + i
+        );
+        return inSources[kind.ordinal()][offsets[node] + i];
+    }
+
+    /**
+     * Nodes reachable from the source following the edges, in breadth-first order starting with the source.
+     *
+     * @param inbound Follow the edges backwards, collecting threads waiting for the source.
+     */
+    public @Nonnull int[] breadthFirst(@Nonnegative int source, boolean inbound, @Nonnull Set<Kind> kinds) {
+        return traverse(source, inbound, kinds, new BitSet(threads.length));
+    }
+
+    public @Nonnull int[] breadthFirst(@Nonnegative int source, boolean inbound) {
+        return breadthFirst(source, inbound, ALL);
+    }
+
+    /**
+     * Nodes reachable from the source following the edges, source included.
+     *
+     * @param inbound Follow the edges backwards, collecting threads waiting for the source.
+     */
+    public @Nonnull BitSet reachable(@Nonnegative int source, boolean inbound, @Nonnull Set<Kind> kinds) {
+        BitSet visited = new BitSet(threads.length);
+        traverse(source, inbound, kinds, visited);
+        return visited;
+    }
+
+    public @Nonnull BitSet reachable(@Nonnegative int source, boolean inbound) {
+        return reachable(source, inbound, ALL);
+    }
+
+    /**
+     * Determine if the thread is waiting for the other one, directly or transitively.
+     */
+    public boolean isReachable(@Nonnegative int from, @Nonnegative int to) {
+        return reachable(from, false, ALL).get(to);
+    }
+
+    /**
+     * Strongly connected components of the graph following the edges of given kinds.
+     *
+     * Components are numbered in reverse topological order: no edge leads from a component to a component with higher
+     * number. Nodes of a component with more than one node are waiting for each other in a cycle.
+     *
+     * @return Component number of every node.
+     */
+    public @Nonnull int[] stronglyConnectedComponents(@Nonnull Set<Kind> kinds) {
+        int size = threads.length;
+        int[] followed = followed(kinds);
+
+        // Iterative Tarjan: nodes are numbered in discovery order, component of a node is known once it is popped
+        int[] component = new int[size];
+        int[] discovered = new int[size];
+        int[] low = new int[size];
+        int[] stack = new int[size];
+        int[] calls = new int[size];
+        int[] edges = new int[size];
+        Arrays.fill(component, -1);
+
+        int counter = 0;
+        int components = 0;
+        int top = 0;
+        for (int root = 0; root < size; root++) {
+            if (discovered[root] != 0) continue;
+
+            int depth = 0;
+            calls[depth] = root;
+            edges[depth] = 0;
+            discovered[root] = low[root] = ++counter;
+            stack[top++] = root;
+            while (depth >= 0) {
+                int node = calls[depth];
+                if (edges[depth] < followed.length) {
+                    int next = out[followed[edges[depth]++]][node];
+                    if (next == -1) continue;
+                    if (discovered[next] == 0) {
+                        depth++;
+                        calls[depth] = next;
+                        edges[depth] = 0;
+                        discovered[next] = low[next] = ++counter;
+                        stack[top++] = next;
+                    } else if (component[next] == -1 && discovered[next] < low[node]) {
+                        // Still on stack
+                        low[node] = discovered[next];
+                    }
+                    continue;
+                }
+
+                if (low[node] == discovered[node]) {
+                    int member;
+                    do {
+                        member = stack[--top];
+                        component[member] = components;
+                    } while (member != node);
+                    components++;
+                }
+
+                depth--;
+                if (depth >= 0) {
+                    int parent = calls[depth];
+                    if (low[node] < low[parent]) {
+                        low[parent] = low[node];
+                    }
+                }
+            }
+        }
+        return component;
+    }
+
+    private int[] traverse(int source, boolean inbound, Set<Kind> kinds, BitSet visited) {
+        if (source < 0 || source >= threads.length) throw new IndexOutOfBoundsException(
+                "No node " + source + " in graph of " + threads.length
+        );
+
+        int[] followed = followed(kinds);
+
+        int[] queue = new int[threads.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        visited.set(source);
+        while (head < tail) {
+            int node = queue[head++];
+            for (int k: followed) {
+                if (inbound) {
+                    for (int e = inOffsets[k][node]; e < inOffsets[k][node + 1]; e++) {
+                        int next = inSources[k][e];
+                        if (!visited.get(next)) {
+                            visited.set(next);
+                            queue[tail++] = next;
+                        }
+                    }
+                } else {
+                    int next = out[k][node];
+                    if (next != -1 && !visited.get(next)) {
+                        visited.set(next);
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(queue, tail);
+    }
+
+    private static int[] followed(Set<Kind> kinds) {
+        int[] followed = new int[kinds.size()];
+        int f = 0;
+        for (Kind kind: kinds) {
+            followed[f++] = kind.ordinal();
+        }
+        return followed;
+    }
+}
@@ -25,6 +25,7 @@ package com.github.olivergondza.dumpling.model.dump;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -45,6 +46,13 @@ public final class ThreadDumpRuntime extends ProcessRuntime<ThreadDumpRuntime, T
         this.header = new ArrayList<String>(header);
     }
 
+    /**
+     * Lines of threaddump preceding the threads.
+     */
+    public @Nonnull List<String> getHeader() {
+        return Collections.unmodifiableList(header);
+    }
+
     @Override
     protected ThreadDumpThreadSet createSet(Set<ThreadDumpThread> threads) {
         return new ThreadDumpThreadSet(this, threads);
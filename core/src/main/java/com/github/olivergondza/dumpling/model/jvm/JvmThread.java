@@ -83,6 +83,14 @@ public final class JvmThread extends MXBeanThread<JvmThread, JvmThreadSet, JvmRu
             }
         }
 
+        /**
+         * Builder for thread that does not exist in current JVM, such as the one restored from a snapshot.
+         */
+        public Builder(@CheckForNull String groupName) {
+            this.thread = new WeakReference<Thread>(null);
+            this.groupName = groupName;
+        }
+
         @Override protected void printHeader(PrintStream stream, Mode mode) {
             super.printHeader(stream, mode);
             if (groupName != null) {
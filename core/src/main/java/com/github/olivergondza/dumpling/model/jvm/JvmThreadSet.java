@@ -48,11 +48,8 @@ public final class JvmThreadSet extends MXBeanThreadSet<JvmThreadSet, JvmRuntime
     public @CheckForNull JvmThread forThread(@CheckForNull Thread needle) {
         if (needle == null) return null;
 
-        for (JvmThread candidate: this) {
-            final JvmThread jvmThread = candidate;
-            if (needle.equals(jvmThread.getThread())) return jvmThread;
-        }
-        return null;
+        JvmThread candidate = forId(needle.getId());
+        return candidate != null && needle.equals(candidate.getThread()) ? candidate : null;
     }
 
     /**
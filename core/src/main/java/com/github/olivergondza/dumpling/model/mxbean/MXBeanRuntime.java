@@ -58,6 +58,20 @@ public abstract class MXBeanRuntime<
         this.jvmId = jvmId;
     }
 
+    /**
+     * Time the runtime was captured.
+     */
+    public @Nonnull Date getCaptured() {
+        return (Date) captured.clone();
+    }
+
+    /**
+     * Identification of the JVM the runtime was captured from.
+     */
+    public @Nonnull String getJvmId() {
+        return jvmId;
+    }
+
     @Override
     public void toString(PrintStream stream, Mode mode) {
         stream.println(FORMAT.format(captured));
@@ -24,12 +24,16 @@
 package com.github.olivergondza.dumpling.query;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 import com.github.olivergondza.dumpling.model.ModelObject;
@@ -37,6 +41,7 @@ import com.github.olivergondza.dumpling.model.ModelObject.Mode;
 import com.github.olivergondza.dumpling.model.ProcessRuntime;
 import com.github.olivergondza.dumpling.model.ProcessThread;
 import com.github.olivergondza.dumpling.model.ThreadSet;
+import com.github.olivergondza.dumpling.model.WaitForGraph;
 
 /**
  * Print trees of blocking threads.
@@ -46,12 +51,32 @@ import com.github.olivergondza.dumpling.model.ThreadSet;
 public final class BlockingTree implements SingleThreadSetQuery<BlockingTree.Result<?, ?, ?>> {
 
     private boolean showStackTraces = false;
+    private int maxDepth = Integer.MAX_VALUE;
+    private int maxWidth = Integer.MAX_VALUE;
 
     public BlockingTree showStackTraces() {
         this.showStackTraces = true;
         return this;
     }
 
+    /**
+     * Do not list threads blocked deeper than given number of levels below the root.
+     */
+    public BlockingTree maxDepth(@Nonnegative int depth) {
+        if (depth < 0) throw new IllegalArgumentException("Negative depth: " + depth);
+        this.maxDepth = depth;
+        return this;
+    }
+
+    /**
+     * Do not list more than given number of threads blocked by a single thread.
+     */
+    public BlockingTree maxWidth(@Nonnegative int width) {
+        if (width < 0) throw new IllegalArgumentException("Negative width: " + width);
+        this.maxWidth = width;
+        return this;
+    }
+
     /**
      * @param threads Only show tree branches that contain threads in this set.
      * Provide all threads in runtime to analyze whole runtime.
@@ -62,7 +87,7 @@ public final class BlockingTree implements SingleThreadSetQuery<BlockingTree.Res
             RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
             ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
     > Result<SetType, RuntimeType, ThreadType> query(SetType threads) {
-        return new Result<SetType, RuntimeType, ThreadType>(threads, showStackTraces);
+        return new Result<SetType, RuntimeType, ThreadType>(threads, showStackTraces, maxDepth, maxWidth);
     }
 
     /**
@@ -84,29 +109,14 @@ public final class BlockingTree implements SingleThreadSetQuery<BlockingTree.Res
 
         private final @Nonnull SetType deadlockedThreads;
 
-        /*package*/ Result(@Nonnull SetType threads, boolean showStackTraces) {
+        /*package*/ Result(@Nonnull SetType threads, boolean showStackTraces, @Nonnegative int maxDepth, @Nonnegative int maxWidth) {
             super(showStackTraces);
             deadlocks = DEADLOCKS.query(threads);
             deadlockedThreads = deadlocks.involvedThreads();
 
-            @Nonnull Set<Tree<ThreadType>> roots = new LinkedHashSet<Tree<ThreadType>>();
-            for (ThreadType thread: threads.getProcessRuntime().getThreads()) {
-                // consider only unblocked threads or possibly deadlocked ones
-                if (thread.getWaitingToLock() != null && !deadlockedThreads.contains(thread)) continue;
-                // No thread can be blocked by this
-                if (thread.getAcquiredLocks().isEmpty()) continue;
-                // No blocked and not-deadlocked threads to report
-                if (thread.getBlockedThreads().ignoring(deadlockedThreads).isEmpty()) continue;
-
-                roots.add(new Tree<ThreadType>(thread, buildDown(thread)));
-            }
-
-            this.trees = Collections.unmodifiableSet(filter(roots, threads));
-
             LinkedHashSet<ThreadType> involved = new LinkedHashSet<ThreadType>();
-            for (Tree<ThreadType> root: trees) {
-                flatten(root, involved);
-            }
+            Forest<ThreadType> forest = new Forest<ThreadType>(threads, deadlockedThreads, maxDepth, maxWidth);
+            this.trees = Collections.unmodifiableSet(forest.build(involved));
 
             for (SetType deadlock: deadlocks.getDeadlocks()) {
                 for (ThreadType deadlockedThread: deadlock) {
@@ -117,40 +127,6 @@ public final class BlockingTree implements SingleThreadSetQuery<BlockingTree.Res
             this.involved = threads.derive(involved);
         }
 
-        private @Nonnull Set<Tree<ThreadType>> buildDown(ThreadType thread) {
-            @Nonnull Set<Tree<ThreadType>> newTrees = new HashSet<Tree<ThreadType>>();
-            for(ThreadType t: thread.getBlockedThreads().ignoring(deadlockedThreads)) {
-                newTrees.add(new Tree<ThreadType>(t, buildDown(t)));
-            }
-
-            return newTrees;
-        }
-
-        private @Nonnull Set<Tree<ThreadType>> filter(Set<Tree<ThreadType>> roots, SetType threads) {
-            Set<Tree<ThreadType>> filtered = new LinkedHashSet<Tree<ThreadType>>();
-            for (Tree<ThreadType> r: roots) {
-                // Add whitelisted items including their subtrees
-                if (threads.contains(r.getRoot())) {
-                    filtered.add(r);
-                }
-
-                // Remove nodes with all children filtered out
-                final Set<Tree<ThreadType>> filteredLeaves = filter(r.getLeaves(), threads);
-                if (filteredLeaves.isEmpty()) continue;
-
-                filtered.add(new Tree<ThreadType>(r.getRoot(), filteredLeaves));
-            }
-
-            return filtered;
-        }
-
-        private void flatten(Tree<ThreadType> tree, Set<ThreadType> accumulator) {
-            accumulator.add(tree.getRoot());
-            for (Tree<ThreadType> leaf: tree.getLeaves()) {
-                flatten(leaf, accumulator);
-            }
-        }
-
         /**
          * All trees detected.
          *
@@ -204,26 +180,192 @@ public final class BlockingTree implements SingleThreadSetQuery<BlockingTree.Res
         }
     }
 
+    /**
+     * Blocked-by adjacency of runtime threads.
+     *
+     * Thread is a child of the thread blocking it unless it is deadlocked, deadlocks are reported separately. Trees
+     * are constructed without recursion so long blocking chains can not overflow the stack.
+     */
+    private static final class Forest<ThreadType extends ProcessThread<ThreadType, ?, ?>> {
+        private final @Nonnull WaitForGraph<ThreadType> graph;
+        private final @Nonnull BitSet deadlocked;
+        // Threads to report
+        private final @Nonnull BitSet selected;
+        // Threads to report or their blockers
+        private final @Nonnull BitSet matching;
+        // Children of node are children[offsets[node] .. offsets[node + 1]], in runtime order
+        private final @Nonnull int[] offsets;
+        private final @Nonnull int[] children;
+        private final int maxDepth;
+        private final int maxWidth;
+
+        private Forest(
+                @Nonnull ThreadSet<?, ?, ThreadType> threads, @Nonnull ThreadSet<?, ?, ThreadType> deadlockedThreads,
+                int maxDepth, int maxWidth
+        ) {
+            this.graph = threads.getProcessRuntime().getWaitForGraph();
+            this.maxDepth = maxDepth;
+            this.maxWidth = maxWidth;
+
+            int size = graph.size();
+            deadlocked = new BitSet(size);
+            for (ThreadType thread: deadlockedThreads) {
+                deadlocked.set(graph.indexOf(thread));
+            }
+
+            int[] blocking = new int[size];
+            offsets = new int[size + 1];
+            int edges = 0;
+            for (int node = 0; node < size; node++) {
+                ThreadType blocker = graph.getThread(node).getBlockingThread();
+                blocking[node] = blocker == null ? -1 : graph.indexOf(blocker);
+                if (blocking[node] != -1 && !deadlocked.get(node)) {
+                    offsets[blocking[node] + 1]++;
+                    edges++;
+                }
+            }
+            for (int node = 0; node < size; node++) {
+                offsets[node + 1] += offsets[node];
+            }
+            children = new int[edges];
+            int[] fill = Arrays.copyOf(offsets, size);
+            for (int node = 0; node < size; node++) {
+                if (blocking[node] != -1 && !deadlocked.get(node)) {
+                    children[fill[blocking[node]]++] = node;
+                }
+            }
+
+            selected = new BitSet(size);
+            matching = new BitSet(size);
+            for (ThreadType thread: threads) {
+                int node = graph.indexOf(thread);
+                selected.set(node);
+                // Each thread is marked once as the walk stops at marked blockers
+                while (node != -1 && !matching.get(node)) {
+                    matching.set(node);
+                    if (deadlocked.get(node)) break;
+                    node = blocking[node];
+                }
+            }
+        }
+
+        /**
+         * Build trees that contain selected threads.
+         *
+         * @param involved Accumulate all listed threads.
+         */
+        private @Nonnull Set<Tree<ThreadType>> build(@Nonnull Set<ThreadType> involved) {
+            Set<Tree<ThreadType>> trees = new LinkedHashSet<Tree<ThreadType>>();
+            for (int node = 0; node < graph.size(); node++) {
+                if (!matching.get(node) || offsets[node] == offsets[node + 1]) continue;
+
+                ThreadType thread = graph.getThread(node);
+                // consider only unblocked threads or possibly deadlocked ones
+                if (thread.getWaitingToLock() != null && !deadlocked.get(node)) continue;
+                // No thread can be blocked by this
+                if (thread.getAcquiredLocks().isEmpty()) continue;
+
+                trees.add(build(node, involved));
+            }
+            return trees;
+        }
+
+        private @Nonnull Tree<ThreadType> build(int root, @Nonnull Set<ThreadType> involved) {
+            ArrayList<Frame<ThreadType>> stack = new ArrayList<Frame<ThreadType>>();
+            stack.add(new Frame<ThreadType>(root, selected.get(root), offsets[root]));
+            involved.add(graph.getThread(root));
+            while (true) {
+                Frame<ThreadType> frame = stack.get(stack.size() - 1);
+                if (frame.next < offsets[frame.node + 1]) {
+                    int child = children[frame.next++];
+                    // Blocked by itself through a cycle that is not reported as deadlock
+                    if (child == root) continue;
+                    // Whole subtrees of selected threads are reported
+                    boolean full = frame.full || selected.get(child);
+                    if (!full && !matching.get(child)) continue;
+
+                    if (stack.size() > maxDepth || frame.width() >= maxWidth) {
+                        frame.omitted++;
+                        continue;
+                    }
+
+                    stack.add(new Frame<ThreadType>(child, full, offsets[child]));
+                    involved.add(graph.getThread(child));
+                    continue;
+                }
+
+                stack.remove(stack.size() - 1);
+                Tree<ThreadType> tree = new Tree<ThreadType>(graph.getThread(frame.node), frame.leaves(), frame.omitted);
+                if (stack.isEmpty()) return tree;
+
+                stack.get(stack.size() - 1).add(tree);
+            }
+        }
+
+        private static final class Frame<ThreadType extends ProcessThread<ThreadType, ?, ?>> {
+            private final int node;
+            private final boolean full;
+            private int next;
+            private int omitted = 0;
+            // Most of the nodes are leaves
+            private @CheckForNull Set<Tree<ThreadType>> leaves;
+
+            private Frame(int node, boolean full, int next) {
+                this.node = node;
+                this.full = full;
+                this.next = next;
+            }
+
+            private int width() {
+                return leaves == null ? 0 : leaves.size();
+            }
+
+            private void add(@Nonnull Tree<ThreadType> leaf) {
+                if (leaves == null) {
+                    leaves = new LinkedHashSet<Tree<ThreadType>>();
+                }
+                leaves.add(leaf);
+            }
+
+            private @Nonnull Set<Tree<ThreadType>> leaves() {
+                return leaves == null ? Collections.<Tree<ThreadType>>emptySet() : leaves;
+            }
+        }
+    }
+
     /**
      * Blocking tree node.
      *
      * A <tt>root</tt> with directly blocked subtrees (<tt>leaves</tt>). If
-     * leave set is empty root thread does not block any other threads.
+     * leave set is empty root thread does not block any other threads, unless
+     * they were omitted because of depth or width limit.
      *
      * @author ogondza
      */
     public final static class Tree<ThreadType extends ProcessThread<ThreadType, ?, ?>> extends ModelObject {
 
+        private static final @Nonnull String INDENT = "\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t";
+
         private final @Nonnull ThreadType root;
         private final @Nonnull Set<Tree<ThreadType>> leaves;
+        private final @Nonnegative int omitted;
+        // Subtrees are immutable so the hash is computed once
+        private final int hashCode;
 
-        private Tree(@Nonnull ThreadType root, @Nonnull Set<Tree<ThreadType>> leaves) {
+        private Tree(@Nonnull ThreadType root, @Nonnull Set<Tree<ThreadType>> leaves, @Nonnegative int omitted) {
             this.root = root;
             this.leaves = Collections.unmodifiableSet(leaves);
+            this.omitted = omitted;
+
+            int hashCode = 31 * root.hashCode() + omitted;
+            for (Tree<ThreadType> l: leaves) {
+                hashCode += l.hashCode() * 7;
+            }
+            this.hashCode = hashCode;
         }
 
         /*package*/ Tree(@Nonnull ThreadType root, @Nonnull Tree<ThreadType>... leaves) {
-            this(root, new LinkedHashSet<Tree<ThreadType>>(Arrays.asList(leaves)));
+            this(root, new LinkedHashSet<Tree<ThreadType>>(Arrays.asList(leaves)), 0);
         }
 
         public @Nonnull ThreadType getRoot() {
@@ -234,27 +376,56 @@ public final class BlockingTree implements SingleThreadSetQuery<BlockingTree.Res
             return leaves;
         }
 
+        /**
+         * Number of threads blocked by root that are not listed as leaves because of depth or width limit.
+         */
+        public @Nonnegative int getOmittedLeaves() {
+            return omitted;
+        }
+
         @Override
         public void toString(PrintStream stream, Mode mode) {
-            writeInto("", stream, mode);
+            // Written as traversed so neither the rendered tree nor the call stack grows with its size
+            ArrayList<Tree<ThreadType>> path = new ArrayList<Tree<ThreadType>>();
+            ArrayList<Iterator<Tree<ThreadType>>> iterators = new ArrayList<Iterator<Tree<ThreadType>>>();
+            writeHeader(0, stream, mode);
+            path.add(this);
+            iterators.add(leaves.iterator());
+            while (!path.isEmpty()) {
+                int depth = path.size();
+                Iterator<Tree<ThreadType>> iterator = iterators.get(depth - 1);
+                if (iterator.hasNext()) {
+                    Tree<ThreadType> leaf = iterator.next();
+                    leaf.writeHeader(depth, stream, mode);
+                    path.add(leaf);
+                    iterators.add(leaf.leaves.iterator());
+                } else {
+                    Tree<ThreadType> done = path.remove(depth - 1);
+                    iterators.remove(depth - 1);
+                    if (done.omitted > 0) {
+                        indent(depth, stream);
+                        stream.printf("... %d more%n", done.omitted);
+                    }
+                }
+            }
         }
 
-        private void writeInto(String prefix, PrintStream sb, Mode mode) {
-            sb.append(prefix);
-            root.printHeader(sb, mode);
-            sb.println();
-            for (Tree<ThreadType> l: leaves) {
-                l.writeInto(prefix + "\t", sb, mode);
+        private void writeHeader(int depth, PrintStream stream, Mode mode) {
+            indent(depth, stream);
+            root.printHeader(stream, mode);
+            stream.println();
+        }
+
+        private static void indent(int depth, PrintStream stream) {
+            while (depth > 0) {
+                int chunk = Math.min(depth, INDENT.length());
+                stream.append(INDENT, 0, chunk);
+                depth -= chunk;
             }
         }
 
         @Override
         public int hashCode() {
-            int hashCode = 31 * root.hashCode();
-            for (Tree<ThreadType> l: leaves) {
-                hashCode += l.hashCode() * 7;
-            }
-
             return hashCode;
         }
 
@@ -267,6 +438,7 @@ public final class BlockingTree implements SingleThreadSetQuery<BlockingTree.Res
 
             @SuppressWarnings("unchecked")
             Tree<ThreadType> other = (Tree<ThreadType>) rhs;
+            if (this.hashCode != other.hashCode || this.omitted != other.omitted) return false;
             return this.root.equals(other.root) && this.leaves.equals(other.leaves);
         }
     }
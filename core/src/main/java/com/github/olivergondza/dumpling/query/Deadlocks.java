@@ -25,7 +25,10 @@ package com.github.olivergondza.dumpling.query;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -38,6 +41,7 @@ import com.github.olivergondza.dumpling.model.ProcessRuntime;
 import com.github.olivergondza.dumpling.model.ProcessThread;
 import com.github.olivergondza.dumpling.model.ThreadLock;
 import com.github.olivergondza.dumpling.model.ThreadSet;
+import com.github.olivergondza.dumpling.model.WaitForGraph;
 
 /**
  * Detect deadlocks in thread set.
@@ -46,6 +50,10 @@ import com.github.olivergondza.dumpling.model.ThreadSet;
  */
 public final class Deadlocks implements SingleThreadSetQuery<Deadlocks.Result<?, ?, ?>> {
 
+    private static final @Nonnull Set<WaitForGraph.Kind> DEADLOCK_EDGES = EnumSet.of(
+            WaitForGraph.Kind.MONITOR, WaitForGraph.Kind.SYNCHRONIZER
+    );
+
     private boolean showStackTraces = false;
 
     public Deadlocks showStackTraces() {
@@ -54,7 +62,7 @@ public final class Deadlocks implements SingleThreadSetQuery<Deadlocks.Result<?,
     }
 
     /**
-     * @param threads Include only cycles that contain at least one of input threads.
+     * @param threads Include only cycles that contain or block at least one of input threads.
      */
     @Override
     public @Nonnull <
@@ -70,6 +78,9 @@ public final class Deadlocks implements SingleThreadSetQuery<Deadlocks.Result<?,
      *
      * A set of all deadlocks found. Involved threads are all threads that are part of any deadlock.
      *
+     * Deadlocks are strongly connected components of the {@link WaitForGraph} over monitor and synchronizer edges
+     * so cycles mixing both kinds of locks are reported as well.
+     *
      * @author ogondza
      */
     public final static class Result<
@@ -84,37 +95,40 @@ public final class Deadlocks implements SingleThreadSetQuery<Deadlocks.Result<?,
         /*package*/ Result(@Nonnull SetType input, boolean showStackTraces) {
             super(showStackTraces);
 
-            final HashSet<SetType> deadlocks = new HashSet<SetType>(1);
+            final WaitForGraph<ThreadType> graph = input.getProcessRuntime().getWaitForGraph();
+            final int[] component = graph.stronglyConnectedComponents(DEADLOCK_EDGES);
+            final int[] componentSize = new int[graph.size()];
+            boolean cyclic = false;
+            for (int c: component) {
+                if (++componentSize[c] > 1) cyclic = true;
+            }
+
+            final LinkedHashSet<SetType> deadlocks = new LinkedHashSet<SetType>(1);
             final LinkedHashSet<ThreadType> involved = new LinkedHashSet<ThreadType>(2);
-            // No need to visit threads more than once
-            final Set<ThreadType> analyzed = new HashSet<ThreadType>(input.size());
-
-            for (ThreadType thread: input) {
-
-                ArrayList<ThreadType> cycleCandidate = new ArrayList<ThreadType>(2);
-                for (ThreadType blocking = thread.getBlockingThread(); blocking != null; blocking = blocking.getBlockingThread()) {
-                    if (analyzed.contains(thread)) break;
-
-                    int beginning = cycleCandidate.indexOf(blocking);
-                    if (beginning != -1) {
-                        @SuppressWarnings("null")
-                        @Nonnull List<ThreadType> cycle = cycleCandidate.subList(beginning, cycleCandidate.size());
-                        deadlocks.add(input.derive(cycle));
-                        involved.addAll(cycle);
-                        analyzed.addAll(cycleCandidate);
-                        break;
-                    }
+            if (cyclic) {
+                Cycles<ThreadType> cycles = new Cycles<ThreadType>(graph, component, componentSize);
+                for (ThreadType thread: input) {
+                    int node = graph.indexOf(thread);
+                    if (node == -1) continue;
 
-                    cycleCandidate.add(blocking);
+                    int entry = cycles.entry(node);
+                    if (entry != -1 && !cycles.isReported(entry)) {
+                        report(input, cycles.list(entry), deadlocks, involved);
+                    }
                 }
-
-                analyzed.add(thread);
             }
 
             this.deadlocks = Collections.unmodifiableSet(deadlocks);
             this.involved = input.derive(involved);
         }
 
+        private void report(
+                SetType input, List<ThreadType> cycle, Set<SetType> deadlocks, Set<ThreadType> involved
+        ) {
+            deadlocks.add(input.derive(cycle));
+            involved.addAll(cycle);
+        }
+
         /**
          * Get found deadlocks.
          *
@@ -174,4 +188,101 @@ public final class Deadlocks implements SingleThreadSetQuery<Deadlocks.Result<?,
             return deadlocks.size();
         }
     }
+
+    /**
+     * Strongly connected components of wait-for graph that form deadlocks.
+     *
+     * Thread is blocked by the owner of the monitor it waits to acquire, or by the owner of the synchronizer it is
+     * parked on. Deadlocked threads are listed following those edges starting with the first deadlocked thread
+     * the blocking chain reaches.
+     */
+    private static final class Cycles<ThreadType extends ProcessThread<ThreadType, ?, ?>> {
+        private static final int UNKNOWN = -2;
+
+        private final @Nonnull WaitForGraph<ThreadType> graph;
+        private final @Nonnull int[] component;
+        private final @Nonnull int[] componentSize;
+        // First deadlocked thread the blocking chain of the node reaches
+        private final @Nonnull int[] entries;
+        private final @Nonnull int[] path;
+        private final @Nonnull BitSet reported;
+        private final @Nonnull BitSet listed;
+
+        private Cycles(@Nonnull WaitForGraph<ThreadType> graph, @Nonnull int[] component, @Nonnull int[] componentSize) {
+            this.graph = graph;
+            this.component = component;
+            this.componentSize = componentSize;
+            this.entries = new int[graph.size()];
+            Arrays.fill(entries, UNKNOWN);
+            this.path = new int[graph.size()];
+            this.reported = new BitSet(graph.size());
+            this.listed = new BitSet(graph.size());
+        }
+
+        private boolean isCyclic(int node) {
+            return componentSize[component[node]] > 1;
+        }
+
+        private boolean isReported(int node) {
+            return reported.get(component[node]);
+        }
+
+        private int blocking(int node) {
+            int next = graph.target(node, WaitForGraph.Kind.MONITOR);
+            return next != -1 ? next : graph.target(node, WaitForGraph.Kind.SYNCHRONIZER);
+        }
+
+        private int entry(int node) {
+            // Threads outside of cycles form a forest so the chain ends in a cycle, a resolved thread or nowhere
+            int length = 0;
+            int entry = entries[node];
+            while (entry == UNKNOWN) {
+                path[length++] = node;
+                int next = blocking(node);
+                if (next == -1) {
+                    entry = -1;
+                } else if (isCyclic(next)) {
+                    entry = next;
+                } else {
+                    entry = entries[next];
+                    node = next;
+                }
+            }
+
+            while (length > 0) {
+                entries[path[--length]] = entry;
+            }
+            return entry;
+        }
+
+        private @Nonnull List<ThreadType> list(int start) {
+            int c = component[start];
+            reported.set(c);
+
+            ArrayList<ThreadType> cycle = new ArrayList<ThreadType>(componentSize[c]);
+            for (int node = start; node != -1 && !listed.get(node); node = next(node, c)) {
+                listed.set(node);
+                cycle.add(graph.getThread(node));
+            }
+
+            if (cycle.size() < componentSize[c]) {
+                // Component is not a simple cycle, append the threads the chain skipped
+                for (int node = 0; node < component.length; node++) {
+                    if (component[node] == c && !listed.get(node)) {
+                        listed.set(node);
+                        cycle.add(graph.getThread(node));
+                    }
+                }
+            }
+            return cycle;
+        }
+
+        private int next(int node, int c) {
+            int next = graph.target(node, WaitForGraph.Kind.MONITOR);
+            if (next != -1 && component[next] == c) return next;
+            next = graph.target(node, WaitForGraph.Kind.SYNCHRONIZER);
+            if (next != -1 && component[next] == c) return next;
+            return -1;
+        }
+    }
 }
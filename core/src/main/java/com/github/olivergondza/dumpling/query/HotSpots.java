@@ -0,0 +1,380 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+import com.github.olivergondza.dumpling.model.ProcessThread;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.ThreadSet;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+
+/**
+ * Histogram of methods, classes and packages on thread stacks.
+ *
+ * Flat count is the number of threads executing the method (class, package) on top of the stack, inclusive count is
+ * the number of threads having it anywhere on the stack. Sampling RUNNABLE threads of a single thread dump gives a
+ * rough idea where the process spends its time without attaching a profiler.
+ *
+ * @author ogondza
+ */
+public final class HotSpots implements SingleThreadSetQuery<HotSpots.Result<?, ?, ?>> {
+
+    private boolean showStackTraces = false;
+    private int top = 10;
+    private @Nonnull Set<ThreadStatus> statuses = EnumSet.allOf(ThreadStatus.class);
+
+    /**
+     * List stack traces of all threads sampled.
+     */
+    public HotSpots showStackTraces() {
+        this.showStackTraces = true;
+        return this;
+    }
+
+    /**
+     * Report given number of top entries only.
+     */
+    public HotSpots top(@Nonnegative int count) {
+        if (count < 0) throw new IllegalArgumentException("Negative entry count: " + count);
+        this.top = count;
+        return this;
+    }
+
+    /**
+     * Sample threads in given statuses only.
+     */
+    public HotSpots inStatus(@Nonnull ThreadStatus... statuses) {
+        this.statuses = statuses.length == 0
+                ? EnumSet.noneOf(ThreadStatus.class)
+                : EnumSet.copyOf(Arrays.asList(statuses))
+        ;
+        return this;
+    }
+
+    /**
+     * @param threads Threads to sample.
+     */
+    @Override
+    public @Nonnull <
+            SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
+            RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
+    > Result<SetType, RuntimeType, ThreadType> query(@Nonnull SetType threads) {
+        return new Result<SetType, RuntimeType, ThreadType>(threads, showStackTraces, top, statuses);
+    }
+
+    /**
+     * Top methods, classes and packages ordered by flat and then inclusive count.
+     *
+     * Involved threads are the sampled ones.
+     *
+     * @author ogondza
+     */
+    public static final class Result<
+            SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
+            RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
+    > extends SingleThreadSetQuery.Result<SetType, RuntimeType, ThreadType> {
+
+        private final @Nonnull SetType sampled;
+        private final int frames;
+        private final @Nonnull Histogram methods = new Histogram();
+        private final @Nonnull Histogram classes = new Histogram();
+        private final @Nonnull Histogram packages = new Histogram();
+        private final @Nonnull List<Entry> topMethods;
+        private final @Nonnull List<Entry> topClasses;
+        private final @Nonnull List<Entry> topPackages;
+
+        /*package*/ Result(@Nonnull SetType threads, boolean showStackTraces, @Nonnegative int top, @Nonnull Set<ThreadStatus> statuses) {
+            super(showStackTraces);
+
+            // Threads of a runtime share equal stack traces so every distinct trace is walked once
+            final Map<StackTrace, int[]> weights = new IdentityHashMap<StackTrace, int[]>();
+            final List<ThreadType> sampled = new ArrayList<ThreadType>();
+            for (ThreadType thread: threads) {
+                if (!statuses.contains(thread.getStatus())) continue;
+
+                sampled.add(thread);
+                int[] weight = weights.get(thread.getStackTrace());
+                if (weight == null) {
+                    weight = new int[1];
+                    weights.put(thread.getStackTrace(), weight);
+                }
+                weight[0]++;
+            }
+
+            // Parsed runtimes share element instances, names are only hashed for elements not seen before
+            final Map<StackTraceElement, int[]> elementIds = new IdentityHashMap<StackTraceElement, int[]>();
+            final Map<String, Frames> classIds = new HashMap<String, Frames>();
+            int frames = 0;
+            int stamp = 0;
+            for (Map.Entry<StackTrace, int[]> entry: weights.entrySet()) {
+                StackTrace trace = entry.getKey();
+                int weight = entry.getValue()[0];
+                stamp++;
+
+                boolean head = true;
+                for (StackTraceElement element: trace.getElements()) {
+                    int[] ids = elementIds.get(element);
+                    if (ids == null) {
+                        Frames classFrames = classIds.get(element.getClassName());
+                        if (classFrames == null) {
+                            classFrames = new Frames(element.getClassName());
+                            classIds.put(element.getClassName(), classFrames);
+                        }
+                        ids = new int[] {
+                                classFrames.method(element.getMethodName()), classFrames.classId, classFrames.packageId
+                        };
+                        elementIds.put(element, ids);
+                    }
+
+                    methods.add(ids[0], weight, head, stamp);
+                    classes.add(ids[1], weight, head, stamp);
+                    packages.add(ids[2], weight, head, stamp);
+                    head = false;
+                }
+                frames += trace.size() * weight;
+            }
+
+            this.sampled = threads.derive(sampled);
+            this.frames = frames;
+            this.topMethods = methods.top(top);
+            this.topClasses = classes.top(top);
+            this.topPackages = packages.top(top);
+        }
+
+        /**
+         * Method and class ids of a single class by name.
+         */
+        private final class Frames {
+            private final int classId;
+            private final int packageId;
+            private final @Nonnull Map<String, Integer> methodIds = new HashMap<String, Integer>();
+            private final @Nonnull String className;
+
+            private Frames(@Nonnull String className) {
+                this.className = className;
+                this.classId = classes.intern(className);
+                int dot = className.lastIndexOf('.');
+                this.packageId = packages.intern(dot < 0 ? "" : className.substring(0, dot));
+            }
+
+            private int method(@Nonnull String methodName) {
+                Integer id = methodIds.get(methodName);
+                if (id == null) {
+                    id = methods.intern(className + '.' + methodName);
+                    methodIds.put(methodName, id);
+                }
+                return id;
+            }
+        }
+
+        /**
+         * Methods ordered by flat and then inclusive count.
+         */
+        public @Nonnull List<Entry> getMethods() {
+            return topMethods;
+        }
+
+        /**
+         * Classes ordered by flat and then inclusive count.
+         */
+        public @Nonnull List<Entry> getClasses() {
+            return topClasses;
+        }
+
+        /**
+         * Packages ordered by flat and then inclusive count.
+         *
+         * Default package is represented by an empty string.
+         */
+        public @Nonnull List<Entry> getPackages() {
+            return topPackages;
+        }
+
+        @Override
+        protected void printResult(@Nonnull PrintStream out) {
+            print(out, "Method", topMethods);
+            out.println();
+            print(out, "Class", topClasses);
+            out.println();
+            print(out, "Package", topPackages);
+        }
+
+        private void print(@Nonnull PrintStream out, @Nonnull String title, @Nonnull List<Entry> entries) {
+            out.printf("%8s %6s %8s %6s  %s%n", "Flat", "", "Incl", "", title);
+            int threads = sampled.size();
+            for (Entry entry: entries) {
+                String name = entry.getName().isEmpty() ? "<default>" : entry.getName();
+                out.printf(Locale.ROOT, "%8d %5.1f%% %8d %5.1f%%  %s%n",
+                        entry.getFlat(), 100F * entry.getFlat() / threads,
+                        entry.getInclusive(), 100F * entry.getInclusive() / threads,
+                        name
+                );
+            }
+        }
+
+        @Override
+        protected @Nonnull SetType involvedThreads() {
+            return sampled;
+        }
+
+        @Override
+        protected void printSummary(@Nonnull PrintStream out) {
+            out.printf(
+                    "Threads: %d; Frames: %d; Methods: %d; Classes: %d; Packages: %d%n",
+                    sampled.size(), frames, methods.size(), classes.size(), packages.size()
+            );
+        }
+    }
+
+    /**
+     * Primitive counters indexed by interned name.
+     */
+    private static final class Histogram implements Comparator<Integer> {
+        private final @Nonnull Map<String, Integer> ids = new HashMap<String, Integer>();
+        private final @Nonnull List<String> names = new ArrayList<String>();
+        private int[] flat = new int[64];
+        private int[] inclusive = new int[64];
+        // Last stack trace counted so entries repeated on the same stack are counted once
+        private int[] stamps = new int[64];
+
+        private int intern(@Nonnull String name) {
+            Integer id = ids.get(name);
+            if (id != null) return id;
+
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+            if (id == flat.length) {
+                flat = Arrays.copyOf(flat, id * 2);
+                inclusive = Arrays.copyOf(inclusive, id * 2);
+                stamps = Arrays.copyOf(stamps, id * 2);
+            }
+            return id;
+        }
+
+        private void add(int id, int weight, boolean head, int stamp) {
+            if (head) {
+                flat[id] += weight;
+            }
+
+            if (stamps[id] != stamp) {
+                stamps[id] = stamp;
+                inclusive[id] += weight;
+            }
+        }
+
+        private int size() {
+            return names.size();
+        }
+
+        private @Nonnull List<Entry> top(int top) {
+            // Keep the most significant entries seen so far with the least significant one on top of the heap
+            PriorityQueue<Integer> heap = new PriorityQueue<Integer>(11, Collections.reverseOrder(this));
+            for (int id = 0; id < names.size(); id++) {
+                if (heap.size() < top) {
+                    heap.add(id);
+                } else if (top > 0 && compare(id, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(id);
+                }
+            }
+
+            Entry[] entries = new Entry[heap.size()];
+            for (int i = entries.length - 1; i >= 0; i--) {
+                int id = heap.poll();
+                entries[i] = new Entry(names.get(id), flat[id], inclusive[id]);
+            }
+            return Collections.unmodifiableList(Arrays.asList(entries));
+        }
+
+        /**
+         * More significant entry first.
+         */
+        @Override
+        public int compare(Integer lhs, Integer rhs) {
+            if (flat[lhs] != flat[rhs]) return flat[rhs] - flat[lhs];
+            if (inclusive[lhs] != inclusive[rhs]) return inclusive[rhs] - inclusive[lhs];
+            return names.get(lhs).compareTo(names.get(rhs));
+        }
+    }
+
+    /**
+     * Method, class or package with its counts.
+     *
+     * @author ogondza
+     */
+    public static final class Entry {
+        private final @Nonnull String name;
+        private final int flat;
+        private final int inclusive;
+
+        private Entry(@Nonnull String name, int flat, int inclusive) {
+            this.name = name;
+            this.flat = flat;
+            this.inclusive = inclusive;
+        }
+
+        public @Nonnull String getName() {
+            return name;
+        }
+
+        /**
+         * Number of threads with the entry on top of the stack.
+         */
+        public int getFlat() {
+            return flat;
+        }
+
+        /**
+         * Number of threads with the entry anywhere on the stack.
+         */
+        public int getInclusive() {
+            return inclusive;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d/%d", name, flat, inclusive);
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.LockIndex;
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+import com.github.olivergondza.dumpling.model.ProcessThread;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadSet;
+
+/**
+ * Rank contended locks and lock classes by number of waiting threads.
+ *
+ * Unlike {@link TopContenders}, locks of the same class are aggregated even when owned by different threads so many
+ * threads waiting on various instances of the same class show up as a single hot spot. Parked threads are considered
+ * only while acquiring a lock or synchronizer, threads awaiting condition or waiting for a queue element are not
+ * contending.
+ *
+ * @author ogondza
+ */
+public final class LockContention implements SingleThreadSetQuery<LockContention.Result<?, ?, ?>> {
+
+    private boolean showStackTraces = false;
+    private int top = Integer.MAX_VALUE;
+
+    /**
+     * List stack traces of owners and waiters of reported locks.
+     */
+    public LockContention showStackTraces() {
+        this.showStackTraces = true;
+        return this;
+    }
+
+    /**
+     * Report given number of top locks and lock classes only.
+     */
+    public LockContention top(@Nonnegative int count) {
+        if (count < 0) throw new IllegalArgumentException("Negative lock count: " + count);
+        this.top = count;
+        return this;
+    }
+
+    /**
+     * @param threads Threads waiting on locks to rank.
+     */
+    @Override
+    public @Nonnull <
+            SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
+            RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
+    > Result<SetType, RuntimeType, ThreadType> query(@Nonnull SetType threads) {
+        return new Result<SetType, RuntimeType, ThreadType>(threads, showStackTraces, top);
+    }
+
+    /**
+     * Contended locks and lock classes ordered from the most contended one.
+     *
+     * Involved threads are owners and waiters of reported locks.
+     *
+     * @author ogondza
+     */
+    public static final class Result<
+            SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
+            RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
+    > extends SingleThreadSetQuery.Result<SetType, RuntimeType, ThreadType> {
+
+        private final @Nonnull List<Contention<SetType, ThreadType>> locks;
+        private final @Nonnull List<LockClass> classes;
+        private final @Nonnull SetType involved;
+        private final int contended;
+        private final int contendedClasses;
+        private final int waiters;
+
+        /*package*/ Result(@Nonnull SetType threads, boolean showStackTraces, @Nonnegative int top) {
+            super(showStackTraces);
+
+            final LockIndex<ThreadType> index = threads.getProcessRuntime().getLockIndex();
+            final Map<ThreadLock, Builder<SetType, ThreadType>> locks = new LinkedHashMap<ThreadLock, Builder<SetType, ThreadType>>();
+            final Map<String, LockClass> classes = new LinkedHashMap<String, LockClass>();
+            int waiters = 0;
+            for (ThreadType thread: threads) {
+                boolean monitor = true;
+                ThreadLock lock = thread.getWaitingToLock();
+                if (lock == null && thread.getStatus().isParked() && ThreadPools.isAcquiringLock(thread.getStackTrace())) {
+                    monitor = false;
+                    lock = thread.getWaitingOnLock();
+                }
+                if (lock == null) continue;
+
+                Builder<SetType, ThreadType> builder = locks.get(lock);
+                LockClass lockClass = classes.get(lock.getClassName());
+                if (lockClass == null) {
+                    lockClass = new LockClass(lock.getClassName());
+                    classes.put(lock.getClassName(), lockClass);
+                }
+                if (builder == null) {
+                    ThreadType owner = monitor ? index.getMonitorOwner(lock) : index.getSynchronizerOwner(lock);
+                    builder = new Builder<SetType, ThreadType>(lock, owner);
+                    locks.put(lock, builder);
+                    lockClass.addLock(owner);
+                }
+
+                builder.addWaiter(thread);
+                lockClass.waiters++;
+                waiters++;
+            }
+
+            final List<Builder<SetType, ThreadType>> topLocks = top(locks.values(), top, Builder.WAITERS);
+            final List<Contention<SetType, ThreadType>> contentions = new ArrayList<Contention<SetType, ThreadType>>(topLocks.size());
+            final List<ThreadType> involved = new ArrayList<ThreadType>();
+            for (Builder<SetType, ThreadType> builder: topLocks) {
+                contentions.add(builder.build(threads));
+                if (builder.owner != null) {
+                    involved.add(builder.owner);
+                }
+                involved.addAll(builder.waiters);
+            }
+
+            this.locks = Collections.unmodifiableList(contentions);
+            this.classes = Collections.unmodifiableList(top(classes.values(), top, LockClass.WAITERS));
+            this.involved = threads.derive(involved);
+            this.contended = locks.size();
+            this.contendedClasses = classes.size();
+            this.waiters = waiters;
+        }
+
+        /**
+         * Select the most significant elements in order.
+         */
+        private static @Nonnull <T> List<T> top(@Nonnull Collection<T> values, int top, @Nonnull Comparator<? super T> order) {
+            // Keep the most significant elements seen so far with the least significant one on top of the heap
+            PriorityQueue<T> heap = new PriorityQueue<T>(11, Collections.reverseOrder(order));
+            for (T value: values) {
+                if (heap.size() < top) {
+                    heap.add(value);
+                } else if (top > 0 && order.compare(value, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(value);
+                }
+            }
+
+            List<T> ordered = new ArrayList<T>(heap);
+            Collections.sort(ordered, order);
+            return ordered;
+        }
+
+        /**
+         * Locks ordered from the one with most waiters.
+         */
+        public @Nonnull List<Contention<SetType, ThreadType>> getLocks() {
+            return locks;
+        }
+
+        /**
+         * Lock classes ordered from the one with most waiters.
+         */
+        public @Nonnull List<LockClass> getLockClasses() {
+            return classes;
+        }
+
+        @Override
+        protected void printResult(@Nonnull PrintStream out) {
+            for (Contention<SetType, ThreadType> contention: locks) {
+                contention.getLock().toString(out, Mode.HUMAN);
+                out.printf(": %d waiters%n", contention.getWaiters().size());
+
+                ThreadType owner = contention.getOwner();
+                if (owner != null) {
+                    out.print("  Owner: ");
+                    owner.printHeader(out, Mode.HUMAN);
+                    StackTraceElement frame = contention.getOwnerFrame();
+                    if (frame != null) {
+                        out.printf(" at %s", frame);
+                    }
+                    out.println();
+                }
+
+                for (Map.Entry<StackTraceElement, Integer> frame: contention.getAcquiringFrames().entrySet()) {
+                    out.printf("  Waiting %d at %s%n", frame.getValue(), frame.getKey());
+                }
+            }
+
+            out.println();
+            for (LockClass lockClass: classes) {
+                out.printf(
+                        "%s: %d locks; Owners: %d; Waiters: %d%n",
+                        lockClass.getClassName(), lockClass.getLocks(), lockClass.getOwners(), lockClass.getWaiters()
+                );
+            }
+        }
+
+        @Override
+        protected @Nonnull SetType involvedThreads() {
+            return involved;
+        }
+
+        @Override
+        protected void printSummary(@Nonnull PrintStream out) {
+            out.printf("Contended locks: %d; Lock classes: %d; Waiters: %d%n", contended, contendedClasses, waiters);
+        }
+
+        /**
+         * @return Number of contended locks.
+         */
+        @Override
+        public int exitCode() {
+            return contended;
+        }
+    }
+
+    /**
+     * Lock with its waiters collected so far.
+     */
+    private static final class Builder<SetType extends ThreadSet<SetType, ?, ThreadType>, ThreadType extends ProcessThread<ThreadType, SetType, ?>> {
+
+        private static final @Nonnull Comparator<Builder<?, ?>> WAITERS = new Comparator<Builder<?, ?>>() {
+            @Override
+            public int compare(Builder<?, ?> lhs, Builder<?, ?> rhs) {
+                if (lhs.waiters.size() != rhs.waiters.size()) return rhs.waiters.size() - lhs.waiters.size();
+                return Long.compare(lhs.lock.getId(), rhs.lock.getId());
+            }
+        };
+
+        private final @Nonnull ThreadLock lock;
+        private final @CheckForNull ThreadType owner;
+        private final @Nonnull List<ThreadType> waiters = new ArrayList<ThreadType>(2);
+
+        private Builder(@Nonnull ThreadLock lock, @CheckForNull ThreadType owner) {
+            this.lock = lock;
+            this.owner = owner;
+        }
+
+        private void addWaiter(@Nonnull ThreadType waiter) {
+            waiters.add(waiter);
+        }
+
+        private @Nonnull Contention<SetType, ThreadType> build(@Nonnull SetType threads) {
+            StackTraceElement ownerFrame = null;
+            if (owner != null) {
+                for (ThreadLock.Monitor monitor: owner.getMonitors()) {
+                    if (monitor.getLock().equals(lock)) {
+                        ownerFrame = owner.getStackTrace().getElement(monitor.getDepth());
+                        break;
+                    }
+                }
+            }
+
+            Map<StackTraceElement, Integer> frames = new LinkedHashMap<StackTraceElement, Integer>();
+            for (ThreadType waiter: waiters) {
+                StackTraceElement frame = acquiringFrame(waiter.getStackTrace());
+                if (frame == null) continue;
+
+                Integer count = frames.get(frame);
+                frames.put(frame, count == null ? 1 : count + 1);
+            }
+
+            return new Contention<SetType, ThreadType>(lock, owner, ownerFrame, threads.derive(waiters), frames);
+        }
+
+        /**
+         * Innermost frame outside of locking implementation.
+         */
+        private static @CheckForNull StackTraceElement acquiringFrame(@Nonnull StackTrace trace) {
+            for (StackTraceElement element: trace.getElements()) {
+                String className = element.getClassName();
+                boolean locking = className.startsWith("java.util.concurrent.locks.")
+                        || className.equals("sun.misc.Unsafe")
+                        || className.equals("jdk.internal.misc.Unsafe")
+                ;
+                if (!locking) return element;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Contended lock with its owner and waiters.
+     *
+     * @author ogondza
+     */
+    public static final class Contention<SetType extends ThreadSet<SetType, ?, ThreadType>, ThreadType extends ProcessThread<ThreadType, SetType, ?>> {
+
+        private final @Nonnull ThreadLock lock;
+        private final @CheckForNull ThreadType owner;
+        private final @CheckForNull StackTraceElement ownerFrame;
+        private final @Nonnull SetType waiters;
+        private final @Nonnull Map<StackTraceElement, Integer> acquiringFrames;
+
+        private Contention(
+                @Nonnull ThreadLock lock, @CheckForNull ThreadType owner, @CheckForNull StackTraceElement ownerFrame,
+                @Nonnull SetType waiters, @Nonnull Map<StackTraceElement, Integer> acquiringFrames
+        ) {
+            this.lock = lock;
+            this.owner = owner;
+            this.ownerFrame = ownerFrame;
+            this.waiters = waiters;
+            this.acquiringFrames = Collections.unmodifiableMap(acquiringFrames);
+        }
+
+        public @Nonnull ThreadLock getLock() {
+            return lock;
+        }
+
+        /**
+         * Thread holding the lock, if known.
+         */
+        public @CheckForNull ThreadType getOwner() {
+            return owner;
+        }
+
+        /**
+         * Frame where the owner acquired the monitor.
+         *
+         * Not known for ownable synchronizers.
+         */
+        public @CheckForNull StackTraceElement getOwnerFrame() {
+            return ownerFrame;
+        }
+
+        /**
+         * Threads waiting to acquire the monitor or parked on the synchronizer.
+         */
+        public @Nonnull SetType getWaiters() {
+            return waiters;
+        }
+
+        /**
+         * Frames where waiters try to acquire the lock with number of waiters.
+         */
+        public @Nonnull Map<StackTraceElement, Integer> getAcquiringFrames() {
+            return acquiringFrames;
+        }
+    }
+
+    /**
+     * Contention aggregated over all locks of the same class.
+     *
+     * @author ogondza
+     */
+    public static final class LockClass {
+
+        private static final @Nonnull Comparator<LockClass> WAITERS = new Comparator<LockClass>() {
+            @Override
+            public int compare(LockClass lhs, LockClass rhs) {
+                if (lhs.waiters != rhs.waiters) return rhs.waiters - lhs.waiters;
+                return lhs.className.compareTo(rhs.className);
+            }
+        };
+
+        private final @Nonnull String className;
+        private int locks;
+        private int waiters;
+        private final @Nonnull Set<ProcessThread<?, ?, ?>> owners = Collections.newSetFromMap(
+                new IdentityHashMap<ProcessThread<?, ?, ?>, Boolean>()
+        );
+
+        private LockClass(@Nonnull String className) {
+            this.className = className;
+        }
+
+        private void addLock(@CheckForNull ProcessThread<?, ?, ?> owner) {
+            locks++;
+            if (owner != null) {
+                owners.add(owner);
+            }
+        }
+
+        public @Nonnull String getClassName() {
+            return className;
+        }
+
+        /**
+         * Number of contended locks of the class.
+         */
+        public int getLocks() {
+            return locks;
+        }
+
+        /**
+         * Number of distinct threads owning contended locks of the class.
+         */
+        public int getOwners() {
+            return owners.size();
+        }
+
+        /**
+         * Number of threads waiting on locks of the class.
+         */
+        public int getWaiters() {
+            return waiters;
+        }
+    }
+}
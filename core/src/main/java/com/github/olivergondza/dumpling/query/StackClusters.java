@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+import com.github.olivergondza.dumpling.model.ProcessThread;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.ThreadSet;
+
+/**
+ * Group threads with identical or similar stack traces.
+ *
+ * Stack traces are compared whole by default. Comparing only the innermost frames or ignoring line numbers groups
+ * threads doing similar work even if they differ deeper in the stack or in code version. Output size depends on the
+ * number of distinct stack traces and not on the number of threads.
+ *
+ * @author ogondza
+ */
+public final class StackClusters implements SingleThreadSetQuery<StackClusters.Result<?, ?, ?>> {
+
+    private boolean showStackTraces = false;
+    private int topFrames = Integer.MAX_VALUE;
+    private boolean ignoreLineNumbers = false;
+
+    /**
+     * List representative threads of all clusters.
+     */
+    public StackClusters showStackTraces() {
+        this.showStackTraces = true;
+        return this;
+    }
+
+    /**
+     * Compare given number of innermost frames only.
+     */
+    public StackClusters topFrames(@Nonnegative int count) {
+        if (count < 0) throw new IllegalArgumentException("Negative frame count: " + count);
+        this.topFrames = count;
+        return this;
+    }
+
+    /**
+     * Do not distinguish frames differing in line number only.
+     */
+    public StackClusters ignoreLineNumbers() {
+        this.ignoreLineNumbers = true;
+        return this;
+    }
+
+    /**
+     * @param threads Threads to cluster.
+     */
+    @Override
+    public @Nonnull <
+            SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
+            RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
+    > Result<SetType, RuntimeType, ThreadType> query(@Nonnull SetType threads) {
+        return new Result<SetType, RuntimeType, ThreadType>(threads, showStackTraces, topFrames, ignoreLineNumbers);
+    }
+
+    /**
+     * Clusters ordered from the largest one.
+     *
+     * Involved threads are representatives of the clusters.
+     *
+     * @author ogondza
+     */
+    public static final class Result<
+            SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
+            RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
+    > extends SingleThreadSetQuery.Result<SetType, RuntimeType, ThreadType> {
+
+        private static final @Nonnull Comparator<Cluster<?, ?>> SIZE = new Comparator<Cluster<?, ?>>() {
+            @Override
+            public int compare(Cluster<?, ?> lhs, Cluster<?, ?> rhs) {
+                return rhs.getThreads().size() - lhs.getThreads().size();
+            }
+        };
+
+        private final @Nonnull List<Cluster<SetType, ThreadType>> clusters;
+        private final @Nonnull SetType involved;
+
+        /*package*/ Result(@Nonnull SetType threads, boolean showStackTraces, @Nonnegative int topFrames, boolean ignoreLineNumbers) {
+            super(showStackTraces);
+
+            boolean whole = topFrames == Integer.MAX_VALUE && !ignoreLineNumbers;
+            // Threads of a runtime share equal stack traces so signatures are computed once per distinct trace
+            final Map<StackTrace, StackTrace> signatures = new IdentityHashMap<StackTrace, StackTrace>();
+            final Map<StackTrace, List<ThreadType>> members = new LinkedHashMap<StackTrace, List<ThreadType>>();
+            for (ThreadType thread: threads) {
+                StackTrace trace = thread.getStackTrace();
+                StackTrace signature = trace;
+                if (!whole) {
+                    signature = signatures.get(trace);
+                    if (signature == null) {
+                        signature = signature(trace, topFrames, ignoreLineNumbers);
+                        signatures.put(trace, signature);
+                    }
+                }
+
+                List<ThreadType> cluster = members.get(signature);
+                if (cluster == null) {
+                    cluster = new ArrayList<ThreadType>();
+                    members.put(signature, cluster);
+                }
+                cluster.add(thread);
+            }
+
+            final List<Cluster<SetType, ThreadType>> clusters = new ArrayList<Cluster<SetType, ThreadType>>(members.size());
+            final List<ThreadType> involved = new ArrayList<ThreadType>(members.size());
+            for (Map.Entry<StackTrace, List<ThreadType>> entry: members.entrySet()) {
+                List<ThreadType> cluster = entry.getValue();
+                clusters.add(new Cluster<SetType, ThreadType>(entry.getKey(), threads.derive(cluster), cluster.get(0)));
+                involved.add(cluster.get(0));
+            }
+            Collections.sort(clusters, SIZE);
+
+            this.clusters = Collections.unmodifiableList(clusters);
+            this.involved = threads.derive(involved);
+        }
+
+        private static @Nonnull StackTrace signature(@Nonnull StackTrace trace, int topFrames, boolean ignoreLineNumbers) {
+            int size = Math.min(trace.size(), topFrames);
+            List<StackTraceElement> elements = new ArrayList<StackTraceElement>(size);
+            for (StackTraceElement element: trace.getElements()) {
+                if (elements.size() == size) break;
+
+                if (ignoreLineNumbers && element.getLineNumber() >= 0) {
+                    element = StackTrace.element(element.getClassName(), element.getMethodName(), element.getFileName());
+                }
+                elements.add(element);
+            }
+            return new StackTrace(elements);
+        }
+
+        /**
+         * Clusters ordered from the largest one.
+         */
+        public @Nonnull List<Cluster<SetType, ThreadType>> getClusters() {
+            return clusters;
+        }
+
+        @Override
+        protected void printResult(@Nonnull PrintStream out) {
+            int i = 1;
+            for (Cluster<SetType, ThreadType> cluster: clusters) {
+                out.printf("%nCluster #%d: %d threads%n", i++, cluster.getThreads().size());
+                cluster.getRepresentative().printHeader(out, Mode.HUMAN);
+                cluster.getSignature().toString(out, Mode.HUMAN);
+            }
+        }
+
+        @Override
+        protected @Nonnull SetType involvedThreads() {
+            return involved;
+        }
+
+        @Override
+        protected void printSummary(@Nonnull PrintStream out) {
+            int threads = 0;
+            for (Cluster<SetType, ThreadType> cluster: clusters) {
+                threads += cluster.getThreads().size();
+            }
+            out.printf("Threads: %d; Clusters: %d%n", threads, clusters.size());
+        }
+
+        /**
+         * @return Number of clusters.
+         */
+        @Override
+        public int exitCode() {
+            return clusters.size();
+        }
+    }
+
+    /**
+     * Threads sharing stack trace signature.
+     *
+     * @author ogondza
+     */
+    public static final class Cluster<SetType extends ThreadSet<SetType, ?, ThreadType>, ThreadType extends ProcessThread<ThreadType, SetType, ?>> {
+
+        private final @Nonnull StackTrace signature;
+        private final @Nonnull SetType threads;
+        private final @Nonnull ThreadType representative;
+
+        private Cluster(@Nonnull StackTrace signature, @Nonnull SetType threads, @Nonnull ThreadType representative) {
+            this.signature = signature;
+            this.threads = threads;
+            this.representative = representative;
+        }
+
+        /**
+         * Frames the threads have in common.
+         */
+        public @Nonnull StackTrace getSignature() {
+            return signature;
+        }
+
+        public @Nonnull SetType getThreads() {
+            return threads;
+        }
+
+        /**
+         * First thread of the cluster.
+         */
+        public @Nonnull ThreadType getRepresentative() {
+            return representative;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+import com.github.olivergondza.dumpling.model.ProcessThread;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.ThreadSet;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+
+/**
+ * Group threads into pools and report pool saturation.
+ *
+ * Threads with names ending with a number separated by <tt>-</tt> or <tt>#</tt> are pool workers. The pool is named
+ * after the workers with the number replaced by <tt>*</tt>, so <tt>pool-3-thread-17</tt> belongs to
+ * <tt>pool-3-thread-*</tt>, <tt>http-nio-8080-exec-42</tt> to <tt>http-nio-8080-exec-*</tt> and
+ * <tt>ForkJoinPool.commonPool-worker-5</tt> to <tt>ForkJoinPool.commonPool-worker-*</tt>. Groups of fewer than
+ * {@value #MIN_WORKERS} workers are not pools. JVM internal threads like compiler or GC threads have no java frames and
+ * are never considered workers.
+ *
+ * Worker is idle when waiting for a task in the pool's queue, blocked when waiting for a lock held by other thread and
+ * busy otherwise. Pool is exhausted when none of its workers is idle.
+ *
+ * @author ogondza
+ */
+public final class ThreadPools implements SingleThreadSetQuery<ThreadPools.Result<?, ?, ?>> {
+
+    private static final @Nonnull Pattern WORKER_NAME = Pattern.compile("(.*[-#])\\d+");
+    private static final int MIN_WORKERS = 2;
+
+    private boolean showStackTraces = false;
+
+    /**
+     * List stack traces of workers of exhausted pools.
+     */
+    public ThreadPools showStackTraces() {
+        this.showStackTraces = true;
+        return this;
+    }
+
+    /**
+     * @param threads Threads to group into pools.
+     */
+    @Override
+    public @Nonnull <
+            SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
+            RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
+    > Result<SetType, RuntimeType, ThreadType> query(@Nonnull SetType threads) {
+        return new Result<SetType, RuntimeType, ThreadType>(threads, showStackTraces);
+    }
+
+    /**
+     * Pools ordered from the most saturated one.
+     *
+     * @author ogondza
+     */
+    public static final class Result<
+            SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
+            RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
+    > extends SingleThreadSetQuery.Result<SetType, RuntimeType, ThreadType> {
+
+        private static final @Nonnull Comparator<Pool<?>> SATURATION = new Comparator<Pool<?>>() {
+            @Override
+            public int compare(Pool<?> lhs, Pool<?> rhs) {
+                int saturation = Double.compare(rhs.getSaturation(), lhs.getSaturation());
+                if (saturation != 0) return saturation;
+
+                return rhs.getThreads().size() - lhs.getThreads().size();
+            }
+        };
+
+        private final @Nonnull List<Pool<SetType>> pools;
+        private final @Nonnull SetType involved;
+        private final @Nonnegative int exhausted;
+
+        /*package*/ Result(@Nonnull SetType threads, boolean showStackTraces) {
+            super(showStackTraces);
+
+            final Map<String, Workers<ThreadType>> workers = new LinkedHashMap<String, Workers<ThreadType>>();
+            final Matcher matcher = WORKER_NAME.matcher("");
+            for (ThreadType thread: threads) {
+                // JVM internal thread
+                if (thread.getStackTrace().size() == 0) continue;
+                if (!matcher.reset(thread.getName()).matches()) continue;
+
+                String name = matcher.group(1) + "*";
+                Workers<ThreadType> pool = workers.get(name);
+                if (pool == null) {
+                    pool = new Workers<ThreadType>();
+                    workers.put(name, pool);
+                }
+                pool.add(thread);
+            }
+
+            final List<Pool<SetType>> pools = new ArrayList<Pool<SetType>>(workers.size());
+            final List<ThreadType> involved = new ArrayList<ThreadType>();
+            int exhausted = 0;
+            for (Map.Entry<String, Workers<ThreadType>> entry: workers.entrySet()) {
+                Workers<ThreadType> w = entry.getValue();
+                if (w.all.size() < MIN_WORKERS) continue;
+
+                pools.add(new Pool<SetType>(
+                        entry.getKey(), threads.derive(w.all), threads.derive(w.idle), threads.derive(w.busy), threads.derive(w.blocked)
+                ));
+                if (w.idle.isEmpty()) {
+                    exhausted++;
+                    involved.addAll(w.all);
+                }
+            }
+            Collections.sort(pools, SATURATION);
+
+            this.pools = Collections.unmodifiableList(pools);
+            this.involved = threads.derive(involved);
+            this.exhausted = exhausted;
+        }
+
+        /**
+         * Pools ordered from the most saturated one, larger pools first.
+         */
+        public @Nonnull List<Pool<SetType>> getPools() {
+            return pools;
+        }
+
+        /**
+         * Get pool by name.
+         *
+         * @param name Pool name as reported by {@link Pool#getName()}.
+         * @return null when there is none.
+         */
+        public @CheckForNull Pool<SetType> getPool(@Nonnull String name) {
+            for (Pool<SetType> pool: pools) {
+                if (pool.getName().equals(name)) return pool;
+            }
+            return null;
+        }
+
+        @Override
+        protected void printResult(@Nonnull PrintStream out) {
+            for (Pool<SetType> pool: pools) {
+                out.printf(
+                        "%s %s: %d threads; Idle: %d; Busy: %d; Blocked: %d; Saturation: %d%%%n",
+                        pool.isExhausted() ? "*" : " ",
+                        pool.getName(),
+                        pool.getThreads().size(),
+                        pool.getIdle().size(),
+                        pool.getBusy().size(),
+                        pool.getBlocked().size(),
+                        Math.round(pool.getSaturation() * 100)
+                );
+            }
+        }
+
+        @Override
+        protected @Nonnull SetType involvedThreads() {
+            return involved;
+        }
+
+        @Override
+        protected void printSummary(@Nonnull PrintStream out) {
+            out.printf("Pools: %d; Exhausted: %d%n", pools.size(), exhausted);
+        }
+
+        /**
+         * @return Number of exhausted pools.
+         */
+        @Override
+        public int exitCode() {
+            return exhausted;
+        }
+    }
+
+    /**
+     * Workers of a single pool.
+     *
+     * @author ogondza
+     */
+    public static final class Pool<SetType extends ThreadSet<SetType, ?, ?>> {
+
+        private final @Nonnull String name;
+        private final @Nonnull SetType threads;
+        private final @Nonnull SetType idle;
+        private final @Nonnull SetType busy;
+        private final @Nonnull SetType blocked;
+
+        private Pool(@Nonnull String name, @Nonnull SetType threads, @Nonnull SetType idle, @Nonnull SetType busy, @Nonnull SetType blocked) {
+            this.name = name;
+            this.threads = threads;
+            this.idle = idle;
+            this.busy = busy;
+            this.blocked = blocked;
+        }
+
+        public @Nonnull String getName() {
+            return name;
+        }
+
+        public @Nonnull SetType getThreads() {
+            return threads;
+        }
+
+        /**
+         * Workers waiting for a task.
+         */
+        public @Nonnull SetType getIdle() {
+            return idle;
+        }
+
+        /**
+         * Workers neither idle nor blocked.
+         */
+        public @Nonnull SetType getBusy() {
+            return busy;
+        }
+
+        /**
+         * Workers waiting for a lock held by other thread.
+         */
+        public @Nonnull SetType getBlocked() {
+            return blocked;
+        }
+
+        /**
+         * Fraction of workers that are not idle.
+         */
+        public double getSaturation() {
+            return (double) (threads.size() - idle.size()) / threads.size();
+        }
+
+        public boolean isExhausted() {
+            return idle.isEmpty();
+        }
+    }
+
+    private static final class Workers<ThreadType extends ProcessThread<ThreadType, ?, ?>> {
+        private final @Nonnull List<ThreadType> all = new ArrayList<ThreadType>();
+        private final @Nonnull List<ThreadType> idle = new ArrayList<ThreadType>();
+        private final @Nonnull List<ThreadType> busy = new ArrayList<ThreadType>();
+        private final @Nonnull List<ThreadType> blocked = new ArrayList<ThreadType>();
+
+        private void add(@Nonnull ThreadType thread) {
+            all.add(thread);
+            ThreadStatus status = thread.getStatus();
+            if (status.isBlocked() || thread.getBlockingThread() != null) {
+                blocked.add(thread);
+            } else if ((status.isParked() || status.isWaiting()) && isWaitingForTask(thread.getStackTrace())) {
+                idle.add(thread);
+            } else {
+                busy.add(thread);
+            }
+        }
+    }
+
+    /**
+     * Thread is waiting for task when queue retrieval or executor task retrieval is the first frame below the
+     * frames of the locking machinery.
+     */
+    /*package*/ static boolean isWaitingForTask(@Nonnull StackTrace trace) {
+        for (StackTraceElement frame: trace.getElements()) {
+            String className = frame.getClassName();
+            String methodName = frame.getMethodName();
+
+            boolean queue = isQueue(className);
+            if (queue && (methodName.startsWith("take") || methodName.startsWith("poll"))) return true;
+            if ("java.util.concurrent.ThreadPoolExecutor".equals(className) && "getTask".equals(methodName)) return true;
+            if ("java.util.concurrent.ForkJoinPool".equals(className)
+                    && ("awaitWork".equals(methodName) || "idleAwaitWork".equals(methodName))
+            ) return true;
+
+            // Queue internals, locks and parking
+            if (!queue && !isLocking(className, methodName)) return false;
+        }
+        return false;
+    }
+
+    /**
+     * Thread is acquiring a lock or synchronizer when acquisition is the first frame below the parking frames.
+     *
+     * Condition waits and queue retrievals park on a synchronizer as well, but those threads wait for a signal
+     * rather than compete for the lock.
+     */
+    /*package*/ static boolean isAcquiringLock(@Nonnull StackTrace trace) {
+        for (StackTraceElement frame: trace.getElements()) {
+            String className = frame.getClassName();
+            String methodName = frame.getMethodName();
+
+            if (!isLocking(className, methodName)) return false;
+            if (!className.startsWith("java.util.concurrent.locks.")) continue;
+
+            // ConditionObject or ConditionNode since Java 17
+            if (className.contains("$Condition")) return false;
+            if (methodName.contains("cquire") || isLockMethod(methodName)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isLockMethod(@Nonnull String methodName) {
+        return "lock".equals(methodName) || "tryLock".equals(methodName) || "lockInterruptibly".equals(methodName);
+    }
+
+    private static boolean isQueue(@Nonnull String className) {
+        int simpleName = className.lastIndexOf('.') + 1;
+        return className.indexOf("Queue", simpleName) != -1 || className.indexOf("Deque", simpleName) != -1;
+    }
+
+    private static boolean isLocking(@Nonnull String className, @Nonnull String methodName) {
+        return className.startsWith("java.util.concurrent.locks.")
+                || "sun.misc.Unsafe".equals(className)
+                || "jdk.internal.misc.Unsafe".equals(className)
+                || "java.lang.Object".equals(className)
+                // Condition waits since Java 17
+                || ("java.util.concurrent.ForkJoinPool".equals(className) && methodName.endsWith("anagedBlock"))
+        ;
+    }
+}
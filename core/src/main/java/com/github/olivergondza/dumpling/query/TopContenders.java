@@ -24,13 +24,18 @@
 package com.github.olivergondza.dumpling.query;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.TreeMap;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnegative;
@@ -40,6 +45,7 @@ import com.github.olivergondza.dumpling.model.ModelObject;
 import com.github.olivergondza.dumpling.model.ProcessRuntime;
 import com.github.olivergondza.dumpling.model.ProcessThread;
 import com.github.olivergondza.dumpling.model.ThreadSet;
+import com.github.olivergondza.dumpling.model.WaitForGraph;
 
 /**
  * Detect top-contenders, threads that block largest number of other threads.
@@ -49,12 +55,22 @@ import com.github.olivergondza.dumpling.model.ThreadSet;
 public final class TopContenders implements SingleThreadSetQuery<TopContenders.Result<?, ?, ?>> {
 
     private boolean showStackTraces = false;
+    private int top = Integer.MAX_VALUE;
 
     public TopContenders showStackTraces() {
         this.showStackTraces = true;
         return this;
     }
 
+    /**
+     * Report given number of top contenders only.
+     */
+    public TopContenders top(@Nonnegative int count) {
+        if (count < 0) throw new IllegalArgumentException("Negative contender count: " + count);
+        this.top = count;
+        return this;
+    }
+
     /**
      * @param threads Thread subset to be considered as a potential contenders. All threads in runtime are considered as blocking threads.
      */
@@ -64,9 +80,15 @@ public final class TopContenders implements SingleThreadSetQuery<TopContenders.R
             RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
             ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
     > Result<SetType, RuntimeType, ThreadType> query(SetType threads) {
-        return new Result<SetType, RuntimeType, ThreadType>(threads, showStackTraces);
+        return new Result<SetType, RuntimeType, ThreadType>(threads, showStackTraces, top);
     }
 
+    /**
+     * Contenders ordered by number of threads they block directly, then by number of threads blocked transitively and
+     * then by runtime order.
+     *
+     * @author ogondza
+     */
     public final static class Result<
             SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
             RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
@@ -74,30 +96,40 @@ public final class TopContenders implements SingleThreadSetQuery<TopContenders.R
     > extends SingleThreadSetQuery.Result<SetType, RuntimeType, ThreadType> {
 
         private final @Nonnull Map<ThreadType, SetType> contenders;
+        private final @Nonnull Map<ThreadType, Integer> transitive;
         private final @Nonnull SetType involved;
         private final @Nonnegative int blocked;
 
-        /*package*/ Result(SetType threads, boolean showStacktraces) {
+        /*package*/ Result(SetType threads, boolean showStacktraces, @Nonnegative int top) {
             super(showStacktraces);
-            final Set<ThreadType> involved = new LinkedHashSet<ThreadType>();
-            final Map<ThreadType, SetType> contenders = new TreeMap<ThreadType, SetType>(new Comparator<ThreadType>() {
-                @Override
-                public int compare(ThreadType lhs, ThreadType rhs) {
-                    int lhsSize = lhs.getBlockedThreads().size();
-                    int rhsSize = rhs.getBlockedThreads().size();
+            final WaitForGraph<ThreadType> graph = threads.getProcessRuntime().getWaitForGraph();
+            final Counts counts = new Counts(graph);
 
-                    if (lhsSize > rhsSize) return -1;
-                    if (lhsSize < rhsSize) return 1;
+            // Keep the worst contenders seen so far with the least significant one on top of the heap
+            final PriorityQueue<Integer> heap = new PriorityQueue<Integer>(11, Collections.reverseOrder(counts));
+            for (ThreadType thread: threads) {
+                int node = graph.indexOf(thread);
+                if (node == -1 || counts.direct[node] == 0) continue;
 
-                    return 0;
+                if (heap.size() < top) {
+                    heap.add(node);
+                } else if (top > 0 && counts.compare(node, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(node);
                 }
-            });
+            }
 
-            for (ThreadType thread: threads) {
-                SetType blocked = thread.getBlockedThreads();
-                if (blocked.isEmpty()) continue;
+            final List<Integer> ranked = new ArrayList<Integer>(heap);
+            Collections.sort(ranked, counts);
 
+            final Set<ThreadType> involved = new LinkedHashSet<ThreadType>();
+            final Map<ThreadType, SetType> contenders = new LinkedHashMap<ThreadType, SetType>(ranked.size());
+            final Map<ThreadType, Integer> transitive = new HashMap<ThreadType, Integer>(ranked.size());
+            for (int node: ranked) {
+                ThreadType thread = graph.getThread(node);
+                SetType blocked = thread.getBlockedThreads();
                 contenders.put(thread, blocked);
+                transitive.put(thread, counts.transitive[node]);
                 involved.add(thread);
                 for (ThreadType b: blocked) {
                     involved.add(b);
@@ -105,6 +137,7 @@ public final class TopContenders implements SingleThreadSetQuery<TopContenders.R
             }
 
             this.contenders = Collections.unmodifiableMap(contenders);
+            this.transitive = Collections.unmodifiableMap(transitive);
             this.involved = threads.derive(involved);
             this.blocked = involved.size() - contenders.size();
         }
@@ -122,6 +155,16 @@ public final class TopContenders implements SingleThreadSetQuery<TopContenders.R
             return contenders.get(thread);
         }
 
+        /**
+         * Number of threads blocked by the thread directly or through other blocked threads.
+         *
+         * @return 0 when the thread is not a reported contender.
+         */
+        public @Nonnegative int transitivelyBlockedBy(ThreadType thread) {
+            Integer count = transitive.get(thread);
+            return count == null ? 0 : count;
+        }
+
         @Override
         protected void printResult(PrintStream out) {
             for (Entry<ThreadType, SetType> contention: contenders.entrySet()) {
@@ -129,6 +172,10 @@ public final class TopContenders implements SingleThreadSetQuery<TopContenders.R
                 out.print("* ");
                 contention.getKey().printHeader(out, ModelObject.Mode.HUMAN);
                 out.println();
+                int transitive = transitivelyBlockedBy(contention.getKey());
+                if (transitive > contention.getValue().size()) {
+                    out.printf("  Blocking %d threads transitively%n", transitive);
+                }
                 int i = 1;
                 for (ProcessThread<?, ?, ?> blocked: contention.getValue()) {
 
@@ -156,4 +203,72 @@ public final class TopContenders implements SingleThreadSetQuery<TopContenders.R
             return contenders.size();
         }
     }
+
+    /**
+     * Number of threads blocked by every thread of the runtime, computed in a single pass over blocking relation.
+     *
+     * Orders graph nodes from the worst contender.
+     */
+    private static final class Counts implements Comparator<Integer> {
+        private final @Nonnull int[] direct;
+        private final @Nonnull int[] transitive;
+
+        private <ThreadType extends ProcessThread<ThreadType, ?, ?>> Counts(@Nonnull WaitForGraph<ThreadType> graph) {
+            int size = graph.size();
+            int[] blocking = new int[size];
+            direct = new int[size];
+            transitive = new int[size];
+            for (int node = 0; node < size; node++) {
+                ThreadType blocker = graph.getThread(node).getBlockingThread();
+                blocking[node] = blocker == null ? -1 : graph.indexOf(blocker);
+                if (blocking[node] != -1) {
+                    direct[blocking[node]]++;
+                }
+            }
+
+            // Propagate counts from threads blocking nothing towards their blockers
+            int[] pending = Arrays.copyOf(direct, size);
+            int[] queue = new int[size];
+            int head = 0;
+            int tail = 0;
+            for (int node = 0; node < size; node++) {
+                if (pending[node] == 0) queue[tail++] = node;
+            }
+            while (head < tail) {
+                int node = queue[head++];
+                int blocker = blocking[node];
+                if (blocker == -1) continue;
+
+                transitive[blocker] += 1 + transitive[node];
+                if (--pending[blocker] == 0) queue[tail++] = blocker;
+            }
+
+            // Threads never resolved form deadlocks, all members block the same threads
+            for (int node = 0; node < size; node++) {
+                if (pending[node] == 0) continue;
+
+                int members = 0;
+                int sum = 0;
+                int member = node;
+                do {
+                    members++;
+                    sum += transitive[member];
+                    pending[member] = 0;
+                    member = blocking[member];
+                } while (member != node);
+
+                do {
+                    transitive[member] = sum + members - 1;
+                    member = blocking[member];
+                } while (member != node);
+            }
+        }
+
+        @Override
+        public int compare(Integer lhs, Integer rhs) {
+            if (direct[lhs] != direct[rhs]) return direct[lhs] > direct[rhs] ? -1 : 1;
+            if (transitive[lhs] != transitive[rhs]) return transitive[lhs] > transitive[rhs] ? -1 : 1;
+            return lhs.compareTo(rhs);
+        }
+    }
 }
@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+import com.github.olivergondza.dumpling.model.ProcessThread;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.jmx.JmxRuntime;
+import com.github.olivergondza.dumpling.model.jmx.JmxThread;
+import com.github.olivergondza.dumpling.model.jvm.JvmRuntime;
+import com.github.olivergondza.dumpling.model.jvm.JvmThread;
+
+public class SnapshotFactoryTest {
+
+    private final SnapshotFactory factory = new SnapshotFactory();
+
+    @Test
+    public void threaddump() throws Exception {
+        for (String resource: Arrays.asList("jstack/deadlock.log", "jstack/producer-consumer.log", "jstack/ReentrantLock-parking-blockage.log")) {
+            byte[] dump = Util.asString(Util.resource(resource)).getBytes();
+            ThreadDumpRuntime expected = new ThreadDumpFactory().fromStream(new ByteArrayInputStream(dump));
+            byte[] snapshot = snapshot(expected);
+
+            ThreadDumpRuntime actual = (ThreadDumpRuntime) roundtrip(expected);
+            assertEquals(expected.getHeader(), actual.getHeader());
+            assertThat(snapshot.length, lessThan(dump.length));
+        }
+    }
+
+    @Test
+    public void jvm() throws Exception {
+        JvmRuntime expected = new JvmRuntimeFactory().currentRuntime();
+        JvmRuntime actual = (JvmRuntime) roundtrip(expected);
+
+        assertEquals(expected.getCaptured(), actual.getCaptured());
+        JvmThread main = actual.getThreads().where(ProcessThread.nameIs("main")).onlyThread();
+        assertEquals("main", main.getGroupName());
+        assertNull(main.getThread());
+    }
+
+    @Test
+    public void jmx() throws Exception {
+        ThreadLock monitor = new ThreadLock("java.lang.Object", 0x7f0000001L);
+        ThreadLock synchronizer = new ThreadLock("java.util.concurrent.locks.ReentrantLock$NonfairSync", -1L);
+        Set<JmxThread.Builder> builders = new LinkedHashSet<JmxThread.Builder>();
+        builders.add(new JmxThread.Builder().setName("owner").setId(1).setThreadStatus(ThreadStatus.SLEEPING)
+                .setStacktrace(StackTrace.element("java.lang.Thread", "sleep"), StackTrace.element("a.B", "c", "B.java", 42))
+                .setAcquiredMonitors(new ThreadLock.Monitor(monitor, 1), new ThreadLock.Monitor(monitor, 1))
+                .setAcquiredSynchronizers(synchronizer)
+        );
+        builders.add(new JmxThread.Builder().setName("blocked").setId(2).setPriority(-1).setDaemon(true)
+                .setThreadStatus(ThreadStatus.BLOCKED).setWaitingToLock(monitor)
+                .setStacktrace(StackTrace.nativeElement("a.B", "c"), StackTrace.element("a.B", "c", "B.java", 42))
+        );
+        JmxRuntime expected = new JmxRuntime(builders, new Date(), "jvm@host");
+
+        JmxRuntime actual = (JmxRuntime) roundtrip(expected);
+        assertEquals(expected.getJvmId(), actual.getJvmId());
+        assertEquals(2, actual.getThreads().where(ProcessThread.nameIs("owner")).onlyThread().getMonitors().size());
+    }
+
+    @Test
+    public void file() throws Exception {
+        ThreadDumpRuntime expected = new ThreadDumpFactory().fromStream(Util.resource("jstack/deadlock.log"));
+        File file = File.createTempFile("dumpling", ".snapshot");
+        file.deleteOnExit();
+        factory.toFile(expected, file);
+        assertEquals(expected.toString(Mode.MACHINE), factory.fromFile(file).toString(Mode.MACHINE));
+    }
+
+    @Test
+    public void invalid() throws Exception {
+        try {
+            factory.fromStream(Util.resource("jstack/deadlock.log"));
+            fail();
+        } catch (IllegalRuntimeStateException ex) {
+            assertEquals("Not a dumpling snapshot", ex.getMessage());
+        }
+
+        byte[] snapshot = snapshot(new ThreadDumpFactory().fromStream(Util.resource("jstack/deadlock.log")));
+        try {
+            factory.fromStream(new ByteArrayInputStream(Arrays.copyOf(snapshot, snapshot.length / 2)));
+            fail();
+        } catch (IllegalRuntimeStateException ex) {
+            assertThat(ex.getMessage(), startsWith("Truncated snapshot"));
+        }
+    }
+
+    private ProcessRuntime<?, ?, ?> roundtrip(ProcessRuntime<?, ?, ?> expected) throws Exception {
+        ProcessRuntime<?, ?, ?> actual = factory.fromStream(new ByteArrayInputStream(snapshot(expected)));
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(expected.toString(Mode.MACHINE), actual.toString(Mode.MACHINE));
+        return actual;
+    }
+
+    private byte[] snapshot(ProcessRuntime<?, ?, ?> runtime) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        factory.toStream(runtime, out);
+        return out.toByteArray();
+    }
+}
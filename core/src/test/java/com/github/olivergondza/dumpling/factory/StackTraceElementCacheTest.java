@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+
+public class StackTraceElementCacheTest {
+
+    @Test
+    public void countHitsAndMisses() {
+        StackTraceElementCache cache = new StackTraceElementCache(10);
+        StackTraceElement element = StackTrace.element("a.B", "c", "B.java", 1);
+
+        assertNull(cache.get("\tat a.B.c(B.java:1)"));
+        assertSame(element, cache.put("\tat a.B.c(B.java:1)", element));
+        assertSame(element, cache.get("\tat a.B.c(B.java:1)"));
+        // Concurrent insertion retains the first element
+        assertSame(element, cache.put("\tat a.B.c(B.java:1)", StackTrace.element("a.B", "c", "B.java", 1)));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        StackTraceElementCache cache = new StackTraceElementCache(1);
+        StackTraceElement first = StackTrace.element("a.B", "c");
+        StackTraceElement second = StackTrace.element("a.B", "d");
+
+        cache.put("first", first);
+        cache.put("second", second);
+
+        assertNull(cache.get("first"));
+        assertSame(second, cache.get("second"));
+        assertEquals(1, cache.getEvictionCount());
+
+        StackTraceElementCache bigger = new StackTraceElementCache(100);
+        for (int i = 0; i < 1000; i++) {
+            bigger.put("line" + i, first);
+        }
+        assertThat(bigger.size(), lessThanOrEqualTo(100));
+        assertEquals(1000 - bigger.size(), bigger.getEvictionCount());
+
+        bigger.clear();
+        assertEquals(0, bigger.size());
+    }
+
+    @Test
+    public void internNames() {
+        StackTraceElementCache cache = new StackTraceElementCache(10);
+        String name = cache.intern(new String("a.B"));
+        assertSame(name, cache.intern(new String("a.B")));
+    }
+
+    @Test
+    public void rejectInvalidSize() {
+        try {
+            new StackTraceElementCache(0);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void shareFramesBetweenThreaddumps() {
+        StackTraceElementCache cache = new StackTraceElementCache(100);
+        ThreadDumpFactory factory = new ThreadDumpFactory().frameCache(cache);
+        String dump = Util.multiline(
+                "\"a\" prio=5 tid=0x1 nid=0x2 runnable",
+                "   java.lang.Thread.State: RUNNABLE",
+                "\tat a.B.c(B.java:1)",
+                "\tat a.B.d(B.java:2)",
+                "",
+                "\"b\" prio=5 tid=0x3 nid=0x4 runnable",
+                "   java.lang.Thread.State: RUNNABLE",
+                "\tat a.B.c(B.java:1)",
+                ""
+        );
+
+        List<StackTraceElement> frames = new ArrayList<StackTraceElement>();
+        for (int i = 0; i < 2; i++) {
+            for (ThreadDumpThread thread: factory.fromString(dump).getThreads()) {
+                frames.addAll(thread.getStackTrace().getElements());
+            }
+        }
+
+        assertEquals(6, frames.size());
+        assertEquals(2, cache.size());
+        assertEquals(4, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // Both frames declared by the same class
+        assertSame(frames.get(0).getClassName(), frames.get(1).getClassName());
+        for (StackTraceElement frame: frames) {
+            if (frame.getMethodName().equals("c")) {
+                assertSame(frames.get(0), frame);
+            }
+        }
+    }
+}
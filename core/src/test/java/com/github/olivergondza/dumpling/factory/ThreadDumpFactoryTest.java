@@ -29,27 +29,35 @@ import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.spy;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.annotation.Nonnull;
 
@@ -75,6 +83,8 @@ import com.github.olivergondza.dumpling.model.ThreadStatus;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
+import com.github.olivergondza.dumpling.query.BlockingTree;
+import com.github.olivergondza.dumpling.query.Deadlocks;
 
 public class ThreadDumpFactoryTest {
 
@@ -1008,6 +1018,229 @@ public class ThreadDumpFactoryTest {
         assertEquals(Short.MIN_VALUE, (long) sut.getNid());
     }
 
+    @Test
+    public void threadNameWithLinebreakAndQuotes() throws Exception {
+        for (String nl: Arrays.asList("\n", "\r\n")) {
+            String dump = "\"multi" + nl + "line\" prio=5 tid=0x1 nid=0x2 runnable" + nl +
+                    "   java.lang.Thread.State: RUNNABLE" + nl +
+                    "\tat java.lang.Thread.run(Thread.java:745)" + nl + nl +
+                    "\"a\"quoted\" name\" prio=5 tid=0x3 nid=0x4 runnable" + nl +
+                    "   java.lang.Thread.State: RUNNABLE" + nl
+            ;
+            ThreadDumpThreadSet threads = FACTORY.fromString(dump).getThreads();
+
+            ThreadDumpThread multiline = threads.where(nameIs("multi" + nl + "line")).onlyThread();
+            assertThat(multiline.getStackTrace().size(), equalTo(1));
+            assertEquals(1L, (long) multiline.getTid());
+
+            ThreadDumpThread quoted = threads.where(nameIs("a\"quoted\" name")).onlyThread();
+            assertEquals(3L, (long) quoted.getTid());
+        }
+    }
+
+    @Test
+    public void parseInParallel() throws Exception {
+        ThreadDumpFactory parallel = new ThreadDumpFactory().failOnErrors(true).parallelism(4);
+        for (String resource: Arrays.asList("oraclejdk-1.7.0_51.log", "openjdk-11.0.2.log", "crlf.log", "ownable-synchronizers.log")) {
+            ThreadDumpRuntime expected = runtimeFrom(resource);
+            ThreadDumpRuntime actual = parallel.fromStream(Util.resource(getClass(), resource));
+
+            assertEquals(resource, expected.toString(Mode.MACHINE), actual.toString(Mode.MACHINE));
+        }
+
+        try {
+            parallel.fromStream(Util.resource(getClass(), "broken-synchronizers.log"));
+            fail();
+        } catch (IllegalRuntimeStateException e) {
+            assertThat(e.getMessage(), startsWith("Unable to parse ownable synchronizer: "));
+        }
+
+        try {
+            parallel.parallelism(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void parseMappedFile() throws Exception {
+        List<String> resources = Arrays.asList(
+                "oraclejdk-1.7.0_51.log", "openjdk-11.0.2.log", "crlf.log", "ownable-synchronizers.log", "no-tabs.log",
+                "jrockit-1.6.log", "issue-71.log"
+        );
+        ThreadDumpFactory factory = new ThreadDumpFactory();
+        for (String resource: resources) {
+            ThreadDumpRuntime expected = factory.fromStream(Util.resource(getClass(), resource));
+            ThreadDumpRuntime actual = factory.fromFile(Util.asFile(Util.resource(getClass(), resource)));
+
+            assertEquals(resource, expected.toString(Mode.MACHINE), actual.toString(Mode.MACHINE));
+        }
+
+        // Names are decoded the same way as for streams
+        String dump = "\"Thread áéí\" prio=5 tid=0x1 nid=0x2 runnable\n" +
+                "   java.lang.Thread.State: RUNNABLE\n" +
+                "\tat java.lang.Thread.run(Thread.java:745)\n"
+        ;
+        byte[] bytes = dump.getBytes("UTF-8");
+        File file = File.createTempFile("dumpling", "mapped");
+        file.deleteOnExit();
+        Files.write(file.toPath(), bytes);
+        assertEquals(
+                FACTORY.fromStream(new ByteArrayInputStream(bytes)).toString(Mode.MACHINE),
+                FACTORY.fromFile(file).toString(Mode.MACHINE)
+        );
+    }
+
+    @Test
+    public void lazyStackTraces() throws Exception {
+        List<String> resources = Arrays.asList(
+                "oraclejdk-1.7.0_51.log", "openjdk-11.0.2.log", "crlf.log", "ownable-synchronizers.log", "no-tabs.log",
+                "jrockit-1.6.log", "issue-71.log", "issue-46.log", "in-object-wait.log", "runnable-in-object-wait.log",
+                "multiple-monitors-on-single-frame.log", "self-lock.log", "openjdk-1.8.log"
+        );
+        for (String resource: resources) {
+            StackTraceElementCache cache = new StackTraceElementCache(StackTraceElementCache.DEFAULT_SIZE);
+            ThreadDumpFactory factory = new ThreadDumpFactory().frameCache(cache).lazyStackTraces(true);
+            ThreadDumpRuntime expected = new ThreadDumpFactory().fromFile(Util.asFile(Util.resource(getClass(), resource)));
+            ThreadDumpRuntime actual = factory.fromFile(Util.asFile(Util.resource(getClass(), resource)));
+
+            // Only the innermost frames of some threads are decoded while parsing, none for the lock analysis
+            long decoded = cache.getHitCount() + cache.getMissCount();
+            assertThat(resource, decoded, lessThanOrEqualTo((long) actual.getThreads().size()));
+            assertEquals(resource, expected.getThreads().getBlockedThreads().toString(), actual.getThreads().getBlockedThreads().toString());
+            new Deadlocks().query(actual.getThreads());
+            new BlockingTree().query(actual.getThreads());
+
+            assertEquals(resource, expected.toString(Mode.MACHINE), actual.toString(Mode.MACHINE));
+            List<ThreadDumpThread> expectedThreads = new ArrayList<ThreadDumpThread>(expected.getThreads().getThreadsAsSet());
+            List<ThreadDumpThread> actualThreads = new ArrayList<ThreadDumpThread>(actual.getThreads().getThreadsAsSet());
+            for (int i = 0; i < expectedThreads.size(); i++) {
+                StackTrace trace = actualThreads.get(i).getStackTrace();
+                assertEquals(resource, expectedThreads.get(i).getStackTrace(), trace);
+                assertEquals(resource, expectedThreads.get(i).getStackTrace().hashCode(), trace.hashCode());
+            }
+        }
+    }
+
+    @Test
+    public void readCompressedAndArchived() throws Exception {
+        String[] resources = new String[] { "oraclejdk-1.7.0_51.log", "openjdk-11.0.2.log", "crlf.log" };
+        byte[][] contents = new byte[resources.length][];
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < resources.length; i++) {
+            contents[i] = Util.asString(Util.resource(getClass(), resources[i])).getBytes();
+            expected.add(runtimeFrom(resources[i]).toString(Mode.MACHINE));
+        }
+        String longName = "dir/" + String.format("%0120d", 0) + "/" + resources[2];
+
+        File gz = File.createTempFile("dumpling", ".gz");
+        gz.deleteOnExit();
+        Files.write(gz.toPath(), gzip(contents[0]));
+        assertEquals(expected.get(0), FACTORY.fromFile(gz).toString(Mode.MACHINE));
+        assertEquals(expected.get(0), FACTORY.fromStream(new ByteArrayInputStream(gzip(contents[0]))).toString(Mode.MACHINE));
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        ZipOutputStream zos = new ZipOutputStream(zip);
+        zos.putNextEntry(new ZipEntry("dir/"));
+        for (int i = 0; i < resources.length; i++) {
+            zos.putNextEntry(new ZipEntry("dir/" + resources[i]));
+            zos.write(contents[i]);
+        }
+        zos.close();
+
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        for (int i = 0; i < resources.length; i++) {
+            String name = i == 2 ? longName : resources[i];
+            if (name.length() > 100) {
+                tarEntry(tar, "././@LongLink", 'L', (name + "\0").getBytes("UTF-8"));
+            }
+            tarEntry(tar, name, '0', contents[i]);
+        }
+        tar.write(new byte[1024]);
+
+        List<String> zipNames = Arrays.asList("dir/" + resources[0], "dir/" + resources[1], "dir/" + resources[2]);
+        List<String> tarNames = Arrays.asList(resources[0], resources[1], longName);
+        for (int parallelism: Arrays.asList(1, 3)) {
+            ThreadDumpFactory factory = new ThreadDumpFactory().failOnErrors(true).parallelism(parallelism);
+
+            assertArchive(zipNames, expected, factory.fromArchive(new ByteArrayInputStream(zip.toByteArray())));
+            assertArchive(tarNames, expected, factory.fromArchive(new ByteArrayInputStream(tar.toByteArray())));
+            assertArchive(tarNames, expected, factory.fromArchive(new ByteArrayInputStream(gzip(tar.toByteArray()))));
+
+            // Single entry
+            assertEquals(expected.get(1), factory.fromArchive(new ByteArrayInputStream(zip.toByteArray()), zipNames.get(1)).toString(Mode.MACHINE));
+            assertEquals(expected.get(2), factory.fromArchive(new ByteArrayInputStream(tar.toByteArray()), tarNames.get(2)).toString(Mode.MACHINE));
+            assertNull(factory.fromArchive(new ByteArrayInputStream(zip.toByteArray()), "no-such.log"));
+            assertNull(factory.fromArchive(new ByteArrayInputStream(gzip(contents[0])), "no-such.log"));
+            assertEquals(expected.get(0), factory.fromArchive(new ByteArrayInputStream(gzip(contents[0])), "").toString(Mode.MACHINE));
+        }
+
+        File tgz = File.createTempFile("dumpling", ".tar.gz");
+        tgz.deleteOnExit();
+        Files.write(tgz.toPath(), gzip(tar.toByteArray()));
+        assertEquals(tarNames, FACTORY.archiveEntries(tgz));
+        assertEquals(Collections.singletonList(""), FACTORY.archiveEntries(gz));
+        assertEquals(expected.get(1), FACTORY.fromArchive(tgz, tarNames.get(1)).toString(Mode.MACHINE));
+        assertEquals(expected.get(0), FACTORY.fromArchive(gz, "").toString(Mode.MACHINE));
+        assertNull(FACTORY.fromArchive(gz, "no-such.log"));
+
+        try {
+            FACTORY.fromStream(new ByteArrayInputStream(zip.toByteArray()));
+            fail();
+        } catch (IllegalRuntimeStateException ex) {
+            assertThat(ex.getMessage(), startsWith("Expected single threaddump, archive contains 3"));
+        }
+    }
+
+    private void assertArchive(List<String> names, List<String> expected, Map<String, ThreadDumpRuntime> actual) {
+        assertEquals(names, new ArrayList<String>(actual.keySet()));
+        int i = 0;
+        for (ThreadDumpRuntime runtime: actual.values()) {
+            assertEquals(names.get(i), expected.get(i++), runtime.toString(Mode.MACHINE));
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(content);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static void tarEntry(ByteArrayOutputStream tar, String name, char type, byte[] content) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes("UTF-8");
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+        tarField(header, 100, "0000644");
+        tarField(header, 108, "0000000");
+        tarField(header, 116, "0000000");
+        tarField(header, 124, String.format("%011o", content.length));
+        tarField(header, 136, String.format("%011o", 0));
+        header[156] = (byte) type;
+        tarField(header, 257, "ustar");
+        header[263] = '0';
+        header[264] = '0';
+
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b: header) {
+            checksum += b & 0xff;
+        }
+        tarField(header, 148, String.format("%06o", checksum));
+
+        tar.write(header);
+        tar.write(content);
+        tar.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static void tarField(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes();
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+        header[offset + bytes.length] = 0;
+    }
+
     @Test
     public void parseLong() throws Exception {
         String top = "0xffffffffffffffff";
@@ -0,0 +1,166 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.ThreadDumpGenerator;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.Distribution;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.GeneratedLock;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.GeneratedThread;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.Topology;
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+import com.github.olivergondza.dumpling.query.BlockingTree;
+import com.github.olivergondza.dumpling.query.Deadlocks;
+
+public class ThreadDumpGeneratorTest {
+
+    /**
+     * Construct runtime directly from generated threads.
+     */
+    public static @Nonnull ThreadDumpRuntime runtime(@Nonnull ThreadDumpGenerator generator) {
+        Set<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        for (GeneratedThread thread: generator.generate()) {
+            List<ThreadLock.Monitor> monitors = new ArrayList<ThreadLock.Monitor>();
+            for (Map.Entry<GeneratedLock, Integer> monitor: thread.getMonitors().entrySet()) {
+                monitors.add(new ThreadLock.Monitor(lock(monitor.getKey()), monitor.getValue()));
+            }
+            List<ThreadLock> synchronizers = new ArrayList<ThreadLock>();
+            for (GeneratedLock synchronizer: thread.getSynchronizers()) {
+                synchronizers.add(lock(synchronizer));
+            }
+
+            builders.add(new ThreadDumpThread.Builder()
+                    .setName(thread.getName())
+                    .setId(thread.getId())
+                    .setTid(thread.getTid())
+                    .setNid(thread.getNid())
+                    .setDaemon(thread.isDaemon())
+                    .setPriority(thread.getPriority())
+                    .setThreadStatus(ThreadStatus.fromString(thread.getStatus()))
+                    .setStacktrace(thread.getStackTrace())
+                    .setWaitingToLock(lock(thread.getWaitingToLock()))
+                    .setWaitingOnLock(lock(thread.getWaitingOnLock()))
+                    .setAcquiredMonitors(monitors)
+                    .setAcquiredSynchronizers(synchronizers)
+            );
+        }
+        return new ThreadDumpRuntime(builders, Collections.singletonList(ThreadDumpGenerator.HEADER));
+    }
+
+    private static ThreadLock lock(@CheckForNull GeneratedLock lock) {
+        return lock == null ? null : new ThreadLock(lock.getClassName(), lock.getId());
+    }
+
+    private static ThreadDumpRuntime parse(ThreadDumpGenerator generator) {
+        return new ThreadDumpFactory().failOnErrors(true).fromStream(
+                new ByteArrayInputStream(generator.toString().getBytes())
+        );
+    }
+
+    @Test
+    public void parsedMatchesConstructed() {
+        for (Topology topology: Topology.values()) {
+            for (double synchronizers: new double[] {0, 1}) {
+                ThreadDumpGenerator generator = new ThreadDumpGenerator()
+                        .threads(500).topology(topology, 7).synchronizers(synchronizers)
+                ;
+                String dump = generator.toString();
+
+                assertThat(topology + " " + synchronizers, parse(generator).toString(Mode.MACHINE), equalTo(dump));
+                assertThat(topology + " " + synchronizers, runtime(generator).toString(Mode.MACHINE), equalTo(dump));
+            }
+        }
+    }
+
+    @Test
+    public void topologies() {
+        ThreadDumpRuntime cycles = runtime(new ThreadDumpGenerator().threads(100).topology(Topology.CYCLE, 4).contended(0.4));
+        assertThat(new Deadlocks().query(cycles.getThreads()).getDeadlocks().size(), equalTo(10));
+
+        ThreadDumpRuntime chains = runtime(new ThreadDumpGenerator().threads(100).topology(Topology.CHAIN, 5).contended(0.5));
+        assertThat(new BlockingTree().query(chains.getThreads()).getRoots().size(), equalTo(10));
+        assertThat(new Deadlocks().query(chains.getThreads()).getDeadlocks().size(), equalTo(0));
+
+        ThreadDumpRuntime stars = runtime(new ThreadDumpGenerator().threads(100).topology(Topology.STAR, 10).contended(1).synchronizers(1));
+        assertThat(blockers(stars).size(), equalTo(10));
+
+        ThreadDumpRuntime trees = runtime(new ThreadDumpGenerator().threads(100).topology(Topology.TREE, 15).contended(0.3));
+        assertThat(new BlockingTree().query(trees.getThreads()).getRoots().size(), equalTo(2));
+        assertThat(blockers(trees).size(), equalTo(14));
+    }
+
+    private static Set<ThreadDumpThread> blockers(ThreadDumpRuntime runtime) {
+        Set<ThreadDumpThread> blockers = new HashSet<ThreadDumpThread>();
+        for (ThreadDumpThread thread: runtime.getThreads()) {
+            if (thread.getBlockingThread() != null) {
+                blockers.add(thread.getBlockingThread());
+            }
+        }
+        return blockers;
+    }
+
+    @Test
+    public void reproducible() {
+        ThreadDumpGenerator generator = new ThreadDumpGenerator().threads(200).topology(Topology.CHAIN, 3).depth(Distribution.exponential(5, 20, 200));
+        assertThat(generator.toString(), equalTo(generator.toString()));
+        assertThat(generator.toString(), not(equalTo(generator.seed(7).toString())));
+    }
+
+    @Test
+    public void scale() {
+        List<GeneratedThread> threads = new ThreadDumpGenerator().threads(100000)
+                .pools(100, "worker-%d-%d").topology(Topology.STAR, 50).topology(Topology.CYCLE, 2)
+                .depth(Distribution.uniform(10, 100))
+                .generate()
+        ;
+        assertThat(threads.size(), equalTo(100000));
+        assertThat(threads.get(0).getName(), equalTo("worker-1-1"));
+        assertThat(threads.get(99999).getName(), equalTo("worker-100-1000"));
+        for (GeneratedThread thread: threads) {
+            int depth = thread.getStackTrace().length;
+            assertThat(thread.getName(), depth >= 6 && depth <= 100 + 7, equalTo(true));
+        }
+    }
+}
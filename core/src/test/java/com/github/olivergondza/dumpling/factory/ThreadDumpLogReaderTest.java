@@ -0,0 +1,166 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+
+public class ThreadDumpLogReaderTest {
+
+    private final ThreadDumpFactory factory = new ThreadDumpFactory().failOnErrors(true);
+
+    private static final String[] DUMPS = new String[] {
+            "jstack/producer-consumer.log", "jstack/blocking-chain.log", "jstack/contention.log"
+    };
+    private static final String[] TIMESTAMPS = new String[] {
+            "2020-01-01 10:00:00", "2020-01-01 10:01:00", "2020-01-01 10:02:00"
+    };
+
+    @Test
+    public void readAll() throws Exception {
+        ThreadDumpLogReader reader = reader(log());
+        for (int i = 0; i < DUMPS.length; i++) {
+            assertTrue(reader.hasNext());
+            assertThreaddump(i, reader.next());
+            assertEquals(date(TIMESTAMPS[i]), reader.getTimestamp());
+        }
+        assertFalse(reader.hasNext());
+        reader.close();
+    }
+
+    @Test
+    public void skipToNth() throws Exception {
+        ThreadDumpLogReader reader = reader(log());
+        assertEquals(2, reader.skip(2));
+        assertThreaddump(2, reader.next());
+        assertEquals(0, reader.skip(1));
+
+        reader = reader(log());
+        assertTrue(reader.hasNext()); // Parsed already
+        assertEquals(1, reader.skip(1));
+        assertThreaddump(1, reader.next());
+    }
+
+    @Test
+    public void timeRange() throws Exception {
+        ThreadDumpLogReader reader = reader(log()).between(date("2020-01-01 10:00:30"), date("2020-01-01 10:01:30"));
+        assertThreaddump(1, reader.next());
+        assertFalse(reader.hasNext());
+
+        reader = reader(log()).between(date(TIMESTAMPS[1]), null);
+        assertThreaddump(1, reader.next());
+        assertThreaddump(2, reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void withoutTimestamps() throws Exception {
+        String log = Util.multiline(
+                "Starting application",
+                dump(0, null),
+                "Unrelated line",
+                dump(1, null)
+        );
+
+        ThreadDumpLogReader reader = reader(log);
+        assertThreaddump(0, reader.next());
+        assertNull(reader.getTimestamp());
+        assertThreaddump(1, reader.next());
+        assertFalse(reader.hasNext());
+
+        assertFalse(reader(log).between(date(TIMESTAMPS[0]), null).hasNext());
+    }
+
+    @Test
+    public void backToBackWithoutTrailer() throws Exception {
+        String log = Util.multiline(
+                withoutTrailer(dump(0, null)),
+                withoutTrailer(dump(1, null))
+        );
+
+        ThreadDumpLogReader reader = reader(log);
+        assertThreaddump(0, reader.next());
+        assertNull(reader.getTimestamp());
+        assertThreaddump(1, reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void noThreaddumps() throws Exception {
+        assertFalse(reader(Util.multiline("Starting application", "Application stopped")).hasNext());
+    }
+
+    private ThreadDumpLogReader reader(String log) {
+        return factory.fromLog(new ByteArrayInputStream(log.getBytes()));
+    }
+
+    // Threaddumps interleaved with application output and heap summary
+    private String log() throws IOException {
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < DUMPS.length; i++) {
+            log.append("INFO: Application running").append(Util.NL);
+            log.append(dump(i, TIMESTAMPS[i]));
+            log.append("Heap").append(Util.NL);
+            log.append(" PSYoungGen      total 76288K, used 3932K").append(Util.NL);
+        }
+        log.append("INFO: Application stopped").append(Util.NL);
+        return log.toString();
+    }
+
+    // Replace timestamp of the threaddump
+    private String dump(int i, String timestamp) {
+        String dump = Util.asString(Util.resource(DUMPS[i]));
+        dump = dump.substring(dump.indexOf("Full thread dump"));
+        return timestamp == null ? dump : timestamp + Util.NL + dump;
+    }
+
+    // Cut JNI references and trailing empty lines so the last thread is the last line
+    private String withoutTrailer(String dump) {
+        return dump.substring(0, dump.indexOf("JNI global")).trim();
+    }
+
+    private void assertThreaddump(int i, ThreadDumpRuntime actual) {
+        ThreadDumpRuntime expected = factory.fromStream(Util.resource(DUMPS[i]));
+        assertThat(actual.getThreads().toString(Mode.MACHINE), equalTo(expected.getThreads().toString(Mode.MACHINE)));
+    }
+
+    private static Date date(String timestamp) throws Exception {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(timestamp);
+    }
+}
@@ -1,6 +1,13 @@
 package com.github.olivergondza.dumpling.model;
 
+import static com.github.olivergondza.dumpling.Util.only;
+import static com.github.olivergondza.dumpling.Util.resource;
+import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
@@ -10,6 +17,7 @@ import java.util.HashSet;
 import org.junit.Test;
 
 import com.github.olivergondza.dumpling.factory.IllegalRuntimeStateException;
+import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
 import com.github.olivergondza.dumpling.model.ThreadLock.Monitor;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
@@ -53,4 +61,35 @@ public class ProcessRuntimeTest {
             ));
         }
     }
+
+    @Test
+    public void lockIndex() {
+        ThreadDumpRuntime runtime = new ThreadDumpFactory().fromStream(resource("jstack/blocking-chain.log"));
+        LockIndex<ThreadDumpThread> index = runtime.getLockIndex();
+        ThreadDumpThread root = runtime.getThreads().where(nameIs("root")).onlyThread();
+        ThreadDumpThread blocking1 = runtime.getThreads().where(nameIs("blocking1")).onlyThread();
+
+        ThreadLock lock = only(blocking1.getAcquiredMonitors());
+        assertThat(index.getMonitorOwner(lock), equalTo(blocking1));
+        assertThat(index.getMonitorWaiters(lock), contains(root));
+        assertThat(index.getSynchronizerOwner(lock), nullValue());
+        assertThat(index.getSynchronizerWaiters(lock), empty());
+
+        assertThat(root.getBlockingThread(), equalTo(blocking1));
+        assertThat(blocking1.getBlockedThreads().onlyThread(), equalTo(root));
+
+        runtime = new ThreadDumpFactory().fromStream(resource("jstack/ReentrantLock-parking-blockage.log"));
+        index = runtime.getLockIndex();
+        ThreadDumpThread owner = runtime.getThreads().where(nameIs("Thread-1")).onlyThread();
+        ThreadDumpThread main = runtime.getThreads().where(nameIs("main")).onlyThread();
+
+        lock = only(owner.getAcquiredSynchronizers());
+        assertThat(index.getSynchronizerOwner(lock), equalTo(owner));
+        assertThat(index.getSynchronizerWaiters(lock), contains(main));
+        assertThat(index.getMonitorWaiters(lock), empty());
+
+        assertThat(main.getBlockingThread(), equalTo(owner));
+        assertThat(owner.getBlockedThreads().onlyThread(), equalTo(main));
+        assertThat(main.getBlockedThreads().isEmpty(), equalTo(true));
+    }
 }
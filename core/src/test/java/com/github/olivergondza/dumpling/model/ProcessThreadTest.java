@@ -33,9 +33,13 @@ import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
+
+import javax.annotation.Nonnull;
 
 import org.junit.Test;
 
@@ -109,6 +113,105 @@ public class ProcessThreadTest {
         assertEquals("Thread-1", rlb.onlyThread().getBlockingThread().getName());
     }
 
+    @Test
+    public void acquiredLocks() {
+        ThreadLock monitor = new ThreadLock("hudson.model.Queue", 1);
+        ThreadLock synchronizer = new ThreadLock("java.util.concurrent.locks.ReentrantLock$NonfairSync", 2);
+        StackTraceElement frame = StackTrace.element("hudson.model.Queue", "maintain", "Queue.java", 1106);
+        LinkedHashSet<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        builders.add(new ThreadDumpThread.Builder().setName("t").setId(1).setStacktrace(frame, frame)
+                .setThreadStatus(ThreadStatus.RUNNABLE)
+                .setAcquiredMonitors(new ThreadLock.Monitor(monitor, 0), new ThreadLock.Monitor(monitor, 1))
+                .setAcquiredSynchronizers(synchronizer)
+        );
+        ThreadDumpThread thread = new ThreadDumpRuntime(builders, Collections.<String>emptyList()).getThreads().onlyThread();
+
+        assertThat(thread.getAcquiredMonitors(), equalTo(Collections.singleton(monitor)));
+        assertThat(thread.getAcquiredSynchronizers(), equalTo(Collections.singleton(synchronizer)));
+        assertThat(thread.getAcquiredLocks(), equalTo(new LinkedHashSet<ThreadLock>(Arrays.asList(monitor, synchronizer))));
+
+        assertThat(thread.holdsLock(monitor), equalTo(true));
+        assertThat(thread.holdsLock(synchronizer), equalTo(true));
+        assertThat(thread.holdsMonitor(monitor), equalTo(true));
+        assertThat(thread.holdsMonitor(synchronizer), equalTo(false));
+        assertThat(thread.holdsSynchronizer(synchronizer), equalTo(true));
+        assertThat(thread.holdsSynchronizer(monitor), equalTo(false));
+        assertThat(thread.holdsLock(new ThreadLock("hudson.model.Queue", 3)), equalTo(false));
+
+        try {
+            thread.getAcquiredLocks().clear();
+            fail();
+        } catch (UnsupportedOperationException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void combinePredicates() {
+        ThreadDumpThread thread = factory.fromStream(Util.resource("jstack/producer-consumer.log")).getThreads().where(nameIs("blocked_thread")).onlyThread();
+
+        List<String> evaluated = new ArrayList<String>();
+        ProcessThread.Predicate expensive = new Recording("expensive", 100, 0.1, true, evaluated);
+        ProcessThread.Predicate cheap = new Recording("cheap", 1, 0.5, true, evaluated);
+        ProcessThread.Predicate selective = new Recording("selective", 5, 0.01, false, evaluated);
+        ProcessThread.Predicate unestimated = new ProcessThread.Predicate() {
+            @Override
+            public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
+                return true;
+            }
+        };
+
+        // Rejects early in the order of cost per chance to reject
+        ProcessThread.EstimatedPredicate all = ProcessThread.allOf(expensive, cheap, selective, unestimated);
+        assertThat(all.isValid(thread), equalTo(false));
+        assertThat(evaluated, equalTo(Arrays.asList("cheap", "selective")));
+        assertEquals(1 + 0.5 * 5 + 0.5 * 0.01 * 10 + 0.5 * 0.01 * 0.5 * 100, all.getCost(), 0.0001);
+        assertEquals(0.5 * 0.01 * 0.5 * 0.1, all.getSelectivity(), 0.0001);
+
+        // Accepts early in the order of cost per chance to accept
+        evaluated.clear();
+        ProcessThread.EstimatedPredicate any = ProcessThread.anyOf(selective, expensive, cheap);
+        assertThat(any.isValid(thread), equalTo(true));
+        assertThat(evaluated, equalTo(Arrays.asList("cheap")));
+        assertEquals(1 - 0.5 * 0.9 * 0.99, any.getSelectivity(), 0.0001);
+
+        assertThat(ProcessThread.allOf().isValid(thread), equalTo(true));
+        assertThat(ProcessThread.anyOf().isValid(thread), equalTo(false));
+        assertThat(ProcessThread.allOf(nameIs("blocked_thread"), waitingToLock("hudson.model.Queue")).isValid(thread), equalTo(true));
+    }
+
+    private static final class Recording implements ProcessThread.EstimatedPredicate {
+        private final String name;
+        private final double cost;
+        private final double selectivity;
+        private final boolean result;
+        private final List<String> evaluated;
+
+        private Recording(String name, double cost, double selectivity, boolean result, List<String> evaluated) {
+            this.name = name;
+            this.cost = cost;
+            this.selectivity = selectivity;
+            this.result = result;
+            this.evaluated = evaluated;
+        }
+
+        @Override
+        public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
+            evaluated.add(name);
+            return result;
+        }
+
+        @Override
+        public double getCost() {
+            return cost;
+        }
+
+        @Override
+        public double getSelectivity() {
+            return selectivity;
+        }
+    }
+
     @Test @SuppressWarnings("null")
     public void failSanityCheck() {
         try {
@@ -27,8 +27,11 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -64,4 +67,57 @@ public class StackTraceTest {
 
         assertThat(st.toString(), equalTo(String.format("%n\tat Yyy.xxx(Yyy.java:42)%n\tat Yyy.xxx(Yyy.java)%n")));
     }
+
+    @Test
+    public void compact() {
+        StackTraceElement outer = StackTrace.element("Thread", "run", "Thread.java", 42);
+        StackTraceElement middle = StackTrace.element("Pool", "work", "Pool.java", 7);
+        StackTrace a = new StackTrace(StackTrace.element("Task", "a"), middle, outer);
+        StackTrace b = new StackTrace(StackTrace.element("Task", "b"), middle, outer);
+
+        StackTraceTrie trie = new StackTraceTrie();
+        StackTrace compactA = trie.intern(a);
+        StackTrace compactB = trie.intern(b);
+
+        assertThat(trie.intern(new StackTrace(a.getElements())), sameInstance(compactA));
+        assertThat(compactA, not(equalTo(compactB)));
+        assertThat(compactA.getElement(2), sameInstance(compactB.getElement(2)));
+        trie.seal();
+
+        for (StackTrace[] pair: new StackTrace[][] {{a, compactA}, {b, compactB}}) {
+            StackTrace plain = pair[0];
+            StackTrace compact = pair[1];
+            assertThat(compact, equalTo(plain));
+            assertThat(plain, equalTo(compact));
+            assertThat(compact.hashCode(), equalTo(plain.hashCode()));
+            assertThat(compact.size(), equalTo(plain.size()));
+            assertThat(compact.getElements(), equalTo(plain.getElements()));
+            assertThat(compact.getElement(1), equalTo(plain.getElement(1)));
+            assertThat(compact.getElement(3), nullValue());
+            assertThat(compact.toString(), equalTo(plain.toString()));
+        }
+
+        // Equal traces of different tries
+        assertThat(new StackTraceTrie().intern(a), equalTo(compactA));
+        assertThat(new StackTraceTrie().intern(a), not(equalTo(compactB)));
+    }
+
+    @Test
+    public void iterateCompact() {
+        StackTrace plain = new StackTrace(
+                StackTrace.element("Task", "a"), StackTrace.element("Pool", "work", "Pool.java", 7), StackTrace.element("Thread", "run")
+        );
+        StackTrace compact = new StackTraceTrie().intern(plain);
+
+        // Walked from the trie nodes before any random access
+        List<StackTraceElement> elements = new ArrayList<StackTraceElement>();
+        for (StackTraceElement element: compact.getElements()) {
+            elements.add(element);
+        }
+        assertThat(elements, equalTo(plain.getElements()));
+        assertThat(compact.getElements().hashCode(), equalTo(plain.getElements().hashCode()));
+        assertThat(compact.getHead(), equalTo(plain.getHead()));
+        assertThat(compact.getElements().get(2), equalTo(plain.getElement(2)));
+        assertThat(compact.getElements(), equalTo(plain.getElements()));
+    }
 }
@@ -23,20 +23,33 @@
  */
 package com.github.olivergondza.dumpling.model;
 
+import static com.github.olivergondza.dumpling.model.ProcessThread.evaluating;
 import static com.github.olivergondza.dumpling.model.ProcessThread.nameContains;
 import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.regex.Pattern;
 
+import javax.annotation.Nonnull;
+
 import com.github.olivergondza.dumpling.factory.JvmRuntimeFactory;
 import org.hamcrest.CoreMatchers;
 import org.junit.Test;
 
 import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator;
 import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
+import com.github.olivergondza.dumpling.factory.ThreadDumpGeneratorTest;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
 
 public class ThreadSetTest {
@@ -59,4 +72,156 @@ public class ThreadSetTest {
         ThreadSet main = threads.where(it -> "main".equals(it.getName()));
         assertThat(main.size(), CoreMatchers.equalTo(1));
     }
+
+    @Test
+    public void setAlgebra() throws Exception {
+        // Below and above the bit set threshold
+        setAlgebra(new ThreadDumpFactory().fromStream(Util.resource("jstack/blocking-chain.log")));
+        ThreadDumpRuntime large = ThreadDumpGeneratorTest.runtime(new ThreadDumpGenerator().threads(BitSetThreads.THRESHOLD * 4));
+        assertThat(large.getThreads().getThreadsAsSet() instanceof BitSetThreads, equalTo(true));
+        setAlgebra(large);
+    }
+
+    private void setAlgebra(ThreadDumpRuntime runtime) {
+        ThreadDumpThreadSet all = runtime.getThreads();
+        ThreadDumpThreadSet even = all.where(new Ordinal(2));
+        ThreadDumpThreadSet third = all.where(new Ordinal(3));
+
+        List<ProcessThread<?, ?, ?>> union = new ArrayList<ProcessThread<?, ?, ?>>();
+        List<ProcessThread<?, ?, ?>> intersection = new ArrayList<ProcessThread<?, ?, ?>>();
+        List<ProcessThread<?, ?, ?>> difference = new ArrayList<ProcessThread<?, ?, ?>>();
+        for (ThreadDumpThread thread: all) {
+            boolean e = even.contains(thread);
+            boolean t = third.contains(thread);
+            if (e || t) union.add(thread);
+            if (e && t) intersection.add(thread);
+            if (e && !t) difference.add(thread);
+        }
+
+        assertThat(new HashSet<ThreadDumpThread>(even.union(third).getThreadsAsSet()), equalTo(new HashSet(union)));
+        assertThat(new ArrayList<ThreadDumpThread>(even.intersection(third).getThreadsAsSet()), equalTo((List) intersection));
+        assertThat(new ArrayList<ThreadDumpThread>(even.ignoring(third).getThreadsAsSet()), equalTo((List) difference));
+
+        assertThat(even.union(third), equalTo(third.union(even)));
+        assertThat(even.union(all), equalTo(all));
+        assertThat(even.intersection(all), equalTo(even));
+        assertThat(even.ignoring(all), equalTo(runtime.getEmptyThreadSet()));
+        assertThat(all.derive(new ArrayList<ThreadDumpThread>(even.getThreadsAsSet())), equalTo(even));
+        assertThat(all.containsAll(even.getThreadsAsSet()), equalTo(true));
+        assertThat(even.containsAll(all.getThreadsAsSet()), equalTo(false));
+        assertThat(even.getThreadsAsSet().hashCode(), equalTo(new HashSet<ThreadDumpThread>(even.getThreadsAsSet()).hashCode()));
+
+        try {
+            even.union(new ThreadDumpFactory().fromStream(Util.resource("jstack/blocking-chain.log")).getThreads());
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void frameLookups() throws Exception {
+        frameLookups(new ThreadDumpFactory().fromStream(Util.resource("jstack/blocking-chain.log")));
+        frameLookups(ThreadDumpGeneratorTest.runtime(new ThreadDumpGenerator().threads(BitSetThreads.THRESHOLD * 4)));
+    }
+
+    private void frameLookups(ThreadDumpRuntime runtime) {
+        ThreadDumpThreadSet all = runtime.getThreads();
+        ThreadDumpThreadSet even = all.where(new Ordinal(2));
+
+        for (ThreadDumpThreadSet set: Arrays.asList(all, even, runtime.getEmptyThreadSet())) {
+            for (String method: Arrays.asList("java.lang.Thread.sleep", "java.lang.Object.wait", "java.lang.Thread.run", "no.such.Class.method", "nodots")) {
+                assertThat(method, set.inMethod(method), equalTo(set.where(evaluating(method))));
+            }
+
+            for (String className: Arrays.asList("java.lang.Thread", "java.util.concurrent.ThreadPoolExecutor", "java.util", "no.such.Class")) {
+                assertThat(className, set.inClass(className), equalTo(set.where(new InClass(className, false))));
+                assertThat(className, set.inPackagePrefix(className), equalTo(set.where(new InClass(className, true))));
+            }
+        }
+
+        assertThat(all.inPackagePrefix("").size(), equalTo(all.where(new InClass("", true)).size()));
+    }
+
+    @Test
+    public void idLookups() throws Exception {
+        idLookups(new ThreadDumpFactory().fromStream(Util.resource("jstack/blocking-chain.log")));
+        idLookups(ThreadDumpGeneratorTest.runtime(new ThreadDumpGenerator().threads(BitSetThreads.THRESHOLD * 4)));
+    }
+
+    private void idLookups(ThreadDumpRuntime runtime) {
+        ThreadDumpThreadSet even = runtime.getThreads().where(new Ordinal(2));
+        for (ThreadDumpThread thread: runtime.getThreads()) {
+            if (thread.getId() != null) assertThat(runtime.forId(thread.getId()), sameInstance(thread));
+            if (thread.getTid() != null) assertThat(runtime.forTid(thread.getTid()), sameInstance(thread));
+            if (thread.getNid() != null) assertThat(runtime.forNid(thread.getNid()), sameInstance(thread));
+
+            ThreadDumpThread expected = even.contains(thread) ? thread : null;
+            assertThat(even.forTid(thread.getTid()), equalTo(expected));
+            assertThat(runtime.getEmptyThreadSet().forTid(thread.getTid()), nullValue());
+        }
+
+        assertThat(runtime.forTid(-1), nullValue());
+        assertThat(runtime.getThreads().forNid(-1), nullValue());
+    }
+
+    @Test
+    public void parallelWhere() throws Exception {
+        parallelWhere(new ThreadDumpFactory().fromStream(Util.resource("jstack/blocking-chain.log")));
+        parallelWhere(ThreadDumpGeneratorTest.runtime(new ThreadDumpGenerator().threads(BitSetThreads.THRESHOLD * 4)));
+    }
+
+    private void parallelWhere(ThreadDumpRuntime runtime) {
+        ThreadDumpThreadSet all = runtime.getThreads();
+        ProcessThread.Predicate pred = ProcessThread.anyOf(
+                evaluating("java.lang.Thread.sleep"), nameContains("blocked"), new Ordinal(3)
+        );
+        for (ThreadDumpThreadSet set: Arrays.asList(all, all.where(new Ordinal(2)), runtime.getEmptyThreadSet())) {
+            ThreadDumpThreadSet expected = set.where(pred);
+            for (int parallelism: Arrays.asList(1, 2, 4)) {
+                ThreadDumpThreadSet actual = set.where(pred, parallelism);
+                assertThat(actual, equalTo(expected));
+                assertThat(new ArrayList<ThreadDumpThread>(actual.getThreadsAsSet()), equalTo(new ArrayList<ThreadDumpThread>(expected.getThreadsAsSet())));
+            }
+        }
+
+        try {
+            all.where(pred, 0);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    private static final class InClass implements ProcessThread.Predicate {
+        private final String className;
+        private final boolean prefix;
+
+        private InClass(String className, boolean prefix) {
+            this.className = className;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
+            for (StackTraceElement element: thread.getStackTrace().getElements()) {
+                String name = element.getClassName();
+                if (prefix ? name.startsWith(className) : name.equals(className)) return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class Ordinal implements ProcessThread.Predicate {
+        private final int modulo;
+
+        private Ordinal(int modulo) {
+            this.modulo = modulo;
+        }
+
+        @Override
+        public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
+            return thread.ordinal % modulo == 0;
+        }
+    }
 }
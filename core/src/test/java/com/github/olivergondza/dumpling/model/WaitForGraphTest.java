@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import static com.github.olivergondza.dumpling.Util.resource;
+import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.ThreadDumpGenerator;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.Topology;
+import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
+import com.github.olivergondza.dumpling.factory.ThreadDumpGeneratorTest;
+import com.github.olivergondza.dumpling.model.WaitForGraph.Kind;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+
+public class WaitForGraphTest {
+
+    @Test
+    public void blockingTree() {
+        ThreadDumpRuntime runtime = new ThreadDumpFactory().fromStream(resource("jstack/blocking-tree.log"));
+        WaitForGraph<ThreadDumpThread> graph = runtime.getWaitForGraph();
+        assertThat(graph, equalTo(runtime.getWaitForGraph()));
+        assertThat(graph.size(), equalTo(runtime.getThreads().size()));
+
+        int a = node(runtime, graph, "a");
+        int aa = node(runtime, graph, "aa");
+        int aaa = node(runtime, graph, "aaa");
+        int ab = node(runtime, graph, "ab");
+        int b = node(runtime, graph, "b");
+
+        assertThat(graph.target(aa, Kind.MONITOR), equalTo(a));
+        assertThat(graph.target(a, Kind.MONITOR), equalTo(-1));
+        assertThat(graph.outDegree(aaa), equalTo(1));
+        assertThat(graph.outDegree(a), equalTo(0));
+        assertThat(graph.inDegree(a, Kind.MONITOR), equalTo(2));
+        assertThat(graph.inDegree(a, Kind.SYNCHRONIZER), equalTo(0));
+        assertThat(graph.inDegree(aa), equalTo(1));
+        assertThat(graph.source(aa, Kind.MONITOR, 0), equalTo(aaa));
+
+        int[] bfs = graph.breadthFirst(a, true);
+        assertThat(bfs.length, equalTo(4));
+        assertThat(bfs[0], equalTo(a));
+        assertThat(bfs[3], equalTo(aaa));
+        assertThat(graph.breadthFirst(aaa, false), equalTo(new int[] {aaa, aa, a}));
+        assertThat(graph.breadthFirst(aaa, false, EnumSet.of(Kind.SYNCHRONIZER)), equalTo(new int[] {aaa}));
+
+        assertThat(graph.isReachable(aaa, a), equalTo(true));
+        assertThat(graph.isReachable(a, aaa), equalTo(false));
+        assertThat(graph.isReachable(ab, b), equalTo(false));
+        BitSet reachable = graph.reachable(a, true);
+        assertThat(reachable.cardinality(), equalTo(4));
+        assertThat(reachable.get(ab), equalTo(true));
+    }
+
+    @Test
+    public void synchronizer() {
+        ThreadDumpRuntime runtime = new ThreadDumpFactory().fromStream(resource("jstack/ReentrantLock-parking-blockage.log"));
+        WaitForGraph<ThreadDumpThread> graph = runtime.getWaitForGraph();
+
+        int main = node(runtime, graph, "main");
+        int owner = node(runtime, graph, "Thread-1");
+        assertThat(graph.target(main, Kind.SYNCHRONIZER), equalTo(owner));
+        assertThat(graph.target(main, Kind.MONITOR), equalTo(-1));
+        assertThat(graph.inDegree(owner, Kind.SYNCHRONIZER), equalTo(1));
+    }
+
+    @Test
+    public void consistentWithBlockingThreads() {
+        ThreadDumpRuntime runtime = ThreadDumpGeneratorTest.runtime(new ThreadDumpGenerator().threads(2000)
+                .topology(Topology.TREE, 15).topology(Topology.CYCLE, 3).topology(Topology.STAR, 6).synchronizers(0.5)
+        );
+        WaitForGraph<ThreadDumpThread> graph = runtime.getWaitForGraph();
+        Set<Kind> blocking = EnumSet.of(Kind.MONITOR, Kind.SYNCHRONIZER);
+
+        for (int node = 0; node < graph.size(); node++) {
+            ThreadDumpThread thread = graph.getThread(node);
+            assertThat(graph.indexOf(thread), equalTo(node));
+
+            ThreadDumpThread blockingThread = thread.getBlockingThread();
+            int[] out = graph.breadthFirst(node, false, blocking);
+            if (blockingThread == null) {
+                assertThat(out.length, equalTo(1));
+            } else {
+                assertThat(graph.getThread(out[1]), equalTo(blockingThread));
+            }
+
+            Set<ThreadDumpThread> blocked = new HashSet<ThreadDumpThread>();
+            for (Kind kind: blocking) {
+                for (int i = 0; i < graph.inDegree(node, kind); i++) {
+                    blocked.add(graph.getThread(graph.source(node, kind, i)));
+                }
+            }
+            assertThat(blocked, equalTo(thread.getBlockedThreads().getThreadsAsSet()));
+        }
+    }
+
+    private static int node(ThreadDumpRuntime runtime, WaitForGraph<ThreadDumpThread> graph, String name) {
+        return graph.indexOf(runtime.getThreads().where(nameIs(name)).onlyThread());
+    }
+}
@@ -28,6 +28,7 @@ import static com.github.olivergondza.dumpling.model.ProcessThread.nameContains;
 import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertEquals;
 
 import java.io.InputStream;
@@ -42,8 +43,11 @@ import javax.annotation.Nonnull;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.github.olivergondza.dumpling.ThreadDumpGenerator;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.Topology;
 import com.github.olivergondza.dumpling.Util;
 import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
+import com.github.olivergondza.dumpling.factory.ThreadDumpGeneratorTest;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
@@ -201,4 +205,39 @@ public class BlockingTreeTest {
         assertEquals("main", blocked.getRoot().getName());
         assertThat(blocked.getLeaves().size(), equalTo(0));
     }
+
+    @Test
+    public void deepAndWideTrees() {
+        ThreadDumpRuntime chain = ThreadDumpGeneratorTest.runtime(
+                new ThreadDumpGenerator().threads(10000).topology(Topology.CHAIN, 10000).contended(1)
+        );
+        BlockingTree.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> deep = new BlockingTree().query(chain.getThreads());
+        assertThat(deep.involvedThreads().size(), equalTo(10000));
+        String out = deep.toString();
+        assertThat(out, containsString(String.format("%n%s\"", repeat('\t', 9999))));
+
+        Tree<ThreadDumpThread> limited = Util.only(new BlockingTree().maxDepth(2).query(chain.getThreads()).getTrees());
+        Tree<ThreadDumpThread> grandchild = Util.only(Util.only(limited.getLeaves()).getLeaves());
+        assertThat(grandchild.getLeaves().size(), equalTo(0));
+        assertThat(grandchild.getOmittedLeaves(), equalTo(1));
+
+        ThreadDumpRuntime star = ThreadDumpGeneratorTest.runtime(
+                new ThreadDumpGenerator().threads(5000).topology(Topology.STAR, 5000).contended(1)
+        );
+        Tree<ThreadDumpThread> full = Util.only(new BlockingTree().query(star.getThreads()).getTrees());
+        assertThat(full.getLeaves().size(), equalTo(4999));
+
+        BlockingTree.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> narrow = new BlockingTree().maxWidth(10).query(star.getThreads());
+        Tree<ThreadDumpThread> root = Util.only(narrow.getTrees());
+        assertThat(root.getLeaves().size(), equalTo(10));
+        assertThat(root.getOmittedLeaves(), equalTo(4989));
+        assertThat(narrow.involvedThreads().size(), equalTo(11));
+        assertThat(narrow.toString(), containsString(String.format("%n\t... 4989 more%n")));
+    }
+
+    private static String repeat(char c, int times) {
+        char[] chars = new char[times];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
 }
@@ -27,16 +27,23 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.startsWith;
+import static com.github.olivergondza.dumpling.model.ProcessThread.nameContains;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
 import org.junit.Test;
 
+import com.github.olivergondza.dumpling.ThreadDumpGenerator;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.Topology;
 import com.github.olivergondza.dumpling.Util;
 import com.github.olivergondza.dumpling.factory.JvmRuntimeFactory;
 import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
+import com.github.olivergondza.dumpling.factory.ThreadDumpGeneratorTest;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
@@ -162,6 +169,78 @@ public class DeadlocksTest {
         )));
     }
 
+    @Test
+    public void discoverDeadlockOfMonitorAndSynchronizer() {
+        final Object monitor = new Object();
+        final ReentrantLock lock = new ReentrantLock();
+
+        new Thread("Mixed deadlock thread A") {
+            @Override
+            public void run() {
+                lock.lock();
+                try {
+                    Util.pause(100);
+                    synchronized (monitor) {
+                        hashCode();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }.start();
+
+        new Thread("Mixed deadlock thread B") {
+            @Override
+            public void run() {
+                synchronized (monitor) {
+                    Util.pause(100);
+                    lock.lock();
+                    lock.unlock();
+                }
+            }
+        }.start();
+
+        Util.pause(1000);
+
+        JvmRuntime runtime = runtime();
+        // Deadlocks of other tests are still around
+        JvmThreadSet mixed = runtime.getThreads().where(nameContains(Pattern.compile("^Mixed deadlock thread [AB]$")));
+        Result<JvmThreadSet, JvmRuntime, JvmThread> result = new Deadlocks().query(mixed);
+        assertEquals("One deadlock should be present\n\n" + runtime.getThreads(), 1, result.getDeadlocks().size());
+        assertThat(result.getDeadlocks().iterator().next(), equalTo(mixed));
+        assertThat(result.toString(), containsString(String.format("%nDeadlock #1:%n")));
+    }
+
+    @Test
+    public void reportCyclesBlockingInputThreads() {
+        ThreadDumpRuntime runtime = ThreadDumpGeneratorTest.runtime(
+                new ThreadDumpGenerator().threads(50000).topology(Topology.CYCLE, 5).contended(0.5).synchronizers(0.5)
+        );
+
+        Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> all = new Deadlocks().query(runtime.getThreads());
+        assertThat(all.getDeadlocks().size(), equalTo(5000));
+        assertThat(all.involvedThreads().size(), equalTo(25000));
+        for (ThreadDumpThreadSet deadlock: all.getDeadlocks()) {
+            assertThat(deadlock.size(), equalTo(5));
+            // Listed in the order threads block each other
+            ThreadDumpThread previous = null;
+            for (ThreadDumpThread thread: deadlock) {
+                if (previous != null) {
+                    assertThat(previous.getBlockingThread(), equalTo(thread));
+                }
+                previous = thread;
+            }
+        }
+
+        ThreadDumpThreadSet deadlocked = all.getDeadlocks().iterator().next();
+        ThreadDumpThread member = deadlocked.iterator().next();
+        Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> single = new Deadlocks().query(
+                runtime.getThreadSet(Collections.singleton(member))
+        );
+        assertThat(single.getDeadlocks().size(), equalTo(1));
+        assertThat(single.involvedThreads(), equalTo(deadlocked));
+    }
+
     private Set<JvmThreadSet> deadlocks(JvmRuntime runtime) {
         return new Deadlocks().query(runtime.getThreads()).getDeadlocks();
     }
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.ThreadDumpGenerator;
+import com.github.olivergondza.dumpling.factory.ThreadDumpGeneratorTest;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
+import com.github.olivergondza.dumpling.query.HotSpots.Entry;
+
+public class HotSpotsTest {
+
+    @Test
+    public void histogram() {
+        StackTraceElement run1 = StackTrace.element("a.A", "run", "A.java", 1);
+        StackTraceElement run2 = StackTrace.element("a.A", "run", "A.java", 2);
+        StackTraceElement main = StackTrace.element("a.A", "main", "A.java", 3);
+        StackTraceElement b = StackTrace.element("b.B", "m", "B.java", 10);
+        StackTraceElement c = StackTrace.element("c.C", "m", "C.java", 20);
+        StackTraceElement d = StackTrace.element("D", "m", "D.java", 30);
+        StackTraceElement sleep = StackTrace.nativeElement("java.lang.Thread", "sleep");
+
+        Set<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        builders.add(new ThreadDumpThread.Builder().setName("t1").setId(1).setThreadStatus(ThreadStatus.RUNNABLE).setStacktrace(run1, b, main));
+        builders.add(new ThreadDumpThread.Builder().setName("t2").setId(2).setThreadStatus(ThreadStatus.RUNNABLE).setStacktrace(run2, b));
+        builders.add(new ThreadDumpThread.Builder().setName("t3").setId(3).setThreadStatus(ThreadStatus.RUNNABLE).setStacktrace(c, b));
+        builders.add(new ThreadDumpThread.Builder().setName("t4").setId(4).setThreadStatus(ThreadStatus.SLEEPING).setStacktrace(sleep, b));
+        builders.add(new ThreadDumpThread.Builder().setName("t5").setId(5).setThreadStatus(ThreadStatus.RUNNABLE).setStacktrace(d));
+        ThreadDumpThreadSet threads = new ThreadDumpRuntime(builders, Collections.<String>emptyList()).getThreads();
+
+        HotSpots.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> all = new HotSpots().query(threads);
+        assertThat(all.getMethods().toString(), equalTo(
+                "[a.A.run 2/2, D.m 1/1, c.C.m 1/1, java.lang.Thread.sleep 1/1, b.B.m 0/4, a.A.main 0/1]"
+        ));
+        assertThat(all.getClasses().toString(), equalTo("[a.A 2/2, D 1/1, c.C 1/1, java.lang.Thread 1/1, b.B 0/4]"));
+        assertThat(all.getPackages().toString(), equalTo("[a 2/2,  1/1, c 1/1, java.lang 1/1, b 0/4]"));
+        assertThat(all.involvedThreads().size(), equalTo(5));
+
+        HotSpots.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> runnable = new HotSpots()
+                .inStatus(ThreadStatus.RUNNABLE).top(2).query(threads)
+        ;
+        assertThat(runnable.getMethods().toString(), equalTo("[a.A.run 2/2, D.m 1/1]"));
+        assertThat(runnable.getPackages().toString(), equalTo("[a 2/2,  1/1]"));
+        assertThat(runnable.involvedThreads().size(), equalTo(4));
+
+        String out = runnable.toString();
+        assertThat(out, containsString(String.format("%n       2  50.0%%        2  50.0%%  a.A.run%n")));
+        assertThat(out, containsString(String.format("%n       1  25.0%%        1  25.0%%  <default>%n")));
+        assertThat(out, containsString(String.format("%nThreads: 4; Frames: 8; Methods: 5; Classes: 4; Packages: 4%n")));
+
+        assertThat(new HotSpots().inStatus().query(threads).getMethods().size(), equalTo(0));
+    }
+
+    @Test
+    public void countMatchesFrameIndex() {
+        ThreadDumpRuntime runtime = ThreadDumpGeneratorTest.runtime(new ThreadDumpGenerator().threads(20000).pools(5, "pool-%d-thread-%d"));
+        ThreadDumpThreadSet threads = runtime.getThreads();
+
+        HotSpots.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new HotSpots().top(Integer.MAX_VALUE).query(threads);
+        int flat = 0;
+        for (Entry entry: result.getMethods()) {
+            flat += entry.getFlat();
+            assertThat(entry.getName(), entry.getInclusive(), equalTo(threads.inMethod(entry.getName()).size()));
+        }
+
+        int nonEmpty = 0;
+        for (ThreadDumpThread thread: threads) {
+            if (thread.getStackTrace().size() > 0) nonEmpty++;
+        }
+        assertThat(flat, equalTo(nonEmpty));
+    }
+}
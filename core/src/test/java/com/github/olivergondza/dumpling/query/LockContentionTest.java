@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.ThreadDumpGenerator;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.Topology;
+import com.github.olivergondza.dumpling.factory.ThreadDumpGeneratorTest;
+import com.github.olivergondza.dumpling.model.LockIndex;
+import com.github.olivergondza.dumpling.model.ProcessThread;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
+import com.github.olivergondza.dumpling.query.LockContention.Contention;
+import com.github.olivergondza.dumpling.query.LockContention.LockClass;
+
+public class LockContentionTest {
+
+    @Test
+    public void rankLocksAndLockClasses() {
+        ThreadLock session1 = new ThreadLock("org.hibernate.Session", 1);
+        ThreadLock session2 = new ThreadLock("org.hibernate.Session", 2);
+        ThreadLock sync = new ThreadLock("java.util.concurrent.locks.ReentrantLock$NonfairSync", 3);
+
+        StackTraceElement owning = StackTrace.element("o.O", "m", "O.java", 1);
+        StackTraceElement run = StackTrace.element("w.W", "run", "W.java", 10);
+        StackTraceElement other = StackTrace.element("w.W", "other", "W.java", 20);
+        StackTraceElement[] parked = new StackTraceElement[] {
+                StackTrace.nativeElement("sun.misc.Unsafe", "park"),
+                StackTrace.element("java.util.concurrent.locks.LockSupport", "park", "LockSupport.java", 175),
+                StackTrace.element("java.util.concurrent.locks.ReentrantLock", "lock", "ReentrantLock.java", 285),
+                StackTrace.element("s.S", "use", "S.java", 5),
+        };
+        ThreadLock condition = new ThreadLock("java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject", 4);
+        StackTraceElement[] idle = new StackTraceElement[] {
+                StackTrace.nativeElement("sun.misc.Unsafe", "park"),
+                StackTrace.element("java.util.concurrent.locks.LockSupport", "park", "LockSupport.java", 186),
+                StackTrace.element("java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject", "await", "AbstractQueuedSynchronizer.java", 2043),
+                StackTrace.element("java.util.concurrent.LinkedBlockingQueue", "take", "LinkedBlockingQueue.java", 442),
+                StackTrace.element("java.util.concurrent.ThreadPoolExecutor", "getTask", "ThreadPoolExecutor.java", 1068),
+        };
+
+        Set<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        builders.add(new ThreadDumpThread.Builder().setName("o1").setId(1).setThreadStatus(ThreadStatus.RUNNABLE)
+                .setStacktrace(owning).setAcquiredMonitors(new ThreadLock.Monitor(session1, 0))
+        );
+        builders.add(new ThreadDumpThread.Builder().setName("o2").setId(2).setThreadStatus(ThreadStatus.RUNNABLE)
+                .setStacktrace(owning).setAcquiredMonitors(new ThreadLock.Monitor(session2, 0))
+        );
+        builders.add(new ThreadDumpThread.Builder().setName("o3").setId(3).setThreadStatus(ThreadStatus.RUNNABLE)
+                .setStacktrace(owning).setAcquiredSynchronizers(sync)
+        );
+        builders.add(blocked("w1", 4, session1, run));
+        builders.add(blocked("w2", 5, session1, run));
+        builders.add(blocked("w3", 6, session2, other));
+        builders.add(new ThreadDumpThread.Builder().setName("p1").setId(7).setThreadStatus(ThreadStatus.PARKED)
+                .setStacktrace(parked).setWaitingOnLock(sync)
+        );
+        builders.add(new ThreadDumpThread.Builder().setName("p2").setId(8).setThreadStatus(ThreadStatus.PARKED)
+                .setStacktrace(parked).setWaitingOnLock(sync)
+        );
+        // Idle pool worker waits for a task, not for a lock
+        builders.add(new ThreadDumpThread.Builder().setName("i1").setId(9).setThreadStatus(ThreadStatus.PARKED)
+                .setStacktrace(idle).setWaitingOnLock(condition)
+        );
+        ThreadDumpThreadSet threads = new ThreadDumpRuntime(builders, Collections.<String>emptyList()).getThreads();
+
+        LockContention.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new LockContention().query(threads);
+        List<Contention<ThreadDumpThreadSet, ThreadDumpThread>> locks = result.getLocks();
+        assertThat(locks.size(), equalTo(3));
+        for (Contention<ThreadDumpThreadSet, ThreadDumpThread> contention: locks) {
+            assertThat(contention.getLock(), not(equalTo(condition)));
+        }
+        assertThat(locks.get(0).getLock(), equalTo(session1));
+        assertThat(locks.get(0).getOwner().getName(), equalTo("o1"));
+        assertThat(locks.get(0).getOwnerFrame(), equalTo(owning));
+        assertThat(locks.get(0).getAcquiringFrames(), equalTo(Collections.singletonMap(run, 2)));
+        assertThat(locks.get(1).getLock(), equalTo(sync));
+        assertThat(locks.get(1).getOwner().getName(), equalTo("o3"));
+        assertThat(locks.get(1).getOwnerFrame(), equalTo(null));
+        assertThat(locks.get(1).getAcquiringFrames(), equalTo(Collections.singletonMap(parked[3], 2)));
+        assertThat(locks.get(2).getLock(), equalTo(session2));
+        assertThat(locks.get(2).getWaiters().size(), equalTo(1));
+
+        List<LockClass> classes = result.getLockClasses();
+        assertThat(classes.size(), equalTo(2));
+        assertThat(classes.get(0).getClassName(), equalTo("org.hibernate.Session"));
+        assertThat(classes.get(0).getLocks(), equalTo(2));
+        assertThat(classes.get(0).getOwners(), equalTo(2));
+        assertThat(classes.get(0).getWaiters(), equalTo(3));
+        assertThat(classes.get(1).getClassName(), equalTo(sync.getClassName()));
+        assertThat(classes.get(1).getWaiters(), equalTo(2));
+        assertThat(result.involvedThreads().size(), equalTo(8));
+        assertThat(result.exitCode(), equalTo(3));
+
+        LockContention.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> top = new LockContention().top(1).query(threads);
+        assertThat(top.getLocks().size(), equalTo(1));
+        assertThat(top.getLockClasses().size(), equalTo(1));
+        assertThat(top.involvedThreads().size(), equalTo(3));
+
+        String out = top.toString();
+        assertThat(out, containsString(String.format(
+                "<0x1> (a org.hibernate.Session): 2 waiters%n  Owner: \"o1\" #1 at o.O.m(O.java:1)%n  Waiting 2 at w.W.run(W.java:10)%n"
+        )));
+        assertThat(out, containsString(String.format("%norg.hibernate.Session: 2 locks; Owners: 2; Waiters: 3%n")));
+        assertThat(out, containsString(String.format("%nContended locks: 3; Lock classes: 2; Waiters: 5%n")));
+
+        // Waiters outside of the set are not counted
+        ThreadDumpThreadSet subset = threads.where(ProcessThread.nameIs("w3"));
+        assertThat(new LockContention().query(subset).getLocks().get(0).getOwner().getName(), equalTo("o2"));
+    }
+
+    private ThreadDumpThread.Builder blocked(String name, long id, ThreadLock lock, StackTraceElement frame) {
+        return new ThreadDumpThread.Builder().setName(name).setId(id).setThreadStatus(ThreadStatus.BLOCKED)
+                .setStacktrace(frame).setWaitingToLock(lock)
+        ;
+    }
+
+    @Test
+    public void matchLockIndex() {
+        ThreadDumpRuntime runtime = ThreadDumpGeneratorTest.runtime(new ThreadDumpGenerator().threads(20000)
+                .topology(Topology.STAR, 50).contended(0.5).synchronizers(0.5)
+        );
+        LockIndex<ThreadDumpThread> index = runtime.getLockIndex();
+
+        LockContention.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new LockContention().query(runtime.getThreads());
+        assertThat(result.getLocks().isEmpty(), equalTo(false));
+        int previous = Integer.MAX_VALUE;
+        for (Contention<ThreadDumpThreadSet, ThreadDumpThread> contention: result.getLocks()) {
+            ThreadLock lock = contention.getLock();
+            int waiters = index.getMonitorWaiters(lock).size() + index.getSynchronizerWaiters(lock).size();
+            assertThat(contention.getWaiters().size(), equalTo(waiters));
+            assertThat(waiters <= previous, equalTo(true));
+            previous = waiters;
+
+            ThreadDumpThread owner = index.getMonitorWaiters(lock).isEmpty()
+                    ? index.getSynchronizerOwner(lock)
+                    : index.getMonitorOwner(lock)
+            ;
+            assertThat(contention.getOwner(), equalTo(owner));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.ThreadDumpGenerator;
+import com.github.olivergondza.dumpling.factory.ThreadDumpGeneratorTest;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
+import com.github.olivergondza.dumpling.query.StackClusters.Cluster;
+
+public class StackClustersTest {
+
+    private static final StackTraceElement A1 = StackTrace.element("a.A", "m", "A.java", 1);
+    private static final StackTraceElement A2 = StackTrace.element("a.A", "m", "A.java", 2);
+    private static final StackTraceElement B = StackTrace.element("b.B", "m", "B.java", 10);
+    private static final StackTraceElement C = StackTrace.element("c.C", "m", "C.java", 20);
+    private static final StackTraceElement D = StackTrace.element("d.D", "m", "D.java", 30);
+    private static final StackTraceElement X = StackTrace.nativeElement("x.X", "m");
+
+    @Test
+    public void cluster() {
+        Set<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        builders.add(new ThreadDumpThread.Builder().setName("t1").setId(1).setStacktrace(A1, B, C));
+        builders.add(new ThreadDumpThread.Builder().setName("t2").setId(2).setStacktrace(A1, B, C));
+        builders.add(new ThreadDumpThread.Builder().setName("t3").setId(3).setStacktrace(A2, B, C));
+        builders.add(new ThreadDumpThread.Builder().setName("t4").setId(4).setStacktrace(A1, B, D));
+        builders.add(new ThreadDumpThread.Builder().setName("t5").setId(5).setStacktrace(X));
+        ThreadDumpThreadSet threads = new ThreadDumpRuntime(builders, Collections.<String>emptyList()).getThreads();
+
+        assertThat(sizes(new StackClusters().query(threads)), equalTo("2 1 1 1"));
+        assertThat(sizes(new StackClusters().ignoreLineNumbers().query(threads)), equalTo("3 1 1"));
+        assertThat(sizes(new StackClusters().topFrames(2).query(threads)), equalTo("3 1 1"));
+        assertThat(sizes(new StackClusters().topFrames(0).query(threads)), equalTo("5"));
+
+        StackClusters.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new StackClusters()
+                .topFrames(2).ignoreLineNumbers().query(threads)
+        ;
+        assertThat(sizes(result), equalTo("4 1"));
+        Cluster<ThreadDumpThreadSet, ThreadDumpThread> largest = result.getClusters().get(0);
+        assertThat(largest.getRepresentative().getName(), equalTo("t1"));
+        assertThat(largest.getSignature(), equalTo(new StackTrace(
+                StackTrace.element("a.A", "m", "A.java"), StackTrace.element("b.B", "m", "B.java")
+        )));
+
+        String out = result.toString();
+        assertThat(out, containsString(String.format(
+                "%nCluster #1: 4 threads%n\"t1\" #1%n\tat a.A.m(A.java)%n\tat b.B.m(B.java)%n"
+        )));
+        assertThat(out, containsString(String.format("%nThreads: 5; Clusters: 2%n")));
+    }
+
+    @Test
+    public void outputScalesWithDistinctStacks() {
+        ThreadDumpRuntime runtime = ThreadDumpGeneratorTest.runtime(new ThreadDumpGenerator().threads(8000).pools(3, "pool-%d-thread-%d"));
+
+        Set<StackTrace> distinct = new HashSet<StackTrace>();
+        for (ThreadDumpThread thread: runtime.getThreads()) {
+            distinct.add(thread.getStackTrace());
+        }
+
+        StackClusters.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new StackClusters().query(runtime.getThreads());
+        assertThat(result.getClusters().size(), equalTo(distinct.size()));
+        assertThat(result.involvedThreads().size(), equalTo(distinct.size()));
+
+        int threads = 0;
+        int previous = Integer.MAX_VALUE;
+        for (Cluster<ThreadDumpThreadSet, ThreadDumpThread> cluster: result.getClusters()) {
+            assertThat(cluster.getThreads().size() <= previous, equalTo(true));
+            previous = cluster.getThreads().size();
+            threads += previous;
+        }
+        assertThat(threads, equalTo(8000));
+    }
+
+    private String sizes(StackClusters.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result) {
+        List<String> sizes = new ArrayList<String>();
+        for (Cluster<ThreadDumpThreadSet, ThreadDumpThread> cluster: result.getClusters()) {
+            sizes.add(String.valueOf(cluster.getThreads().size()));
+        }
+        return String.join(" ", sizes);
+    }
+}
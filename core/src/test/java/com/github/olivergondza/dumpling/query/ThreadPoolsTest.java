@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.ThreadDumpGenerator;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.Topology;
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.factory.JvmRuntimeFactory;
+import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
+import com.github.olivergondza.dumpling.factory.ThreadDumpGeneratorTest;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
+import com.github.olivergondza.dumpling.model.jvm.JvmRuntime;
+import com.github.olivergondza.dumpling.model.jvm.JvmThread;
+import com.github.olivergondza.dumpling.model.jvm.JvmThreadSet;
+import com.github.olivergondza.dumpling.query.ThreadPools.Pool;
+
+public class ThreadPoolsTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService saturated;
+    private ExecutorService idle;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (saturated != null) saturated.shutdownNow();
+        if (idle != null) idle.shutdownNow();
+    }
+
+    @Test
+    public void classifyWorkers() {
+        saturated = Executors.newFixedThreadPool(2, named("saturated-worker-"));
+        for (int i = 0; i < 2; i++) {
+            saturated.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        // Terminate
+                    }
+                }
+            });
+        }
+
+        idle = Executors.newFixedThreadPool(3, named("idle-worker-"));
+        ((ThreadPoolExecutor) idle).prestartAllCoreThreads();
+
+        Util.pause(500);
+
+        JvmRuntime runtime = new JvmRuntimeFactory().currentRuntime();
+        ThreadPools.Result<JvmThreadSet, JvmRuntime, JvmThread> result = new ThreadPools().query(runtime.getThreads());
+
+        Pool<JvmThreadSet> s = result.getPool("saturated-worker-*");
+        assertThat(s.getThreads().size(), equalTo(2));
+        assertThat(s.getBusy().size(), equalTo(2));
+        assertTrue(s.isExhausted());
+        assertThat(s.getSaturation(), equalTo(1D));
+
+        Pool<JvmThreadSet> i = result.getPool("idle-worker-*");
+        assertThat(i.getThreads().size(), equalTo(3));
+        assertThat(i.getIdle().size(), equalTo(3));
+        assertFalse(i.isExhausted());
+        assertThat(i.getSaturation(), equalTo(0D));
+
+        assertTrue(result.getPools().indexOf(s) < result.getPools().indexOf(i));
+        assertThat(result.toString(), containsString(String.format(
+                "* saturated-worker-*: 2 threads; Idle: 0; Busy: 2; Blocked: 0; Saturation: 100%%%n"
+        )));
+        assertThat(result.toString(), containsString(String.format(
+                "  idle-worker-*: 3 threads; Idle: 3; Busy: 0; Blocked: 0; Saturation: 0%%%n"
+        )));
+    }
+
+    @Test
+    public void generatedPools() {
+        ThreadDumpRuntime runtime = ThreadDumpGeneratorTest.runtime(new ThreadDumpGenerator()
+                .threads(1000).pools(4, "http-nio-8080-exec-%d-%d").topology(Topology.STAR, 10).contended(0.2)
+        );
+
+        ThreadPools.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new ThreadPools().query(runtime.getThreads());
+        assertThat(result.getPools().size(), equalTo(4));
+
+        int blocked = 0;
+        for (Pool<ThreadDumpThreadSet> pool: result.getPools()) {
+            assertThat(pool.getThreads().size(), equalTo(250));
+            assertThat(pool.getIdle().size() + pool.getBusy().size() + pool.getBlocked().size(), equalTo(250));
+            for (ThreadDumpThread thread: pool.getIdle()) {
+                assertThat(thread.getStackTrace().getElement(3).getMethodName(), equalTo("take"));
+            }
+            blocked += pool.getBlocked().size();
+        }
+        // All but the star centers
+        assertThat(blocked, equalTo(200 - 20));
+    }
+
+    @Test
+    public void ignoreJvmThreads() throws Exception {
+        ThreadDumpFactory factory = new ThreadDumpFactory();
+        String[] dumps = {"ReentrantLock-parking-blockage.log", "blocking-chain.log", "contention.log", "deadlock.log"};
+        for (String dump: dumps) {
+            ThreadDumpRuntime runtime = factory.fromStream(Util.resource("jstack/" + dump));
+            ThreadPools.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new ThreadPools().query(runtime.getThreads());
+            assertThat(dump, result.getPools().size(), equalTo(0));
+            assertThat(dump, result.exitCode(), equalTo(0));
+        }
+
+        // Recent JVMs name GC threads like pool workers
+        Set<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        builders.add(new ThreadDumpThread.Builder().setName("GC Thread#0").setNid(1).setThreadStatus(ThreadStatus.UNKNOWN));
+        builders.add(new ThreadDumpThread.Builder().setName("GC Thread#1").setNid(2).setThreadStatus(ThreadStatus.UNKNOWN));
+        ThreadDumpThreadSet gc = new ThreadDumpRuntime(builders, Collections.<String>emptyList()).getThreads();
+        assertThat(new ThreadPools().query(gc).getPools().size(), equalTo(0));
+    }
+
+    private static ThreadFactory named(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -26,11 +26,18 @@ package com.github.olivergondza.dumpling.query;
 import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
+import com.github.olivergondza.dumpling.ThreadDumpGenerator;
+import com.github.olivergondza.dumpling.ThreadDumpGenerator.Topology;
 import com.github.olivergondza.dumpling.Util;
 import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
+import com.github.olivergondza.dumpling.factory.ThreadDumpGeneratorTest;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
@@ -61,4 +68,55 @@ public class TopContendersTest {
         assertThat(contenders.getBlockers().size(), equalTo(1));
         assertThat(contenders.blockedBy(producerProcessThread).size(), equalTo(3));
     }
+
+    @Test
+    public void keepContendersBlockingEqualNumberOfThreads() {
+        ThreadDumpRuntime runtime = ThreadDumpGeneratorTest.runtime(
+                new ThreadDumpGenerator().threads(100).topology(Topology.STAR, 10).contended(1)
+        );
+
+        TopContenders.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> all = new TopContenders().query(runtime.getThreads());
+        assertThat(all.getBlockers().size(), equalTo(10));
+        assertThat(all.involvedThreads().size(), equalTo(100));
+
+        TopContenders.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> top = new TopContenders().top(3).query(runtime.getThreads());
+        List<ThreadDumpThread> expected = list(all.getBlockers()).subList(0, 3);
+        assertThat(list(top.getBlockers()), equalTo(expected));
+        for (ThreadDumpThread blocker: top.getBlockers()) {
+            assertThat(top.blockedBy(blocker).size(), equalTo(9));
+            assertThat(top.transitivelyBlockedBy(blocker), equalTo(9));
+        }
+
+        assertThat(new TopContenders().top(0).query(runtime.getThreads()).getBlockers().size(), equalTo(0));
+    }
+
+    @Test
+    public void rankByTransitivelyBlockedThreads() {
+        ThreadDumpRuntime runtime = ThreadDumpGeneratorTest.runtime(
+                new ThreadDumpGenerator().threads(100).topology(Topology.TREE, 15).topology(Topology.CYCLE, 4).contended(0.19)
+        );
+
+        TopContenders.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> contenders = new TopContenders().query(runtime.getThreads());
+        List<ThreadDumpThread> ranked = list(contenders.getBlockers());
+        assertThat(ranked.size(), equalTo(7 + 4));
+
+        // Tree root and inner nodes block 2 threads directly
+        int[] transitive = new int[] {14, 6, 6, 2, 2, 2, 2, 3, 3, 3, 3};
+        for (int i = 0; i < transitive.length; i++) {
+            ThreadDumpThread contender = ranked.get(i);
+            assertThat(contender.toString(), contenders.transitivelyBlockedBy(contender), equalTo(transitive[i]));
+        }
+
+        String out = contenders.toString();
+        assertThat(out, containsString(String.format("%n  Blocking 14 threads transitively%n")));
+        assertThat(out, containsString(String.format("%nBlocking threads: 11; Blocked threads: 8%n")));
+    }
+
+    private List<ThreadDumpThread> list(ThreadDumpThreadSet threads) {
+        List<ThreadDumpThread> list = new ArrayList<ThreadDumpThread>();
+        for (ThreadDumpThread thread: threads) {
+            list.add(thread);
+        }
+        return list;
+    }
 }
@@ -25,6 +25,10 @@ package com.github.olivergondza.dumpling.groovy;
 
 import com.github.olivergondza.dumpling.query.BlockingTree;
 import com.github.olivergondza.dumpling.query.Deadlocks;
+import com.github.olivergondza.dumpling.query.HotSpots;
+import com.github.olivergondza.dumpling.query.LockContention;
+import com.github.olivergondza.dumpling.query.StackClusters;
+import com.github.olivergondza.dumpling.query.ThreadPools;
 import com.github.olivergondza.dumpling.query.TopContenders;
 
 /**
@@ -47,4 +51,20 @@ public class Factories {
     public static TopContenders topContenders() {
         return new TopContenders();
     }
+
+    public static ThreadPools threadPools() {
+        return new ThreadPools();
+    }
+
+    public static StackClusters stackClusters() {
+        return new StackClusters();
+    }
+
+    public static HotSpots hotSpots() {
+        return new HotSpots();
+    }
+
+    public static LockContention lockContention() {
+        return new LockContention();
+    }
 }
@@ -55,11 +55,11 @@ class ThreadSetExtensions extends DelegatingMetaClass {
             case "intersect":
                 if (arguments.size() != 1) break
                 ThreadSet rhs = assertSetsCompatible(lhs, arguments[0])
-                return lhs.derive(DefaultGroovyMethods.intersect((Collection) lhs.threadsAsSet, (Collection) rhs.threadsAsSet))
+                return lhs.intersection(rhs)
             case "plus":
                 if (arguments.size() != 1) break
                 ThreadSet rhs = assertSetsCompatible(lhs, arguments[0])
-                return lhs.derive(DefaultGroovyMethods.plus(lhs.threadsAsSet, rhs.threadsAsSet))
+                return lhs.union(rhs)
         }
 
         return super.invokeMethod(object, methodName, arguments)
@@ -58,5 +58,9 @@ class GroovyRuntimeTest {
         runScript("rt.threads.query(blockingTree()) instanceof BlockingTree.Result")
         runScript("rt.threads.query(deadlocks()) instanceof Deadlocks.Result")
         runScript("rt.threads.query(topContenders()) instanceof TopContenders.Result")
+        runScript("rt.threads.query(threadPools()) instanceof ThreadPools.Result")
+        runScript("rt.threads.query(stackClusters()) instanceof StackClusters.Result")
+        runScript("rt.threads.query(hotSpots()) instanceof HotSpots.Result")
+        runScript("rt.threads.query(lockContention()) instanceof LockContention.Result")
     }
 }
@@ -0,0 +1,578 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Generator of synthetic threaddumps for scale testing.
+ *
+ * Threads are split into named pools sharing stack trace shapes. Configured fraction of threads is arranged into lock
+ * groups of given {@link Topology}, the rest is idle. Given the same configuration and seed, the output is identical.
+ *
+ * The threads are available both as jstack formatted text and as {@link GeneratedThread}s to be converted to the
+ * model builders, so parsed and directly constructed runtimes can be compared.
+ *
+ * <pre>
+ * String dump = new ThreadDumpGenerator().threads(10000).topology(Topology.CHAIN, 5).toString();
+ * </pre>
+ *
+ * @author ogondza
+ */
+public final class ThreadDumpGenerator {
+
+    public static final @Nonnull String HEADER = "Full thread dump Dumpling synthetic VM (1.0 mixed mode):";
+
+    private static final String MONITOR_WAIT = "WAITING (on object monitor)";
+    private static final String BLOCKED = "BLOCKED (on object monitor)";
+    private static final String PARKED = "WAITING (parking)";
+    private static final String SLEEPING = "TIMED_WAITING (sleeping)";
+    private static final String RUNNABLE = "RUNNABLE";
+
+    private static final String SYNCHRONIZER = "java.util.concurrent.locks.ReentrantLock$NonfairSync";
+    private static final String CONDITION = "java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject";
+    private static final String AQS = "java.util.concurrent.locks.AbstractQueuedSynchronizer";
+
+    private static final String[] PACKAGES = {"web", "service", "dao", "cache", "util", "messaging"};
+    private static final int PATHS_PER_POOL = 4;
+
+    private static final StackTraceElement[] POOL_BOTTOM = {
+            new StackTraceElement("java.util.concurrent.ThreadPoolExecutor", "runWorker", "ThreadPoolExecutor.java", 1142),
+            new StackTraceElement("java.util.concurrent.ThreadPoolExecutor$Worker", "run", "ThreadPoolExecutor.java", 617),
+            new StackTraceElement("java.lang.Thread", "run", "Thread.java", 745),
+    };
+
+    private static final StackTraceElement[] PARK = {
+            new StackTraceElement("sun.misc.Unsafe", "park", null, -2),
+            new StackTraceElement("java.util.concurrent.locks.LockSupport", "park", "LockSupport.java", 175),
+    };
+
+    private static final StackTraceElement[] LOCK = {
+            new StackTraceElement(AQS, "parkAndCheckInterrupt", "AbstractQueuedSynchronizer.java", 836),
+            new StackTraceElement(AQS, "acquireQueued", "AbstractQueuedSynchronizer.java", 870),
+            new StackTraceElement(AQS, "acquire", "AbstractQueuedSynchronizer.java", 1199),
+            new StackTraceElement(SYNCHRONIZER, "lock", "ReentrantLock.java", 209),
+            new StackTraceElement("java.util.concurrent.locks.ReentrantLock", "lock", "ReentrantLock.java", 285),
+    };
+
+    private static final StackTraceElement[] TAKE = {
+            new StackTraceElement(CONDITION, "await", "AbstractQueuedSynchronizer.java", 2039),
+            new StackTraceElement("java.util.concurrent.LinkedBlockingQueue", "take", "LinkedBlockingQueue.java", 442),
+            new StackTraceElement("java.util.concurrent.ThreadPoolExecutor", "getTask", "ThreadPoolExecutor.java", 1067),
+    };
+
+    private static final StackTraceElement[] SLEEP = {
+            new StackTraceElement("java.lang.Thread", "sleep", null, -2),
+    };
+
+    private static final StackTraceElement[] WAIT = {
+            new StackTraceElement("java.lang.Object", "wait", null, -2),
+            new StackTraceElement("java.lang.Object", "wait", "Object.java", 502),
+    };
+
+    private static final StackTraceElement[] READ = {
+            new StackTraceElement("java.net.SocketInputStream", "socketRead0", null, -2),
+            new StackTraceElement("java.net.SocketInputStream", "read", "SocketInputStream.java", 150),
+    };
+
+    /**
+     * Arrangement of lock group.
+     */
+    public enum Topology {
+        /**
+         * Every thread is blocked by its predecessor.
+         */
+        CHAIN,
+        /**
+         * All threads are blocked by the first one.
+         */
+        STAR,
+        /**
+         * Threads form a binary tree, every thread is blocked by its parent.
+         */
+        TREE,
+        /**
+         * Every thread is blocked by its predecessor and the first one by the last one, forming a deadlock.
+         */
+        CYCLE
+    }
+
+    private @Nonnegative int threads = 1000;
+    private @Nonnull Distribution depth = Distribution.uniform(10, 40);
+    private @Nonnegative int pools = 10;
+    private @Nonnull String poolNaming = "pool-%d-thread-%d";
+    private final @Nonnull List<Topology> topologies = new ArrayList<Topology>();
+    private final @Nonnull List<Integer> groupSizes = new ArrayList<Integer>();
+    private double contended = 0.5;
+    private double synchronizers = 0;
+    private long seed = 42;
+
+    /**
+     * Number of threads to generate.
+     */
+    public @Nonnull ThreadDumpGenerator threads(@Nonnegative int threads) {
+        if (threads < 0) throw new IllegalArgumentException("Negative thread count: " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Distribution of stack depths.
+     *
+     * Stacks are never shallower than the frames needed to represent thread state and the thread pool.
+     */
+    public @Nonnull ThreadDumpGenerator depth(@Nonnull Distribution depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    /**
+     * Number of thread pools and the thread name format.
+     *
+     * @param naming Format with pool number and thread number within the pool, both starting from 1.
+     */
+    public @Nonnull ThreadDumpGenerator pools(@Nonnegative int pools, @Nonnull String naming) {
+        if (pools < 1) throw new IllegalArgumentException("At least one pool needed: " + pools);
+        this.pools = pools;
+        this.poolNaming = naming;
+        return this;
+    }
+
+    /**
+     * Add lock group topology.
+     *
+     * Lock groups are created using added topologies in a round-robin fashion.
+     *
+     * @param size Number of threads in the group.
+     */
+    public @Nonnull ThreadDumpGenerator topology(@Nonnull Topology topology, @Nonnegative int size) {
+        if (size < 2) throw new IllegalArgumentException("Lock group needs at least 2 threads: " + size);
+        topologies.add(topology);
+        groupSizes.add(size);
+        return this;
+    }
+
+    /**
+     * Fraction of threads placed in lock groups, provided there is at least one topology added.
+     */
+    public @Nonnull ThreadDumpGenerator contended(double fraction) {
+        this.contended = fraction(fraction);
+        return this;
+    }
+
+    /**
+     * Fraction of lock groups using ownable synchronizers instead of monitors.
+     */
+    public @Nonnull ThreadDumpGenerator synchronizers(double fraction) {
+        this.synchronizers = fraction(fraction);
+        return this;
+    }
+
+    public @Nonnull ThreadDumpGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    private static double fraction(double fraction) {
+        if (fraction < 0 || fraction > 1) throw new IllegalArgumentException("Not a fraction: " + fraction);
+        return fraction;
+    }
+
+    /**
+     * Generate the threads.
+     */
+    public @Nonnull List<GeneratedThread> generate() {
+        return new Generation().run();
+    }
+
+    /**
+     * Write jstack formatted threaddump.
+     */
+    public void write(@Nonnull PrintStream out) {
+        out.format("%s%n%n", HEADER);
+        for (GeneratedThread thread: generate()) {
+            thread.write(out);
+            out.format("%n%n");
+        }
+    }
+
+    /**
+     * Jstack formatted threaddump.
+     */
+    @Override
+    public @Nonnull String toString() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer);
+        write(out);
+        out.close();
+        return buffer.toString();
+    }
+
+    private final class Generation {
+        private final @Nonnull Random random = new Random(seed);
+        private final @Nonnull List<GeneratedThread> out = new ArrayList<GeneratedThread>(threads);
+        private final int poolSize = Math.max(1, (threads + pools - 1) / pools);
+        private final @Nonnull Map<Integer, StackTraceElement[][]> paths = new LinkedHashMap<Integer, StackTraceElement[][]>();
+        private long address = 0x00000007d0000000L;
+
+        private @Nonnull List<GeneratedThread> run() {
+            int contendedCount = topologies.isEmpty() ? 0 : (int) (threads * contended);
+            int group = 0;
+            while (out.size() < contendedCount) {
+                int size = Math.min(groupSizes.get(group % groupSizes.size()), contendedCount - out.size());
+                if (size < 2) break;
+
+                group(topologies.get(group % topologies.size()), size, random.nextDouble() < synchronizers);
+                group++;
+            }
+
+            while (out.size() < threads) {
+                idle();
+            }
+            return out;
+        }
+
+        private void group(Topology topology, int size, boolean synchronizer) {
+            List<GeneratedLock> locks = new ArrayList<GeneratedLock>(size);
+            String monitorClass = "com.example.app.Resource" + random.nextInt(8);
+            for (int i = 0; i < size; i++) {
+                locks.add(lock(synchronizer ? SYNCHRONIZER : monitorClass));
+            }
+
+            for (int i = 0; i < size; i++) {
+                int parent;
+                switch (topology) {
+                    case CHAIN: parent = i - 1; break;
+                    case STAR: parent = i == 0 ? -1 : 0; break;
+                    case TREE: parent = i == 0 ? -1 : (i - 1) / 2; break;
+                    case CYCLE: parent = (i - 1 + size) % size; break;
+                    default: throw new AssertionError(topology);
+                }
+
+                GeneratedLock own = locks.get(i);
+                GeneratedThread thread;
+                if (parent == -1) {
+                    thread = thread(SLEEPING, SLEEP);
+                    if (!synchronizer) {
+                        thread.monitors.put(own, 1);
+                    }
+                } else if (synchronizer) {
+                    thread = thread(PARKED, PARK, LOCK);
+                    thread.waitingOnLock = locks.get(parent);
+                } else {
+                    thread = thread(BLOCKED);
+                    thread.waitingToLock = locks.get(parent);
+                    thread.monitors.put(own, thread.frames.length > 1 ? 1 : 0);
+                }
+
+                if (synchronizer) {
+                    thread.synchronizers.add(own);
+                }
+            }
+        }
+
+        private void idle() {
+            switch (random.nextInt(4)) {
+                case 0:
+                    thread(RUNNABLE, READ);
+                break;
+                case 1:
+                    thread(SLEEPING, SLEEP);
+                break;
+                case 2:
+                    thread(MONITOR_WAIT, WAIT).waitingOnLock = lock("java.lang.Object");
+                break;
+                default:
+                    thread(PARKED, PARK, TAKE).waitingOnLock = lock(CONDITION);
+            }
+        }
+
+        private GeneratedLock lock(String className) {
+            address += 0x18;
+            return new GeneratedLock(className, address);
+        }
+
+        private GeneratedThread thread(String status, StackTraceElement[]... head) {
+            int index = out.size();
+            int pool = index / poolSize;
+
+            List<StackTraceElement> frames = new ArrayList<StackTraceElement>();
+            for (StackTraceElement[] part: head) {
+                Collections.addAll(frames, part);
+            }
+            StackTraceElement[] path = paths(pool)[random.nextInt(PATHS_PER_POOL)];
+            int app = Math.max(1, depth.next(random) - frames.size() - POOL_BOTTOM.length);
+            app = Math.min(app, path.length);
+            for (int i = path.length - app; i < path.length; i++) {
+                frames.add(path[i]);
+            }
+            Collections.addAll(frames, POOL_BOTTOM);
+
+            GeneratedThread thread = new GeneratedThread(
+                    String.format(poolNaming, pool + 1, index % poolSize + 1),
+                    index + 1,
+                    0x00007f0000000000L + index * 0x800L,
+                    0x1000 + index,
+                    random.nextBoolean(),
+                    status,
+                    frames.toArray(new StackTraceElement[frames.size()])
+            );
+            out.add(thread);
+            return thread;
+        }
+
+        /**
+         * Application call paths shared by threads of the same pool.
+         */
+        private StackTraceElement[][] paths(int pool) {
+            StackTraceElement[][] poolPaths = paths.get(pool);
+            if (poolPaths == null) {
+                poolPaths = new StackTraceElement[PATHS_PER_POOL][];
+                for (int p = 0; p < PATHS_PER_POOL; p++) {
+                    StackTraceElement[] path = new StackTraceElement[Math.max(1, depth.max())];
+                    for (int i = 0; i < path.length; i++) {
+                        String pkg = PACKAGES[random.nextInt(PACKAGES.length)];
+                        String cls = "Service" + random.nextInt(100);
+                        path[i] = new StackTraceElement(
+                                "com.example." + pkg + "." + cls, "method" + random.nextInt(10), cls + ".java", random.nextInt(500) + 1
+                        );
+                    }
+                    poolPaths[p] = path;
+                }
+                paths.put(pool, poolPaths);
+            }
+            return poolPaths;
+        }
+    }
+
+    /**
+     * Thread as generated.
+     */
+    public static final class GeneratedThread {
+        private final @Nonnull String name;
+        private final long id;
+        private final long tid;
+        private final long nid;
+        private final boolean daemon;
+        private final @Nonnull String status;
+        private final @Nonnull StackTraceElement[] frames;
+        private @CheckForNull GeneratedLock waitingToLock;
+        private @CheckForNull GeneratedLock waitingOnLock;
+        private final @Nonnull Map<GeneratedLock, Integer> monitors = new LinkedHashMap<GeneratedLock, Integer>();
+        private final @Nonnull List<GeneratedLock> synchronizers = new ArrayList<GeneratedLock>();
+
+        private GeneratedThread(
+                @Nonnull String name, long id, long tid, long nid, boolean daemon, @Nonnull String status, @Nonnull StackTraceElement[] frames
+        ) {
+            this.name = name;
+            this.id = id;
+            this.tid = tid;
+            this.nid = nid;
+            this.daemon = daemon;
+            this.status = status;
+            this.frames = frames;
+        }
+
+        public @Nonnull String getName() {
+            return name;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getTid() {
+            return tid;
+        }
+
+        public long getNid() {
+            return nid;
+        }
+
+        public boolean isDaemon() {
+            return daemon;
+        }
+
+        public int getPriority() {
+            return 5;
+        }
+
+        /**
+         * Thread status as printed by jstack.
+         */
+        public @Nonnull String getStatus() {
+            return status;
+        }
+
+        public @Nonnull StackTraceElement[] getStackTrace() {
+            return frames.clone();
+        }
+
+        public @CheckForNull GeneratedLock getWaitingToLock() {
+            return waitingToLock;
+        }
+
+        public @CheckForNull GeneratedLock getWaitingOnLock() {
+            return waitingOnLock;
+        }
+
+        /**
+         * Acquired monitors mapped to the stack depth they were acquired at.
+         */
+        public @Nonnull Map<GeneratedLock, Integer> getMonitors() {
+            return Collections.unmodifiableMap(monitors);
+        }
+
+        public @Nonnull List<GeneratedLock> getSynchronizers() {
+            return Collections.unmodifiableList(synchronizers);
+        }
+
+        private void write(PrintStream out) {
+            out.format("\"%s\" #%d", name, id);
+            if (daemon) out.print(" daemon");
+            out.format(" prio=%d tid=0x%016x nid=0x%x", getPriority(), tid, nid);
+            out.format("%n   java.lang.Thread.State: %s", status);
+
+            for (int depth = 0; depth < frames.length; depth++) {
+                StackTraceElement frame = frames[depth];
+                String source = frame.isNativeMethod() ? "(Native Method)" : "(" + frame.getFileName() + ":" + frame.getLineNumber() + ")";
+                out.format("%n\tat %s.%s%s", frame.getClassName(), frame.getMethodName(), source);
+
+                if (depth == 0) {
+                    if (waitingToLock != null) {
+                        out.format("%n\t- waiting to lock %s", waitingToLock);
+                    }
+                    if (waitingOnLock != null) {
+                        out.format("%n\t- %s %s", status.equals(MONITOR_WAIT) ? "waiting on" : "parking to wait for", waitingOnLock);
+                    }
+                }
+
+                for (Map.Entry<GeneratedLock, Integer> monitor: monitors.entrySet()) {
+                    if (monitor.getValue() == depth) {
+                        out.format("%n\t- locked %s", monitor.getKey());
+                    }
+                }
+            }
+
+            if (!synchronizers.isEmpty()) {
+                out.format("%n%n   Locked ownable synchronizers:%n");
+                for (GeneratedLock synchronizer: synchronizers) {
+                    out.format("\t- %s%n", synchronizer);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(buffer);
+            write(out);
+            out.close();
+            return buffer.toString();
+        }
+    }
+
+    /**
+     * Monitor or synchronizer as generated.
+     */
+    public static final class GeneratedLock {
+        private final @Nonnull String className;
+        private final long id;
+
+        private GeneratedLock(@Nonnull String className, long id) {
+            this.className = className;
+            this.id = id;
+        }
+
+        public @Nonnull String getClassName() {
+            return className;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("<0x%016x> (a %s)", id, className);
+        }
+    }
+
+    /**
+     * Distribution of generated values.
+     */
+    public static abstract class Distribution {
+
+        private Distribution() {}
+
+        /*package*/ abstract int next(@Nonnull Random random);
+
+        /*package*/ abstract int max();
+
+        public static @Nonnull Distribution fixed(final @Nonnegative int value) {
+            return uniform(value, value);
+        }
+
+        public static @Nonnull Distribution uniform(final @Nonnegative int min, final @Nonnegative int max) {
+            if (min > max) throw new IllegalArgumentException("Empty range " + min + ".." + max);
+            return new Distribution() {
+                @Override int next(@Nonnull Random random) {
+                    return min + random.nextInt(max - min + 1);
+                }
+
+                @Override int max() {
+                    return max;
+                }
+            };
+        }
+
+        /**
+         * Long tailed distribution where most values are close to min.
+         */
+        public static @Nonnull Distribution exponential(final @Nonnegative int min, final @Nonnegative int mean, final @Nonnegative int max) {
+            if (min > mean || mean > max) throw new IllegalArgumentException("Expected min <= mean <= max: " + min + ", " + mean + ", " + max);
+            return new Distribution() {
+                @Override int next(@Nonnull Random random) {
+                    double value = min - Math.log(1 - random.nextDouble()) * (mean - min);
+                    return (int) Math.min(max, Math.round(value));
+                }
+
+                @Override int max() {
+                    return max;
+                }
+            };
+        }
+    }
+}